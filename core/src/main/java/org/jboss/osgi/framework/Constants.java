@@ -41,12 +41,68 @@ public interface Constants extends org.osgi.framework.Constants {
     /** The number of threads available for MSC services */
     String PROPERTY_FRAMEWORK_BOOTSTRAP_THREADS = "org.jboss.osgi.framework.bootstrap.maxThreads";
 
+    /** The number of threads used to restore persistent bundles, defaults to the number of processors */
+    String PROPERTY_FRAMEWORK_RESTORE_THREADS = "org.jboss.osgi.framework.restore.maxThreads";
+
     /** A list of URLs to bundles that get installed on framework startup */
     String PROPERTY_AUTO_INSTALL_URLS = "org.jboss.osgi.auto.install";
 
     /** A list of URLs to bundles that get installed and started on framework startup */
     String PROPERTY_AUTO_START_URLS = "org.jboss.osgi.auto.start";
 
+    /** Store bundle content by SHA-256 digest so that identical content is shared across bundles and revisions */
+    String PROPERTY_STORAGE_CONTENT_ADDRESSED = "org.jboss.osgi.framework.storage.contentAddressed";
+
+    /** The content-addressed blob area, which may be shared by multiple frameworks. Defaults to a private area in the framework storage */
+    String PROPERTY_STORAGE_BLOB_AREA = "org.jboss.osgi.framework.storage.blobs";
+
+    /** Persist the wiring of the persistent bundles and reapply it on the next start if the installed bundles did not change */
+    String PROPERTY_RESOLVER_SNAPSHOT = "org.jboss.osgi.framework.resolver.snapshot";
+
+    /** Only add the unresolved bundles that can provide a capability to the resolved bundles, instead of all unresolved bundles */
+    String PROPERTY_RESOLVER_INCREMENTAL = "org.jboss.osgi.framework.resolver.incremental";
+
+    /** The maximum number of threads that build module specs after a resolve. Defaults to the number of processors */
+    String PROPERTY_RESOLVER_MODULE_THREADS = "org.jboss.osgi.framework.resolver.moduleThreads";
+
+    /** The maximum number of threads that stop and start independent bundles concurrently on refresh. Defaults to 1 */
+    String PROPERTY_REFRESH_THREADS = "org.jboss.osgi.framework.refresh.maxThreads";
+
+    /**
+     * Load classes of the bundle jar from a memory-mapped entry index instead of the virtual file system. Defaults to false.
+     *
+     * The mapping is only released when the loader is garbage collected. On Windows the mapped bundle file or content blob
+     * cannot be deleted until then, so that uninstall and refresh may leave the file behind.
+     */
+    String PROPERTY_RESOURCE_LOADER_MAPPED = "org.jboss.osgi.framework.resourceLoader.mapped";
+
+    /** Cache validated bundle metadata in the bundle storage area, so that a restart does not read and validate the manifest again. Defaults to true */
+    String PROPERTY_METADATA_CACHE = "org.jboss.osgi.framework.metadataCache";
+
+    /** Cache loaded class bytes and package specs in the bundle storage area for the next start. Defaults to false */
+    String PROPERTY_CLASS_DATA_CACHE = "org.jboss.osgi.framework.classDataCache";
+
+    /** The {@link org.jboss.osgi.framework.spi.ExecutorServiceFactory} instance or class name for the framework executors */
+    String PROPERTY_EXECUTOR_FACTORY = "org.jboss.osgi.framework.executor.factory";
+
+    /** The threads of the default framework executors, which is either 'platform' or 'virtual'. Defaults to platform */
+    String PROPERTY_EXECUTOR_THREADS = "org.jboss.osgi.framework.executor.threads";
+
+    /** The maximum number of threads in the shared worker pool of the framework executors, which is raised to one thread per executor. Defaults to 4 */
+    String PROPERTY_WORKER_THREADS = "org.jboss.osgi.framework.worker.maxThreads";
+
+    /** The number of tasks that wait in a lane of the worker pool before a submitter is blocked for a while. Defaults to 10000 */
+    String PROPERTY_WORKER_QUEUE_SIZE = "org.jboss.osgi.framework.worker.queueSize";
+
+    /** The maximum number of released prototype service objects that are kept per bundle for reuse. Defaults to 0 */
+    String PROPERTY_PROTOTYPE_POOL_SIZE = "org.jboss.osgi.framework.service.prototypePoolSize";
+
+    /** Collect per bundle class loading metrics, see {@link org.jboss.osgi.framework.spi.ClassLoadingMetrics}. Defaults to false */
+    String PROPERTY_CLASSLOADING_METRICS = "org.jboss.osgi.framework.classloading.metrics";
+
+    /** Write a boot profile to the storage area when the framework has started, see {@link org.jboss.osgi.framework.spi.BootProfiler}. Defaults to false */
+    String PROPERTY_BOOT_PROFILER = "org.jboss.osgi.framework.bootProfiler";
+
     @Deprecated
     String FRAMEWORK_SYMBOLIC_NAME = JBOSGI_FRAMEWORK_SYMBOLIC_NAME;
 
@@ -204,4 +204,16 @@ public interface FrameworkLogger extends BasicLogger {
     @LogMessage(level = ERROR)
     @Message(id = 11037, value = "Cannot install initial bundle: %s")
     void errorStateCannotInstallInitialBundle(@Cause Throwable cause, String source);
+
+    @LogMessage(level = WARN)
+    @Message(id = 11038, value = "Virtual threads not available, using a platform thread for: %s")
+    void warnVirtualThreadsNotAvailable(String threadName);
+
+    @LogMessage(level = ERROR)
+    @Message(id = 11039, value = "Error while running task in: %s")
+    void errorWhileRunningTask(@Cause Throwable cause, String laneName);
+
+    @LogMessage(level = WARN)
+    @Message(id = 11040, value = "Cannot write boot profile: %s")
+    void warnCannotWriteBootProfile(@Cause Throwable cause, File file);
 }
@@ -29,6 +29,7 @@ import java.net.URL;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 
 import org.jboss.logging.Messages;
@@ -316,4 +317,16 @@ public interface FrameworkMessages {
 
     @Message(id = 11284, value = "Bundle start level [%d] not valid for framework start level [%d] while starting: %s")
     String bundleStartLevelNotValid(int bundleLevel, int frameworkLevel, Bundle bundle);
+
+    @Message(id = 11285, value = "Cannot obtain bundle URL for: %s")
+    IllegalStateException illegalStateCannotObtainBundleURL(@Cause Throwable cause, String entry);
+
+    @Message(id = 11286, value = "Service object not obtained from this service objects: %s")
+    IllegalArgumentException illegalArgumentUnknownServiceObject(Object service);
+
+    @Message(id = 11287, value = "Cannot create executor service factory: %s")
+    IllegalStateException illegalStateCannotCreateExecutorServiceFactory(@Cause Throwable cause, Object factory);
+
+    @Message(id = 11288, value = "Cannot accept task in: %s")
+    RejectedExecutionException rejectedExecutionCannotAcceptTask(String laneName);
 }
@@ -32,7 +32,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -47,14 +49,17 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.jboss.modules.ModuleIdentifier;
 import org.jboss.msc.service.ServiceName;
 import org.jboss.osgi.deployment.interceptor.LifecycleInterceptorService;
+import org.jboss.osgi.framework.spi.BootProfiler;
 import org.jboss.osgi.framework.spi.BundleLifecycle;
 import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.FrameworkEvents;
 import org.jboss.osgi.framework.spi.LockManager;
 import org.jboss.osgi.framework.spi.LockManager.LockSupport;
 import org.jboss.osgi.framework.spi.LockManager.LockableItem;
+import org.jboss.osgi.framework.spi.ServiceManager;
 import org.jboss.osgi.framework.spi.ServiceState;
 import org.jboss.osgi.framework.spi.StorageState;
+import org.jboss.osgi.framework.spi.WorkerPoolMetrics;
 import org.jboss.osgi.metadata.CaseInsensitiveDictionary;
 import org.jboss.osgi.metadata.OSGiMetaData;
 import org.jboss.osgi.resolver.XBundle;
@@ -88,7 +93,7 @@ abstract class AbstractBundleState<R extends BundleStateRevision> extends Abstra
     private final AtomicInteger bundleState = new AtomicInteger(UNINSTALLED);
     private final LockSupport bundleLock = LockManager.Factory.addLockSupport(this);
     private final List<ServiceState> registeredServices = new CopyOnWriteArrayList<ServiceState>();
-    private final ConcurrentHashMap<ServiceState, AtomicInteger> usedServices = new ConcurrentHashMap<ServiceState, AtomicInteger>();
+    private final ConcurrentHashMap<ServiceState, ServiceUse> usedServices = new ConcurrentHashMap<ServiceState, ServiceUse>();
     private AbstractBundleContext<? extends AbstractBundleState<?>> bundleContext;
     private ResolutionException lastResolutionException;
     private R currentRevision;
@@ -160,6 +165,12 @@ abstract class AbstractBundleState<R extends BundleStateRevision> extends Abstra
             result = (T) getStorageState();
         } else if (type.isAssignableFrom(BundleManager.class)) {
             result = (T) getBundleManager();
+        } else if (type.isAssignableFrom(ServiceManager.class)) {
+            result = (T) getFrameworkState().getServiceManagerPlugin();
+        } else if (type.isAssignableFrom(WorkerPoolMetrics.class)) {
+            result = (T) getBundleManagerPlugin().getWorkerPool();
+        } else if (type.isAssignableFrom(BootProfiler.class)) {
+            result = (T) getBundleManagerPlugin().getBootProfiler();
         }
         return result;
     }
@@ -244,6 +255,11 @@ abstract class AbstractBundleState<R extends BundleStateRevision> extends Abstra
         registeredServices.add(serviceState);
     }
 
+    void addRegisteredServices(List<ServiceState> serviceStates) {
+        LOGGER.tracef("Add registered services %s to: %s", serviceStates, this);
+        registeredServices.addAll(serviceStates);
+    }
+
     void removeRegisteredService(ServiceState serviceState) {
         LOGGER.tracef("Remove registered service %s from: %s", serviceState, this);
         registeredServices.remove(serviceState);
@@ -282,27 +298,106 @@ abstract class AbstractBundleState<R extends BundleStateRevision> extends Abstra
     }
 
     Set<ServiceState> getServicesInUseInternal() {
-        return Collections.unmodifiableSet(usedServices.keySet());
+        Set<ServiceState> result = new HashSet<ServiceState>();
+        for (Map.Entry<ServiceState, ServiceUse> entry : usedServices.entrySet()) {
+            ServiceState serviceState = entry.getKey();
+            if (entry.getValue().count.get() > 0 && serviceState.isUnregistered() == false)
+                result.add(serviceState);
+        }
+        return Collections.unmodifiableSet(result);
     }
 
+    // A count stays in place when it drops to zero, so that repeated get/unget calls for the same service do not allocate
     void addServiceInUse(ServiceState serviceState) {
         LOGGER.tracef("Add service in use %s to: %s", serviceState, this);
-        usedServices.putIfAbsent(serviceState, new AtomicInteger());
-        AtomicInteger count = usedServices.get(serviceState);
-        count.incrementAndGet();
+        ServiceUse serviceUse = usedServices.get(serviceState);
+        if (serviceUse == null) {
+            ServiceUse newUse = new ServiceUse();
+            serviceUse = usedServices.putIfAbsent(serviceState, newUse);
+            if (serviceUse == null)
+                serviceUse = newUse;
+        }
+        serviceUse.count.incrementAndGet();
     }
 
     int removeServiceInUse(ServiceState serviceState) {
         LOGGER.tracef("Remove service in use %s from: %s", serviceState, this);
-        AtomicInteger count = usedServices.get(serviceState);
-        if (count == null)
-            return -1;
+        ServiceUse serviceUse = usedServices.get(serviceState);
+        AtomicInteger count = serviceUse != null ? serviceUse.count : null;
+        while (count != null) {
+            int countVal = count.get();
+            if (countVal <= 0)
+                return -1;
+            if (count.compareAndSet(countVal, countVal - 1))
+                return countVal - 1;
+        }
+        return -1;
+    }
+
+    int getServiceUseCount(ServiceState serviceState) {
+        ServiceUse serviceUse = usedServices.get(serviceState);
+        return serviceUse != null ? serviceUse.count.get() : 0;
+    }
+
+    ServiceUse getServiceUse(ServiceState serviceState) {
+        return usedServices.get(serviceState);
+    }
+
+    // Drop the count for a service that was unregistered
+    void clearServiceInUse(ServiceState serviceState) {
+        usedServices.remove(serviceState);
+    }
+
+    // Release the services that this bundle uses, when it is stopped or removed.
+    // Prototype service objects are released first, then the singleton and bundle scope uses.
+    void releaseServicesInUse() {
+        ServiceManager serviceManager = getFrameworkState().getServiceManagerPlugin();
+        for (ServiceState serviceState : usedServices.keySet()) {
+            if (serviceState.isPrototype()) {
+                serviceState.ungetPrototypeValues(this);
+            }
+            while (serviceManager.ungetService(this, serviceState)) {
+            }
+            serviceState.removeUsingBundle(this);
+        }
+        usedServices.clear();
+    }
 
-        int countVal = count.decrementAndGet();
-        if (countVal == 0)
-            usedServices.remove(serviceState);
+    // The use count of a service by this bundle, and the prototype service objects that the bundle holds
+    static final class ServiceUse {
 
-        return countVal;
+        final AtomicInteger count = new AtomicInteger();
+        private Map<Object, Integer> prototypeValues;
+
+        synchronized void addPrototypeValue(Object value) {
+            if (prototypeValues == null) {
+                prototypeValues = new IdentityHashMap<Object, Integer>();
+            }
+            Integer valueCount = prototypeValues.get(value);
+            prototypeValues.put(value, valueCount != null ? valueCount + 1 : 1);
+        }
+
+        // Returns the remaining count for the object, or -1 if the bundle does not hold it
+        synchronized int removePrototypeValue(Object value) {
+            Integer valueCount = prototypeValues != null ? prototypeValues.get(value) : null;
+            if (valueCount == null)
+                return -1;
+            if (valueCount.intValue() > 1) {
+                prototypeValues.put(value, valueCount - 1);
+                return valueCount - 1;
+            }
+            prototypeValues.remove(value);
+            return 0;
+        }
+
+        synchronized List<Object> removePrototypeValues() {
+            List<Object> result = new ArrayList<Object>();
+            if (prototypeValues != null) {
+                result.addAll(prototypeValues.keySet());
+                prototypeValues.clear();
+            }
+            return result;
+        }
     }
 
     @Override
@@ -41,6 +41,10 @@ class AbstractBundleWire extends AbstractWire implements BundleWire {
         super(wire.getCapability(), wire.getRequirement(), wire.getProvider(), wire.getRequirer());
     }
 
+    AbstractBundleWire(BundleCapability cap, BundleRequirement req, BundleRevision provider, BundleRevision requirer) {
+        super(cap, req, provider, requirer);
+    }
+
     @Override
     public BundleWiring getProviderWiring() {
         return getProvider().getWiring();
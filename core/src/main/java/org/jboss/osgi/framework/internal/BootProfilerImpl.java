@@ -0,0 +1,275 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.msc.service.AbstractServiceListener;
+import org.jboss.msc.service.ServiceController;
+import org.jboss.msc.service.ServiceController.Substate;
+import org.jboss.msc.service.ServiceController.Transition;
+import org.jboss.msc.service.ServiceListener;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.osgi.framework.spi.BootProfiler;
+import org.jboss.osgi.vfs.VFSUtils;
+
+/**
+ * The {@link BootProfiler} of a framework.
+ *
+ * The integration services are timed by a service listener from the start request to UP.
+ * All other steps are recorded explicitly by the code that runs them.
+ *
+ * The report has the span times in microseconds relative to the creation of the profiler.
+ * The timeline uses the Trace Event Format with one complete event per span.
+ */
+final class BootProfilerImpl implements BootProfiler {
+
+    private final long bootTime = System.nanoTime();
+    private final List<Span> spans = new ArrayList<Span>();
+    private final ConcurrentMap<ServiceName, Long> serviceStartTimes = new ConcurrentHashMap<ServiceName, Long>();
+    private final ServiceListener<Object> serviceListener = new ServiceStartListener();
+    private volatile boolean enabled;
+
+    BootProfilerImpl(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void addSpan(String category, String name, long startTime, long endTime) {
+        if (enabled == false)
+            return;
+
+        Thread thread = Thread.currentThread();
+        Span span = new Span(category, name, thread.getId(), thread.getName(), startTime - bootTime, endTime - startTime);
+        synchronized (spans) {
+            spans.add(span);
+        }
+    }
+
+    /**
+     * Get the listener that times the start of the services it is added to
+     */
+    ServiceListener<Object> getServiceListener() {
+        return serviceListener;
+    }
+
+    List<Span> getSpans() {
+        synchronized (spans) {
+            List<Span> result = new ArrayList<Span>(spans);
+            Collections.sort(result, new Comparator<Span>() {
+                @Override
+                public int compare(Span o1, Span o2) {
+                    return o1.start < o2.start ? -1 : (o1.start == o2.start ? 0 : 1);
+                }
+            });
+            return result;
+        }
+    }
+
+    /**
+     * Write the report and the timeline to the given directory and stop recording.
+     */
+    void writeReport(File targetDir) {
+        if (enabled == false)
+            return;
+
+        enabled = false;
+        List<Span> sortedSpans = getSpans();
+        targetDir.mkdirs();
+        writeFile(new File(targetDir, PROFILE_FILE), toProfile(sortedSpans));
+        writeFile(new File(targetDir, TRACE_FILE), toTrace(sortedSpans));
+    }
+
+    String toProfile(List<Span> sortedSpans) {
+        Map<String, long[]> categories = new LinkedHashMap<String, long[]>();
+        long endTime = 0;
+        for (Span span : sortedSpans) {
+            long[] totals = categories.get(span.category);
+            if (totals == null) {
+                totals = new long[2];
+                categories.put(span.category, totals);
+            }
+            totals[0]++;
+            totals[1] += span.duration;
+            endTime = Math.max(endTime, span.start + span.duration);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n  \"timeUnit\": \"us\",\n  \"totalTime\": ").append(micros(endTime)).append(",\n");
+        builder.append("  \"categories\": {");
+        String separator = "\n";
+        for (Map.Entry<String, long[]> entry : categories.entrySet()) {
+            long[] totals = entry.getValue();
+            builder.append(separator).append("    ").append(quote(entry.getKey()));
+            builder.append(": {\"count\": ").append(totals[0]).append(", \"time\": ").append(micros(totals[1])).append("}");
+            separator = ",\n";
+        }
+        builder.append("\n  },\n  \"spans\": [");
+        separator = "\n";
+        for (Span span : sortedSpans) {
+            builder.append(separator).append("    {\"category\": ").append(quote(span.category));
+            builder.append(", \"name\": ").append(quote(span.name));
+            builder.append(", \"thread\": ").append(quote(span.threadName));
+            builder.append(", \"start\": ").append(micros(span.start));
+            builder.append(", \"duration\": ").append(micros(span.duration)).append("}");
+            separator = ",\n";
+        }
+        builder.append("\n  ]\n}\n");
+        return builder.toString();
+    }
+
+    String toTrace(List<Span> sortedSpans) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [");
+        String separator = "\n";
+
+        // Name the thread rows of the timeline
+        Set<Long> threadIds = new LinkedHashSet<Long>();
+        for (Span span : sortedSpans) {
+            if (threadIds.add(span.threadId)) {
+                builder.append(separator).append("{\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": ").append(span.threadId);
+                builder.append(", \"args\": {\"name\": ").append(quote(span.threadName)).append("}}");
+                separator = ",\n";
+            }
+        }
+        for (Span span : sortedSpans) {
+            builder.append(separator).append("{\"name\": ").append(quote(span.name));
+            builder.append(", \"cat\": ").append(quote(span.category));
+            builder.append(", \"ph\": \"X\", \"ts\": ").append(micros(span.start));
+            builder.append(", \"dur\": ").append(micros(span.duration));
+            builder.append(", \"pid\": 1, \"tid\": ").append(span.threadId).append("}");
+            separator = ",\n";
+        }
+        builder.append("\n]}\n");
+        return builder.toString();
+    }
+
+    private void writeFile(File file, String content) {
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                writer.write(content);
+            } finally {
+                VFSUtils.safeClose(writer);
+            }
+            LOGGER.debugf("Boot profile written to: %s", file);
+        } catch (IOException ex) {
+            LOGGER.warnCannotWriteBootProfile(ex, file);
+        }
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    static String quote(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2);
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        builder.append(ch);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    static final class Span {
+
+        final String category;
+        final String name;
+        final long threadId;
+        final String threadName;
+        final long start;
+        final long duration;
+
+        Span(String category, String name, long threadId, String threadName, long start, long duration) {
+            this.category = category;
+            this.name = name;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+
+    // A failed start is recorded as well, its time is part of the boot
+    private class ServiceStartListener extends AbstractServiceListener<Object> {
+
+        @Override
+        public void transition(ServiceController<? extends Object> controller, Transition transition) {
+            if (enabled == false)
+                return;
+
+            ServiceName serviceName = controller.getName();
+            if (transition.getAfter() == Substate.STARTING) {
+                serviceStartTimes.put(serviceName, System.nanoTime());
+            } else if (transition == Transition.STARTING_to_UP || transition == Transition.STARTING_to_START_FAILED) {
+                Long startTime = serviceStartTimes.remove(serviceName);
+                if (startTime != null) {
+                    addSpan(CATEGORY_SERVICE, serviceName.getCanonicalName(), startTime, System.nanoTime());
+                }
+            }
+        }
+    }
+}
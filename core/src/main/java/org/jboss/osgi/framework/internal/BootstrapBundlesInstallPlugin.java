@@ -36,6 +36,7 @@ import org.jboss.msc.service.StartException;
 import org.jboss.osgi.deployment.deployer.Deployment;
 import org.jboss.osgi.deployment.deployer.DeploymentFactory;
 import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.BootProfiler;
 import org.jboss.osgi.framework.spi.BootstrapBundlesInstall;
 import org.jboss.osgi.framework.spi.IntegrationServices;
 import org.jboss.osgi.spi.BundleInfo;
@@ -85,13 +86,18 @@ final class BootstrapBundlesInstallPlugin extends BootstrapBundlesInstall<Void>
         autoInstall.addAll(autoStart);
 
         // Collect the bundle deployments
+        BootProfiler profiler = getBootProfiler(getBundleManager());
         List<Deployment> deployments = new ArrayList<Deployment>();
         for (URL url : autoInstall) {
             try {
+                long startTime = profiler != null ? System.nanoTime() : 0;
                 BundleInfo info = BundleInfo.createBundleInfo(url);
                 Deployment dep = DeploymentFactory.createDeployment(info);
                 dep.setAutoStart(autoStart.contains(url));
                 deployments.add(dep);
+                if (profiler != null) {
+                    profiler.addSpan(BootProfiler.CATEGORY_METADATA, "parse " + url.toExternalForm(), startTime, System.nanoTime());
+                }
             } catch (BundleException ex) {
                 LOGGER.errorStateCannotInstallInitialBundle(ex, url.toExternalForm());
             }
@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.osgi.vfs.VFSUtils;
+import org.jboss.osgi.vfs.VirtualFile;
+
+/**
+ * A content-addressed store for bundle content.
+ *
+ * Blobs are keyed by the SHA-256 digest of their content. Identical bundle content
+ * is therefore only stored once, no matter how many bundles or revisions refer to it.
+ *
+ * The store keeps a reference count per blob. A blob in a private store is deleted when
+ * its last reference is released. A shared store may be used by other frameworks
+ * concurrently, so its blobs are never deleted.
+ */
+final class BundleContentStore {
+
+    static final String DIGEST_ALGORITHM = "SHA-256";
+    static final String BLOB_SUFFIX = ".jar";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File blobArea;
+    private final boolean shared;
+    private final Map<String, Integer> references = new HashMap<String, Integer>();
+
+    BundleContentStore(File blobArea, boolean shared) {
+        assert blobArea != null : "Null blobArea";
+        this.blobArea = blobArea;
+        this.shared = shared;
+    }
+
+    File getBlobArea() {
+        return blobArea;
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+
+    File getBlobFile(String digest) {
+        return new File(blobArea, digest + BLOB_SUFFIX);
+    }
+
+    /**
+     * Get the hex encoded digest for the given content.
+     */
+    String getDigest(VirtualFile rootFile) throws IOException {
+        InputStream input = rootFile.openStream();
+        try {
+            return getDigest(input);
+        } finally {
+            VFSUtils.safeClose(input);
+        }
+    }
+
+    static String getDigest(InputStream input) throws IOException {
+        MessageDigest md = newMessageDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            md.update(buffer, 0, read);
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Add a reference to the blob with the given digest.
+     *
+     * The content is only copied when there is no blob for the given digest yet.
+     * @return The blob file
+     */
+    File addReference(String digest, VirtualFile rootFile) throws IOException {
+        File blobFile = getBlobFile(digest);
+        synchronized (references) {
+            if (blobFile.exists() == false) {
+                writeBlob(blobFile, rootFile);
+            } else {
+                LOGGER.debugf("Reusing bundle content: %s", blobFile);
+            }
+            incrementReference(digest);
+        }
+        return blobFile;
+    }
+
+    /**
+     * Add a reference to an existing blob, as it is done when the storage is restored.
+     */
+    void addReference(String digest) {
+        synchronized (references) {
+            incrementReference(digest);
+        }
+    }
+
+    /**
+     * Release a reference to the blob with the given digest.
+     */
+    void releaseReference(String digest) {
+        synchronized (references) {
+            Integer count = references.get(digest);
+            if (count == null)
+                return;
+
+            if (count.intValue() > 1) {
+                references.put(digest, count - 1);
+                return;
+            }
+
+            references.remove(digest);
+            if (shared == false) {
+                File blobFile = getBlobFile(digest);
+                LOGGER.debugf("Deleting unreferenced bundle content: %s", blobFile);
+                blobFile.delete();
+            }
+        }
+    }
+
+    int getReferenceCount(String digest) {
+        synchronized (references) {
+            Integer count = references.get(digest);
+            return count != null ? count.intValue() : 0;
+        }
+    }
+
+    private void incrementReference(String digest) {
+        Integer count = references.get(digest);
+        references.put(digest, count != null ? count + 1 : 1);
+    }
+
+    private void writeBlob(File blobFile, VirtualFile rootFile) throws IOException {
+        blobArea.mkdirs();
+
+        // Write to a temp file first and move it into place, other frameworks may share the store
+        File tmpFile = File.createTempFile(blobFile.getName(), ".tmp", blobArea);
+        try {
+            FileOutputStream output = new FileOutputStream(tmpFile);
+            InputStream input = rootFile.openStream();
+            try {
+                VFSUtils.copyStream(input, output);
+            } finally {
+                VFSUtils.safeClose(input);
+                VFSUtils.safeClose(output);
+            }
+            if (tmpFile.renameTo(blobFile) == false && blobFile.exists() == false) {
+                throw new IOException("Cannot create bundle content: " + blobFile);
+            }
+            LOGGER.debugf("Created bundle content: %s", blobFile);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
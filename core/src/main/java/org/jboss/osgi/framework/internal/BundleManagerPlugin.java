@@ -58,11 +58,13 @@ import org.jboss.osgi.deployment.deployer.Deployment;
 import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.spi.AbstractIntegrationService;
+import org.jboss.osgi.framework.spi.BundleLifecycle;
 import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.BundleStorage;
 import org.jboss.osgi.framework.spi.DeploymentProvider;
 import org.jboss.osgi.framework.spi.FrameworkBuilder;
 import org.jboss.osgi.framework.spi.FrameworkEvents;
+import org.jboss.osgi.framework.spi.FutureServiceValue;
 import org.jboss.osgi.framework.spi.IntegrationServices;
 import org.jboss.osgi.framework.spi.LockManager;
 import org.jboss.osgi.framework.spi.ModuleManager;
@@ -73,6 +75,8 @@ import org.jboss.osgi.metadata.VersionRange;
 import org.jboss.osgi.resolver.XBundle;
 import org.jboss.osgi.resolver.XBundleRevision;
 import org.jboss.osgi.resolver.XEnvironment;
+import org.jboss.osgi.resolver.XResolveContext;
+import org.jboss.osgi.resolver.XResolver;
 import org.jboss.osgi.resolver.XResource;
 import org.jboss.osgi.spi.ConstantsHelper;
 import org.jboss.osgi.vfs.VFSUtils;
@@ -82,6 +86,7 @@ import org.osgi.framework.BundleException;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.Version;
 import org.osgi.resource.Resource;
+import org.osgi.service.resolver.ResolutionException;
 
 /**
  * The BundleManager is the central managing entity for OSGi bundles.
@@ -121,6 +126,9 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
     private final FrameworkBuilder frameworkBuilder;
     private final ShutdownContainer shutdownContainer;
     private final Set<ExecutorService> executorServices = new HashSet<ExecutorService>();
+    private final WorkerPool workerPool;
+    private final ParallelTasks entryIndexTasks;
+    private final BootProfilerImpl bootProfiler;
     private final Map<String, Object> properties = new HashMap<String, Object>();
     private final AtomicInteger managerState = new AtomicInteger(Bundle.INSTALLED);
     private final AtomicBoolean managerStopped = new AtomicBoolean();
@@ -156,6 +164,13 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
 
         boolean allowContainerShutdown = frameworkBuilder.getServiceContainer() == null;
         shutdownContainer = new ShutdownContainer(serviceContainer, allowContainerShutdown);
+
+        // The worker threads are only created on demand
+        workerPool = WorkerPool.create(this);
+        entryIndexTasks = new ParallelTasks(workerPool, Runtime.getRuntime().availableProcessors());
+
+        Object profilerProp = getProperty(Constants.PROPERTY_BOOT_PROFILER);
+        bootProfiler = new BootProfilerImpl(profilerProp != null && Boolean.parseBoolean(profilerProp.toString()));
     }
 
     @Override
@@ -191,6 +206,21 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
         return frameworkBuilder;
     }
 
+    WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Get the tasks that build the entry indexes of a host and its fragments on the worker pool.
+     */
+    ParallelTasks getEntryIndexTasks() {
+        return entryIndexTasks;
+    }
+
+    BootProfilerImpl getBootProfiler() {
+        return bootProfiler;
+    }
+
     @Override
     public ServiceContainer getServiceContainer() {
         return serviceContainer;
@@ -418,6 +448,57 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
         bundleState.updateInternal(input);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<XBundle> installBundles(List<Deployment> deployments, boolean resolve) throws BundleException {
+        if (deployments == null)
+            throw MESSAGES.illegalArgumentNull("deployments");
+
+        // Install all deployments before waiting for any of them, so that the INSTALL services start concurrently
+        BundleLifecycle bundleLifecycle = getFrameworkState().getCoreServices().getBundleLifecycle();
+        for (Deployment dep : deployments) {
+            bundleLifecycle.install(dep);
+        }
+
+        List<XBundle> result = new ArrayList<XBundle>();
+        for (Deployment dep : deployments) {
+            ServiceName serviceName = dep.getAttachment(ServiceName.class);
+            ServiceController<XBundle> controller = (ServiceController<XBundle>) serviceContainer.getService(serviceName);
+            FutureServiceValue<XBundle> future = new FutureServiceValue<XBundle>(controller);
+            try {
+                result.add(future.get(30, TimeUnit.SECONDS));
+            } catch (Exception ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof BundleException) {
+                    throw (BundleException) cause;
+                }
+                throw MESSAGES.cannotInstallBundleFromDeployment(ex, dep);
+            }
+        }
+
+        // Resolve the installed bundles in one pass, unresolvable bundles are left out
+        if (resolve) {
+            List<Resource> resolvable = new ArrayList<Resource>();
+            for (XBundle bundle : result) {
+                XBundleRevision brev = bundle.getBundleRevision();
+                if (bundle.getState() == Bundle.INSTALLED && brev.getWiring() == null) {
+                    resolvable.add(brev);
+                }
+            }
+            if (resolvable.isEmpty() == false) {
+                XEnvironment env = getFrameworkState().getEnvironment();
+                XResolver resolver = getFrameworkState().getResolverPlugin();
+                XResolveContext context = resolver.createResolveContext(env, Collections.<Resource> emptyList(), resolvable);
+                try {
+                    resolver.resolveAndApply(context);
+                } catch (ResolutionException ex) {
+                    LOGGER.debugf(ex, "Cannot resolve: %s", resolvable);
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public void uninstallBundle(XBundle bundle, int options) throws BundleException {
         AbstractBundleState<?> bundleState = AbstractBundleState.assertBundleState(bundle);
@@ -429,13 +510,22 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
 
         if ((options & Bundle.STOP_TRANSIENT) == 0) {
             BundleStorage storagePlugin = getFrameworkState().getBundleStorage();
-            storagePlugin.deleteStorageState(userBundle.getStorageState());
+            StorageState storageState = userBundle.getStorageState();
+            for (XBundleRevision brev : userBundle.getAllBundleRevisions()) {
+                UserBundleRevision userRev = (UserBundleRevision) brev;
+                if (userRev.getStorageState() != storageState) {
+                    storagePlugin.releaseStorageState(userRev.getStorageState());
+                }
+            }
+            storagePlugin.deleteStorageState(storageState);
         }
 
         XEnvironment env = getFrameworkState().getEnvironment();
         for (XBundleRevision abr : userBundle.getAllBundleRevisions()) {
             env.uninstallResources(abr);
         }
+        getFrameworkState().getWiringIndex().removeBundle(userBundle);
+        userBundle.releaseServicesInUse();
 
         FrameworkEvents eventsPlugin = getFrameworkState().getFrameworkEvents();
         eventsPlugin.fireBundleEvent(userBundle, BundleEvent.UNRESOLVED);
@@ -574,6 +664,7 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
                 }
             }
         }
+        workerPool.shutdown(10, TimeUnit.SECONDS);
 
         cachedSystemBundle = getSystemBundle();
         shutdownContainer.shutdown();
@@ -25,6 +25,7 @@ import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URL;
 import java.net.URLConnection;
 
@@ -49,7 +50,12 @@ public class BundleProtocolHandler extends AbstractURLStreamHandlerService {
     @Override
     public URLConnection openConnection(URL url) throws IOException {
         LOGGER.tracef("openConnection: %s", url);
-        RevisionContent revContent = RevisionContent.findRevisionContent(bundleManager, url.getHost());
+        FrameworkState frameworkState = bundleManager.getFrameworkState();
+        RevisionContent revContent = null;
+        if (frameworkState != null)
+            revContent = frameworkState.getRevisionContentURLHandler().getRevisionContent(url.getHost());
+        if (revContent == null)
+            revContent = RevisionContent.findRevisionContent(bundleManager, url.getHost());
         if (revContent == null)
             throw MESSAGES.cannotObtainRevisionContent(url);
         URL entry = revContent.getEntry(url.getPath());
@@ -58,6 +64,16 @@ public class BundleProtocolHandler extends AbstractURLStreamHandlerService {
         return entry.openConnection();
     }
 
-    // [TODO] overwrite hashCode for to prevent host address resolution
-    // when offline the BundleEntriesTestCase is slow because of this
+    // The host is a revision content identity, never resolve it as a network host
+    @Override
+    public InetAddress getHostAddress(URL url) {
+        return null;
+    }
+
+    @Override
+    public boolean hostsEqual(URL url1, URL url2) {
+        String host1 = url1.getHost();
+        String host2 = url2.getHost();
+        return host1 != null ? host1.equalsIgnoreCase(host2) : host2 == null;
+    }
 }
@@ -27,19 +27,24 @@ import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.BootProfiler;
 import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.BundleStorage;
 import org.jboss.osgi.framework.spi.StorageState;
 import org.jboss.osgi.vfs.VFSUtils;
 import org.jboss.osgi.vfs.VirtualFile;
-import org.osgi.framework.Constants;
 
 /**
  * A simple implementation of a BundleStorage
@@ -49,8 +54,13 @@ import org.osgi.framework.Constants;
  */
 public final class BundleStorageImpl implements BundleStorage {
 
+    static final String BLOB_DIRECTORY = "blobs";
+
     private final BundleManager bundleManager;
     private final Map<String, StorageState> storageStates = new HashMap<String, StorageState>();
+    // The digest that each storage state references, by bundle id and revision
+    private final Map<String, String> contentReferences = new HashMap<String, String>();
+    private BundleContentStore contentStore;
     private File storageArea;
 
     public BundleStorageImpl(BundleManager bundleManager) {
@@ -67,6 +77,18 @@ public final class BundleStorageImpl implements BundleStorage {
             deleteRecursive(storage);
         }
 
+        // Initialize the content-addressed store
+        Object contentAddressed = props.get(Constants.PROPERTY_STORAGE_CONTENT_ADDRESSED);
+        if (contentAddressed != null && Boolean.parseBoolean(contentAddressed.toString())) {
+            String blobArea = (String) props.get(Constants.PROPERTY_STORAGE_BLOB_AREA);
+            if (blobArea != null) {
+                contentStore = new BundleContentStore(new File(blobArea).getAbsoluteFile(), true);
+            } else {
+                contentStore = new BundleContentStore(new File(getStorageArea(), BLOB_DIRECTORY), false);
+            }
+            LOGGER.debugf("Using content-addressed storage: %s", contentStore.getBlobArea());
+        }
+
         // Initialize storage states
         FilenameFilter filter = new FilenameFilter() {
             public boolean accept(File dir, String name) {
@@ -75,10 +97,14 @@ public final class BundleStorageImpl implements BundleStorage {
         };
         File[] storageDirs = getStorageArea().listFiles(filter);
         if (storageDirs != null) {
-            for (File storageDir : storageDirs) {
-                StorageState storageState = StorageState.createStorageState(storageDir);
+            for (StorageState storageState : loadStorageStates(storageDirs, props)) {
                 if (storageState.getBundleId() != 0) {
                     storageStates.put(storageState.getLocation(), storageState);
+                    String digest = storageState.getContentDigest();
+                    if (contentStore != null && digest != null) {
+                        contentStore.addReference(digest);
+                        addContentReference(storageState, digest);
+                    }
                 }
             }
         }
@@ -87,6 +113,8 @@ public final class BundleStorageImpl implements BundleStorage {
     @Override
     public StorageState createStorageState(long bundleId, String location, int startlevel, VirtualFile rootFile) throws IOException {
         assert location != null : "Null location";
+        BootProfilerImpl profiler = getBootProfiler();
+        long startTime = profiler.isEnabled() ? System.nanoTime() : 0;
 
         // Make the bundle's storage dir
         File bundleDir = getStorageDir(bundleId);
@@ -101,12 +129,20 @@ public final class BundleStorageImpl implements BundleStorage {
         props.put(StorageState.PROPERTY_START_LEVEL, new Integer(startlevel).toString());
         props.put(StorageState.PROPERTY_LAST_MODIFIED, new Long(System.currentTimeMillis()).toString());
 
-        StorageState storageState = StorageState.createStorageState(bundleDir, rootFile, props);
+        StorageState storageState;
+        if (contentStore != null && rootFile != null) {
+            storageState = createContentAddressedState(bundleDir, rootFile, props);
+        } else {
+            storageState = StorageState.createStorageState(bundleDir, rootFile, props);
+        }
         synchronized (storageStates) {
             if (storageState.getBundleId() != 0) {
                 storageStates.put(storageState.getLocation(), storageState);
             }
         }
+        if (profiler.isEnabled()) {
+            profiler.addSpan(BootProfiler.CATEGORY_STORAGE, "create " + location, startTime, System.nanoTime());
+        }
         return storageState;
     }
 
@@ -117,6 +153,14 @@ public final class BundleStorageImpl implements BundleStorage {
         synchronized (storageStates) {
             storageStates.remove(storageState.getLocation());
         }
+        releaseContentReference(storageState);
+    }
+
+    @Override
+    public void releaseStorageState(StorageState storageState) {
+        VFSUtils.safeClose(storageState.getRootFile());
+        ClassDataCache.deleteCacheFiles(storageState.getStorageDir(), storageState.getRevisionId());
+        releaseContentReference(storageState);
     }
 
     @Override
@@ -176,6 +220,93 @@ public final class BundleStorageImpl implements BundleStorage {
         return new File(filePath);
     }
 
+    // Read the storage dirs and open their content in parallel
+    private List<StorageState> loadStorageStates(File[] storageDirs, Map<String, Object> props) throws IOException {
+        final BootProfilerImpl profiler = getBootProfiler();
+        List<Callable<StorageState>> tasks = new ArrayList<Callable<StorageState>>();
+        for (final File storageDir : storageDirs) {
+            tasks.add(new Callable<StorageState>() {
+                @Override
+                public StorageState call() throws Exception {
+                    if (profiler.isEnabled() == false)
+                        return StorageState.createStorageState(storageDir);
+
+                    long startTime = System.nanoTime();
+                    StorageState storageState = StorageState.createStorageState(storageDir);
+                    profiler.addSpan(BootProfiler.CATEGORY_STORAGE, "restore " + storageDir.getName(), startTime, System.nanoTime());
+                    return storageState;
+                }
+            });
+        }
+        int maxThreads = ParallelTasks.getMaxThreads(props.get(Constants.PROPERTY_FRAMEWORK_RESTORE_THREADS));
+        ParallelTasks restoreTasks = new ParallelTasks("Storage Restore Thread", maxThreads);
+        try {
+            return restoreTasks.invokeAll(tasks);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } finally {
+            restoreTasks.shutdown();
+        }
+    }
+
+    private BootProfilerImpl getBootProfiler() {
+        return BundleManagerPlugin.assertBundleManagerPlugin(bundleManager).getBootProfiler();
+    }
+
+    BundleContentStore getContentStore() {
+        return contentStore;
+    }
+
+    private StorageState createContentAddressedState(File bundleDir, VirtualFile rootFile, Properties props) throws IOException {
+        // Every storage state holds its own reference, which is released with that state
+        String digest = contentStore.getDigest(rootFile);
+        File blobFile = contentStore.addReference(digest, rootFile);
+
+        String bundleFile;
+        if (contentStore.isShared()) {
+            bundleFile = blobFile.getAbsolutePath();
+        } else {
+            bundleFile = ".." + File.separator + BLOB_DIRECTORY + File.separator + blobFile.getName();
+        }
+        StorageState storageState;
+        try {
+            storageState = StorageState.createStorageState(bundleDir, rootFile, props, bundleFile, digest);
+        } catch (IOException ex) {
+            contentStore.releaseReference(digest);
+            throw ex;
+        }
+        addContentReference(storageState, digest);
+        return storageState;
+    }
+
+    private void addContentReference(StorageState storageState, String digest) {
+        synchronized (contentReferences) {
+            contentReferences.put(getContentReferenceKey(storageState), digest);
+        }
+    }
+
+    // Release the digest of the given state once, no matter how often it is deleted or released
+    private void releaseContentReference(StorageState storageState) {
+        if (contentStore != null) {
+            String digest;
+            synchronized (contentReferences) {
+                digest = contentReferences.remove(getContentReferenceKey(storageState));
+            }
+            if (digest != null) {
+                contentStore.releaseReference(digest);
+            }
+        }
+    }
+
+    private static String getContentReferenceKey(StorageState storageState) {
+        return storageState.getBundleId() + "-rev-" + storageState.getRevisionId();
+    }
+
     private void deleteRecursive(File file) {
         if (file.isDirectory()) {
             for (File aux : file.listFiles())
@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XRequirement;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.BundleNamespace;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+/**
+ * An index of capabilities by namespace and primary attribute.
+ *
+ * The primary attribute is the attribute that has the same name as the namespace, which is the package
+ * name, the bundle symbolic name or the host name for the wiring namespaces. A requirement that carries
+ * its primary attribute only needs to be matched against the capabilities with the same value.
+ * Fragment host requirements are indexed by host name, so that the attachable fragments of a
+ * host can be found without matching every installed fragment.
+ *
+ * The providers are returned in the order of the framework preferences. A resolved provider comes first,
+ * then the provider with the higher version, then the provider that was installed first.
+ */
+final class CapabilityIndex {
+
+    private static final Object NO_VALUE = new Object();
+
+    private static final Comparator<Capability> PREFERENCES = new Comparator<Capability>() {
+        @Override
+        public int compare(Capability cap1, Capability cap2) {
+            boolean resolved1 = isResolved(cap1.getResource());
+            boolean resolved2 = isResolved(cap2.getResource());
+            if (resolved1 != resolved2)
+                return resolved1 ? -1 : 1;
+            int result = getVersion(cap2).compareTo(getVersion(cap1));
+            if (result != 0)
+                return result;
+            long id1 = getBundleId(cap1.getResource());
+            long id2 = getBundleId(cap2.getResource());
+            return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+        }
+    };
+
+    private final Map<String, List<Capability>> namespaceIndex = new HashMap<String, List<Capability>>();
+    private final Map<String, Map<Object, List<Capability>>> primaryIndex = new HashMap<String, Map<Object, List<Capability>>>();
+    private final Map<Object, List<Requirement>> hostIndex = new HashMap<Object, List<Requirement>>();
+
+    synchronized void addResource(Resource res) {
+        for (Requirement req : res.getRequirements(HostNamespace.HOST_NAMESPACE)) {
+            getList(hostIndex, getHostKey(req)).add(req);
+        }
+        for (Capability cap : res.getCapabilities(null)) {
+            String namespace = cap.getNamespace();
+            getList(namespaceIndex, namespace).add(cap);
+            Object value = cap.getAttributes().get(namespace);
+            if (value != null) {
+                Map<Object, List<Capability>> values = primaryIndex.get(namespace);
+                if (values == null) {
+                    values = new HashMap<Object, List<Capability>>();
+                    primaryIndex.put(namespace, values);
+                }
+                getList(values, value).add(cap);
+            }
+        }
+    }
+
+    synchronized void removeResource(Resource res) {
+        for (Requirement req : res.getRequirements(HostNamespace.HOST_NAMESPACE)) {
+            removeFromList(hostIndex, getHostKey(req), req);
+        }
+        for (Capability cap : res.getCapabilities(null)) {
+            String namespace = cap.getNamespace();
+            removeFromList(namespaceIndex, namespace, cap);
+            Object value = cap.getAttributes().get(namespace);
+            Map<Object, List<Capability>> values = primaryIndex.get(namespace);
+            if (value != null && values != null) {
+                removeFromList(values, value, cap);
+                if (values.isEmpty()) {
+                    primaryIndex.remove(namespace);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the capabilities that may match the given requirement, without evaluating the requirement.
+     */
+    synchronized List<Capability> getCandidates(Requirement req) {
+        String namespace = req.getNamespace();
+        Object value = getPrimaryValue(req);
+        List<Capability> result;
+        if (value != null) {
+            Map<Object, List<Capability>> values = primaryIndex.get(namespace);
+            result = values != null ? values.get(value) : null;
+            // Bundle names may be aliased, e.g. system.bundle, package names are not
+            if (result == null && PackageNamespace.PACKAGE_NAMESPACE.equals(namespace) == false) {
+                result = namespaceIndex.get(namespace);
+            }
+        } else {
+            result = namespaceIndex.get(namespace);
+        }
+        return result != null ? new ArrayList<Capability>(result) : Collections.<Capability> emptyList();
+    }
+
+    /**
+     * True if the requirements of the given namespace are looked up by their primary attribute.
+     */
+    static boolean isIndexed(String namespace) {
+        return PackageNamespace.PACKAGE_NAMESPACE.equals(namespace) || BundleNamespace.BUNDLE_NAMESPACE.equals(namespace)
+                || HostNamespace.HOST_NAMESPACE.equals(namespace);
+    }
+
+    /**
+     * Get the capabilities that match the given requirement, in the order of the framework preferences.
+     */
+    List<Capability> findProviders(Requirement req) {
+        XRequirement xreq = (XRequirement) req;
+        List<Capability> result = new ArrayList<Capability>();
+        for (Capability cap : getCandidates(req)) {
+            if (xreq.matches(cap)) {
+                result.add(cap);
+            }
+        }
+        if (result.size() > 1) {
+            Collections.sort(result, PREFERENCES);
+        }
+        return result;
+    }
+
+    /**
+     * Get the fragment host requirements that may match the given host capability, without evaluating the requirements.
+     */
+    synchronized List<Requirement> getHostRequirements(Capability hostcap) {
+        Object value = hostcap.getAttributes().get(HostNamespace.HOST_NAMESPACE);
+        List<Requirement> result = new ArrayList<Requirement>();
+        addAll(result, hostIndex.get(value));
+        addAll(result, hostIndex.get(NO_VALUE));
+        // Fragments of the system bundle may use its alias
+        Resource res = hostcap.getResource();
+        if (res instanceof XBundleRevision && ((XBundleRevision) res).getBundle().getBundleId() == 0) {
+            if (Constants.SYSTEM_BUNDLE_SYMBOLICNAME.equals(value) == false) {
+                addAll(result, hostIndex.get(Constants.SYSTEM_BUNDLE_SYMBOLICNAME));
+            }
+        }
+        return result;
+    }
+
+    private Object getHostKey(Requirement req) {
+        Object value = req.getAttributes().get(HostNamespace.HOST_NAMESPACE);
+        return value != null ? value : NO_VALUE;
+    }
+
+    private static <T> void addAll(List<T> result, List<? extends T> list) {
+        if (list != null) {
+            result.addAll(list);
+        }
+    }
+
+    // Wildcards as used by dynamic imports cannot be looked up by value
+    private Object getPrimaryValue(Requirement req) {
+        Object value = req.getAttributes().get(req.getNamespace());
+        if (value instanceof String && ((String) value).indexOf('*') >= 0)
+            return null;
+        return value;
+    }
+
+    private static boolean isResolved(Resource res) {
+        return res instanceof BundleRevision && ((BundleRevision) res).getWiring() != null;
+    }
+
+    private static Version getVersion(Capability cap) {
+        String key = PackageNamespace.PACKAGE_NAMESPACE.equals(cap.getNamespace()) ? PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE
+                : BundleNamespace.CAPABILITY_BUNDLE_VERSION_ATTRIBUTE;
+        Object value = cap.getAttributes().get(key);
+        if (value instanceof Version)
+            return (Version) value;
+        return value != null ? Version.parseVersion(value.toString()) : Version.emptyVersion;
+    }
+
+    private static long getBundleId(Resource res) {
+        if (res instanceof XBundleRevision && ((XBundleRevision) res).getBundle() != null)
+            return ((XBundleRevision) res).getBundle().getBundleId();
+        return Long.MAX_VALUE;
+    }
+
+    private static <K, T> List<T> getList(Map<K, List<T>> map, K key) {
+        List<T> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<T>();
+            map.put(key, list);
+        }
+        return list;
+    }
+
+    private static <K, T> void removeFromList(Map<K, List<T>> map, K key, T item) {
+        List<T> list = map.get(key);
+        if (list != null) {
+            list.remove(item);
+            if (list.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+}
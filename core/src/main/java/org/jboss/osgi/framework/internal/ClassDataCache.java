@@ -0,0 +1,385 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.modules.ClassSpec;
+import org.jboss.modules.PackageSpec;
+import org.jboss.osgi.vfs.VFSUtils;
+
+/**
+ * An on-disk cache of class bytes and package specs for one revision content.
+ *
+ * The cache file lives in the bundle's storage dir and is only valid for the content it was
+ * created from, which is identified by the same key that the {@link MetaDataCache} uses.
+ * On a warm start the file is memory-mapped and class bytes are copied straight out of it,
+ * so the bundle content does not need to be read and inflated again.
+ *
+ * Classes and packages that are not in the cache are recorded when they are loaded
+ * and written to the cache file on {@link #flush()}, or earlier when the recorded class bytes
+ * exceed {@link #MAX_PENDING_BYTES}. Signed classes are never cached.
+ */
+final class ClassDataCache {
+
+    static final String CACHE_FILE_PREFIX = "class-cache-";
+    static final String CACHE_FILE_SUFFIX = ".bin";
+    // The class bytes that are held in memory until they are written
+    static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    private static final int MAGIC = 0x4a424343;
+    private static final int VERSION = 1;
+    private static final int NULL_FLAG = 0;
+    private static final int VALUE_FLAG = 1;
+
+    private final File cacheFile;
+    private final String cacheKey;
+    private final URL sealBase;
+
+    // The mapped cache entries
+    private ByteBuffer buffer;
+    private String[] names = new String[0];
+    private int[] offsets = new int[0];
+    private int[] lengths = new int[0];
+    private Map<String, String[]> packages = new HashMap<String, String[]>();
+
+    // The entries that are not yet written
+    private final Map<String, byte[]> pendingClasses = new HashMap<String, byte[]>();
+    private final Map<String, String[]> pendingPackages = new HashMap<String, String[]>();
+    private int pendingBytes;
+
+    ClassDataCache(File cacheFile, String cacheKey, URL sealBase) {
+        assert cacheFile != null : "Null cacheFile";
+        assert cacheKey != null : "Null cacheKey";
+        this.cacheFile = cacheFile;
+        this.cacheKey = cacheKey;
+        this.sealBase = sealBase;
+        if (cacheFile.isFile()) {
+            try {
+                load();
+            } catch (IOException ex) {
+                LOGGER.debugf(ex, "Cannot read class data cache: %s", cacheFile);
+                buffer = null;
+                names = new String[0];
+                packages.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the cache file for the given content of a bundle revision.
+     * Every revision has its own files, as all revisions of a bundle share the storage dir.
+     */
+    static File getCacheFile(File storageDir, int revisionId, int contentId) {
+        return new File(storageDir, CACHE_FILE_PREFIX + revisionId + "-" + contentId + CACHE_FILE_SUFFIX);
+    }
+
+    /**
+     * Delete the cache files of the given bundle revision.
+     */
+    static void deleteCacheFiles(File storageDir, int revisionId) {
+        final String prefix = CACHE_FILE_PREFIX + revisionId + "-";
+        File[] cacheFiles = storageDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return name.startsWith(prefix) && name.endsWith(CACHE_FILE_SUFFIX);
+            }
+        });
+        if (cacheFiles != null) {
+            for (File cacheFile : cacheFiles) {
+                if (cacheFile.delete() == false) {
+                    LOGGER.debugf("Cannot delete class data cache: %s", cacheFile);
+                }
+            }
+        }
+    }
+
+    File getCacheFile() {
+        return cacheFile;
+    }
+
+    synchronized int size() {
+        return names.length + pendingClasses.size();
+    }
+
+    /**
+     * Get the cached class spec.
+     *
+     * @return The class spec or null if the class is not cached
+     */
+    synchronized ClassSpec getClassSpec(String fileName) throws IOException {
+        byte[] bytes = pendingClasses.get(fileName);
+        if (bytes == null) {
+            int index = Arrays.binarySearch(names, fileName);
+            if (index < 0)
+                return null;
+            bytes = new byte[lengths[index]];
+            ByteBuffer source = buffer.duplicate();
+            source.position(offsets[index]);
+            source.get(bytes);
+        }
+        ClassSpec classSpec = new ClassSpec();
+        classSpec.setBytes(bytes);
+        int nameIndex = fileName.lastIndexOf('/');
+        String simpleName = nameIndex >= 0 ? fileName.substring(nameIndex + 1) : fileName;
+        classSpec.setCodeSource(new CodeSource(new URL("jar", null, -1, simpleName), (CodeSigner[]) null));
+        return classSpec;
+    }
+
+    /**
+     * Record the class spec that was loaded from the content.
+     */
+    synchronized void putClassSpec(String fileName, ClassSpec classSpec) {
+        CodeSource codeSource = classSpec.getCodeSource();
+        CodeSigner[] signers = codeSource != null ? codeSource.getCodeSigners() : null;
+        if (signers != null && signers.length > 0)
+            return;
+        if (Arrays.binarySearch(names, fileName) < 0 && pendingClasses.containsKey(fileName) == false) {
+            byte[] bytes = classSpec.getBytes();
+            pendingClasses.put(fileName, bytes);
+            pendingBytes += bytes.length;
+            if (pendingBytes >= MAX_PENDING_BYTES)
+                flush();
+        }
+    }
+
+    /**
+     * Get the cached package spec.
+     *
+     * @return The package spec or null if the package is not cached
+     */
+    synchronized PackageSpec getPackageSpec(String name) {
+        String[] values = packages.get(name);
+        if (values == null)
+            values = pendingPackages.get(name);
+        if (values == null)
+            return null;
+
+        PackageSpec spec = new PackageSpec();
+        spec.setSpecTitle(values[0]);
+        spec.setSpecVersion(values[1]);
+        spec.setSpecVendor(values[2]);
+        spec.setImplTitle(values[3]);
+        spec.setImplVersion(values[4]);
+        spec.setImplVendor(values[5]);
+        if (values[6] != null)
+            spec.setSealBase(sealBase);
+        return spec;
+    }
+
+    /**
+     * Record the package spec that was obtained from the content.
+     */
+    synchronized void putPackageSpec(String name, PackageSpec spec) {
+        if (packages.containsKey(name) == false) {
+            String sealed = spec.getSealBase() != null ? Boolean.TRUE.toString() : null;
+            String[] values = new String[] { spec.getSpecTitle(), spec.getSpecVersion(), spec.getSpecVendor(), spec.getImplTitle(),
+                    spec.getImplVersion(), spec.getImplVendor(), sealed };
+            pendingPackages.put(name, values);
+        }
+    }
+
+    /**
+     * Write the cache file if there are entries that were not yet written.
+     * The pending entries are dropped also when they cannot be written.
+     */
+    synchronized void flush() {
+        if (pendingClasses.isEmpty() && pendingPackages.isEmpty())
+            return;
+
+        try {
+            // The storage dir is gone when the bundle was uninstalled
+            if (cacheFile.getParentFile().isDirectory())
+                writeCacheFile();
+        } finally {
+            pendingClasses.clear();
+            pendingPackages.clear();
+            pendingBytes = 0;
+        }
+    }
+
+    private void writeCacheFile() {
+        // Merge the mapped and the pending entries, the mapped class bytes are not copied to the heap
+        Map<String, ByteBuffer> allClasses = new TreeMap<String, ByteBuffer>();
+        Map<String, String[]> allPackages = new TreeMap<String, String[]>(packages);
+        for (int i = 0; i < names.length; i++) {
+            ByteBuffer source = buffer.duplicate();
+            source.position(offsets[i]);
+            source.limit(offsets[i] + lengths[i]);
+            allClasses.put(names[i], source.slice());
+        }
+        for (Map.Entry<String, byte[]> entry : pendingClasses.entrySet()) {
+            allClasses.put(entry.getKey(), ByteBuffer.wrap(entry.getValue()));
+        }
+        allPackages.putAll(pendingPackages);
+
+        try {
+            File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+            try {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+                try {
+                    writeCache(output, allClasses, allPackages);
+                } finally {
+                    VFSUtils.safeClose(output);
+                }
+                cacheFile.delete();
+                if (tmpFile.renameTo(cacheFile) == false)
+                    throw new IOException("Cannot create class data cache: " + cacheFile);
+            } finally {
+                tmpFile.delete();
+            }
+            LOGGER.debugf("Wrote %d classes to class data cache: %s", allClasses.size(), cacheFile);
+            load();
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot write class data cache: %s", cacheFile);
+        }
+    }
+
+    private void writeCache(DataOutputStream output, Map<String, ByteBuffer> allClasses, Map<String, String[]> allPackages) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(cacheKey);
+        output.writeInt(allPackages.size());
+        for (Map.Entry<String, String[]> entry : allPackages.entrySet()) {
+            output.writeUTF(entry.getKey());
+            for (String value : entry.getValue()) {
+                if (value != null) {
+                    output.writeByte(VALUE_FLAG);
+                    output.writeUTF(value);
+                } else {
+                    output.writeByte(NULL_FLAG);
+                }
+            }
+        }
+        output.writeInt(allClasses.size());
+        for (Map.Entry<String, ByteBuffer> entry : allClasses.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeInt(entry.getValue().remaining());
+        }
+        byte[] chunk = new byte[8192];
+        for (ByteBuffer bytes : allClasses.values()) {
+            while (bytes.hasRemaining()) {
+                int count = Math.min(chunk.length, bytes.remaining());
+                bytes.get(chunk, 0, count);
+                output.write(chunk, 0, count);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        ByteBuffer mapped;
+        RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            VFSUtils.safeClose(raf);
+        }
+
+        ByteBuffer header = mapped.duplicate();
+        DataInputStream input = new DataInputStream(new BufferInputStream(header));
+        if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            throw new IOException("Invalid class data cache: " + cacheFile);
+        if (cacheKey.equals(input.readUTF()) == false) {
+            LOGGER.debugf("Ignoring stale class data cache: %s", cacheFile);
+            return;
+        }
+
+        Map<String, String[]> packageMap = new HashMap<String, String[]>();
+        int packageCount = input.readInt();
+        for (int i = 0; i < packageCount; i++) {
+            String name = input.readUTF();
+            String[] values = new String[7];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = input.readByte() == VALUE_FLAG ? input.readUTF() : null;
+            }
+            packageMap.put(name, values);
+        }
+
+        int classCount = input.readInt();
+        String[] classNames = new String[classCount];
+        int[] classLengths = new int[classCount];
+        for (int i = 0; i < classCount; i++) {
+            classNames[i] = input.readUTF();
+            classLengths[i] = input.readInt();
+        }
+        int[] classOffsets = new int[classCount];
+        int offset = header.position();
+        for (int i = 0; i < classCount; i++) {
+            classOffsets[i] = offset;
+            offset += classLengths[i];
+        }
+        if (offset > mapped.limit())
+            throw new IOException("Truncated class data cache: " + cacheFile);
+
+        buffer = mapped;
+        names = classNames;
+        offsets = classOffsets;
+        lengths = classLengths;
+        packages = packageMap;
+        LOGGER.debugf("Using class data cache with %d classes: %s", classCount, cacheFile);
+    }
+
+    // Reads the header of the mapped cache file, the buffer position is the number of bytes read
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            if (buffer.hasRemaining() == false)
+                return -1;
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jboss.osgi.framework.spi.ClassLoadingMetrics;
+
+/**
+ * The {@link ClassLoadingMetrics} that is shared by all class loaders of a framework.
+ *
+ * Callers check {@link #isEnabled()} before they take any time, so that a disabled
+ * instance costs a single volatile read per instrumented call.
+ */
+final class ClassLoadingMetricsImpl implements ClassLoadingMetrics {
+
+    private static final String[] METRIC_NAMES = new String[] { DEFINE_COUNT, DEFINE_TIME, CLASS_LOOKUP_COUNT, CLASS_LOOKUP_TIME,
+            RESOURCE_LOOKUP_COUNT, RESOURCE_LOOKUP_TIME, FALLBACK_COUNT, FALLBACK_TIME, MISS_COUNT };
+
+    private static final int DEFINE = 0;
+    private static final int CLASS_LOOKUP = 2;
+    private static final int RESOURCE_LOOKUP = 4;
+    private static final int FALLBACK = 6;
+    private static final int MISS = 8;
+
+    private final ConcurrentMap<Long, AtomicLongArray> bundleMetrics = new ConcurrentHashMap<Long, AtomicLongArray>();
+    private volatile boolean enabled;
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void addDefine(long bundleId, long nanos) {
+        add(bundleId, DEFINE, nanos, true);
+    }
+
+    void addClassLookup(long bundleId, long nanos, boolean found) {
+        add(bundleId, CLASS_LOOKUP, nanos, found);
+    }
+
+    void addResourceLookup(long bundleId, long nanos, boolean found) {
+        add(bundleId, RESOURCE_LOOKUP, nanos, found);
+    }
+
+    void addFallback(long bundleId, long nanos, boolean found) {
+        add(bundleId, FALLBACK, nanos, found);
+    }
+
+    private void add(long bundleId, int index, long nanos, boolean found) {
+        AtomicLongArray values = bundleMetrics.get(bundleId);
+        if (values == null) {
+            AtomicLongArray newValues = new AtomicLongArray(METRIC_NAMES.length);
+            values = bundleMetrics.putIfAbsent(bundleId, newValues);
+            if (values == null)
+                values = newValues;
+        }
+        values.incrementAndGet(index);
+        values.addAndGet(index + 1, nanos);
+        if (found == false)
+            values.incrementAndGet(MISS);
+    }
+
+    @Override
+    public Set<Long> getBundleIds() {
+        return Collections.unmodifiableSet(new HashSet<Long>(bundleMetrics.keySet()));
+    }
+
+    @Override
+    public Map<String, Long> getMetrics(long bundleId) {
+        AtomicLongArray values = bundleMetrics.get(bundleId);
+        if (values == null)
+            return null;
+
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < METRIC_NAMES.length; i++) {
+            result.put(METRIC_NAMES[i], values.get(i));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public void reset() {
+        bundleMetrics.clear();
+    }
+}
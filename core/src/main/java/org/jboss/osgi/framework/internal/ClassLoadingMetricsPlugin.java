@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceController.Mode;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.value.InjectedValue;
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.Services;
+import org.jboss.osgi.framework.spi.AbstractIntegrationService;
+import org.jboss.osgi.framework.spi.ClassLoadingMetrics;
+import org.jboss.osgi.framework.spi.IntegrationServices;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Registers the {@link ClassLoadingMetrics} service.
+ */
+final class ClassLoadingMetricsPlugin extends AbstractIntegrationService<ClassLoadingMetrics> {
+
+    private final InjectedValue<BundleContext> injectedSystemContext = new InjectedValue<BundleContext>();
+    private final FrameworkState frameworkState;
+    private ServiceRegistration registration;
+
+    ClassLoadingMetricsPlugin(FrameworkState frameworkState) {
+        super(IntegrationServices.CLASSLOADING_METRICS_PLUGIN);
+        this.frameworkState = frameworkState;
+    }
+
+    @Override
+    protected void addServiceDependencies(ServiceBuilder<ClassLoadingMetrics> builder) {
+        builder.addDependency(IntegrationServices.SYSTEM_CONTEXT_INTERNAL, BundleContext.class, injectedSystemContext);
+        builder.addDependency(Services.FRAMEWORK_CREATE);
+        builder.setInitialMode(Mode.ON_DEMAND);
+    }
+
+    @Override
+    public void start(StartContext context) throws StartException {
+        super.start(context);
+        BundleContext systemContext = injectedSystemContext.getValue();
+        registration = systemContext.registerService(ClassLoadingMetrics.class.getName(), getValue(), null);
+    }
+
+    @Override
+    protected ClassLoadingMetrics createServiceValue(StartContext startContext) throws StartException {
+        ClassLoadingMetricsImpl metrics = frameworkState.getClassLoadingMetrics();
+        Object value = frameworkState.getBundleManager().getProperty(Constants.PROPERTY_CLASSLOADING_METRICS);
+        metrics.setEnabled(value != null && Boolean.parseBoolean(value.toString()));
+        return metrics;
+    }
+
+    @Override
+    public void stop(StopContext context) {
+        registration.unregister();
+        frameworkState.getClassLoadingMetrics().setEnabled(false);
+    }
+}
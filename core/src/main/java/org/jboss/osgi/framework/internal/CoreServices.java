@@ -64,6 +64,7 @@ final class CoreServices extends AbstractIntegrationService<CoreServices> {
         builder.addDependency(Services.START_LEVEL, StartLevelSupport.class, injectedStartLevel);
         builder.addDependency(IntegrationServices.SYSTEM_CONTEXT_INTERNAL, BundleContext.class, injectedSystemContext);
         builder.addDependency(IntegrationServices.SYSTEM_SERVICES_PLUGIN);
+        builder.addDependency(IntegrationServices.CLASSLOADING_METRICS_PLUGIN);
         builder.addDependency(IntegrationServices.URL_HANDLER_PLUGIN);
         builder.addDependency(Services.FRAMEWORK_CREATE);
         builder.setInitialMode(Mode.ON_DEMAND);
@@ -31,6 +31,7 @@ import java.util.jar.Manifest;
 import org.jboss.osgi.deployment.deployer.Deployment;
 import org.jboss.osgi.deployment.deployer.DeploymentFactory;
 import org.jboss.osgi.framework.FrameworkMessages;
+import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.DeploymentProvider;
 import org.jboss.osgi.framework.spi.StorageState;
 import org.jboss.osgi.metadata.OSGiMetaData;
@@ -49,12 +50,35 @@ import org.osgi.framework.Version;
  */
 public final class DeploymentProviderImpl implements DeploymentProvider {
 
+    private final boolean metadataCache;
+
+    public DeploymentProviderImpl() {
+        this(true);
+    }
+
+    public DeploymentProviderImpl(BundleManager bundleManager) {
+        this(MetaDataCache.isEnabled(bundleManager));
+    }
+
+    DeploymentProviderImpl(boolean metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
     @Override
     public Deployment createDeployment(StorageState storageState) throws BundleException {
         assert storageState != null : "Null storageState";
         String location = storageState.getLocation();
         VirtualFile rootFile = storageState.getRootFile();
-        Deployment dep = createDeployment(location, rootFile);
+        Deployment dep;
+        OSGiMetaData metadata = metadataCache ? MetaDataCache.getMetaData(storageState) : null;
+        if (metadata != null) {
+            String symbolicName = metadata.getBundleSymbolicName();
+            Version version = metadata.getBundleVersion();
+            dep = DeploymentFactory.createDeployment(rootFile, location, symbolicName, version);
+            dep.addAttachment(OSGiMetaData.class, metadata);
+        } else {
+            dep = createDeployment(location, rootFile);
+        }
         dep.setAutoStart(storageState.isPersistentlyStarted());
         dep.setStartLevel(storageState.getStartLevel());
         dep.addAttachment(StorageState.class, storageState);
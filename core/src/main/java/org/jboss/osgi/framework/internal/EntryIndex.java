@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jboss.osgi.vfs.VirtualFile;
+
+/**
+ * A sorted index of the entry names in a revision content root.
+ *
+ * Names are relative to the root and have no leading slash. Directory names end with a slash.
+ * Directories that are only implied by the path of a contained entry are part of the index too.
+ * The entries below a path are a contiguous range in the index, so that findEntries
+ * and getEntryPaths are prefix scans.
+ */
+final class EntryIndex {
+
+    private final String[] names;
+
+    private EntryIndex(Set<String> entryNames) {
+        names = entryNames.toArray(new String[entryNames.size()]);
+    }
+
+    /**
+     * Build the index from the central directory of the given jar file.
+     */
+    static EntryIndex create(File jarFile) throws IOException {
+        Set<String> entryNames = new TreeSet<String>();
+        ZipFile zipFile = new ZipFile(jarFile);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                addEntry(entryNames, entries.nextElement().getName());
+            }
+        } finally {
+            zipFile.close();
+        }
+        return new EntryIndex(entryNames);
+    }
+
+    /**
+     * Build the index by walking the given root file.
+     */
+    static EntryIndex create(VirtualFile rootFile) throws IOException {
+        Set<String> entryNames = new TreeSet<String>();
+        String rootPath = rootFile.getPathName();
+        for (VirtualFile child : rootFile.getChildrenRecursively()) {
+            String name = child.getPathName().substring(rootPath.length());
+            if (name.startsWith("/"))
+                name = name.substring(1);
+            if (child.isDirectory() && name.endsWith("/") == false)
+                name = name + "/";
+            addEntry(entryNames, name);
+        }
+        return new EntryIndex(entryNames);
+    }
+
+    private static void addEntry(Set<String> entryNames, String name) {
+        if (name.startsWith("/"))
+            name = name.substring(1);
+        if (name.length() == 0)
+            return;
+
+        // Add the implied parent directories
+        int index = name.indexOf('/');
+        while (index > 0 && index < name.length() - 1) {
+            entryNames.add(name.substring(0, index + 1));
+            index = name.indexOf('/', index + 1);
+        }
+        entryNames.add(name);
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Get the entry names below the given path whose last name segment matches the given pattern.
+     *
+     * @param pattern The file pattern which may contain '*' wildcards, null matches all entries
+     * @return The matching entry names, which may be empty
+     */
+    List<String> findEntries(String path, String pattern, boolean recurse) {
+        if (path == null)
+            throw MESSAGES.illegalArgumentNull("path");
+        if (pattern == null)
+            pattern = "*";
+
+        String prefix = getPrefix(path);
+        List<String> result = new ArrayList<String>();
+        for (int i = getStartIndex(prefix); i < names.length && names[i].startsWith(prefix); i++) {
+            String name = names[i];
+            int end = name.endsWith("/") ? name.length() - 1 : name.length();
+            int start = name.lastIndexOf('/', end - 1) + 1;
+            if (start < prefix.length())
+                continue;
+            if (recurse == false && start != prefix.length())
+                continue;
+            if (matches(pattern, name, start, end))
+                result.add(name);
+        }
+        return result;
+    }
+
+    /**
+     * Get the entry names of the direct children of the given path.
+     *
+     * @return The child entry names, which may be empty
+     */
+    List<String> getEntryPaths(String path) {
+        if (path == null)
+            throw MESSAGES.illegalArgumentNull("path");
+
+        String prefix = getPrefix(path);
+        List<String> result = new ArrayList<String>();
+        for (int i = getStartIndex(prefix); i < names.length && names[i].startsWith(prefix); i++) {
+            String name = names[i];
+            int index = name.indexOf('/', prefix.length());
+            if (name.length() > prefix.length() && (index < 0 || index == name.length() - 1))
+                result.add(name);
+        }
+        return result.isEmpty() ? Collections.<String>emptyList() : result;
+    }
+
+    private static String getPrefix(String path) {
+        String prefix = path.startsWith("/") ? path.substring(1) : path;
+        if (prefix.length() > 0 && prefix.endsWith("/") == false)
+            prefix = prefix + "/";
+        return prefix;
+    }
+
+    private int getStartIndex(String prefix) {
+        int index = Arrays.binarySearch(names, prefix);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // Match the name segment [start,end) against a pattern with '*' wildcards
+    private static boolean matches(String pattern, String name, int start, int end) {
+        int p = 0;
+        int n = start;
+        int starIndex = -1;
+        int starMatch = start;
+        while (n < end) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                starIndex = p++;
+                starMatch = n;
+            } else if (p < pattern.length() && pattern.charAt(p) == name.charAt(n)) {
+                p++;
+                n++;
+            } else if (starIndex >= 0) {
+                p = starIndex + 1;
+                n = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
@@ -36,6 +36,8 @@ import org.jboss.osgi.resolver.XBundleRevision;
 import org.jboss.osgi.resolver.XEnvironment;
 import org.jboss.osgi.resolver.XResource;
 import org.jboss.osgi.resolver.spi.AbstractEnvironment;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
 import org.osgi.resource.Wire;
 import org.osgi.resource.Wiring;
 
@@ -48,11 +50,19 @@ import org.osgi.resource.Wiring;
 public final class EnvironmentImpl extends AbstractEnvironment implements XEnvironment {
 
     private final LockManager lockManager;
+    private final CapabilityIndex capabilityIndex = new CapabilityIndex();
 
     public EnvironmentImpl(LockManager lockManager) {
         this.lockManager = lockManager;
     }
 
+    /**
+     * Get the index of the capabilities of all installed resources.
+     */
+    CapabilityIndex getCapabilityIndex() {
+        return capabilityIndex;
+    }
+
     @Override
     public void installResources(XResource... resources) {
 
@@ -70,6 +80,9 @@ public final class EnvironmentImpl extends AbstractEnvironment implements XEnvir
             FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
             lockContext = lockManager.lockItems(Method.INSTALL, getLockableItems(wireLock, resources));
             super.installResources(resources);
+            for (XResource res : resources) {
+                capabilityIndex.addResource(res);
+            }
         } finally {
             lockManager.unlockItems(lockContext);
         }
@@ -82,11 +95,26 @@ public final class EnvironmentImpl extends AbstractEnvironment implements XEnvir
             FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
             lockContext = lockManager.lockItems(Method.UNINSTALL, getLockableItems(wireLock, resources));
             super.uninstallResources(resources);
+            for (XResource res : resources) {
+                capabilityIndex.removeResource(res);
+            }
         } finally {
             lockManager.unlockItems(lockContext);
         }
     }
 
+    /**
+     * Find the providers of the package, bundle and host namespaces in the capability index,
+     * so that the lookup costs O(matches). Other namespaces are left to the default implementation.
+     */
+    @Override
+    public List<Capability> findProviders(Requirement req) {
+        if (CapabilityIndex.isIndexed(req.getNamespace()) == false)
+            return super.findProviders(req);
+
+        return capabilityIndex.findProviders(req);
+    }
+
     @Override
     public Wiring createWiring(XResource res, List<Wire> required, List<Wire> provided) {
         XBundleRevision brev = (XBundleRevision) res;
@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
+
+import java.util.concurrent.ExecutorService;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.BundleManager;
+import org.jboss.osgi.framework.spi.ExecutorServiceFactory;
+
+/**
+ * The default {@link ExecutorServiceFactory}.
+ *
+ * Each executor is a serial lane on the shared worker pool of the framework. The workers are virtual threads
+ * when configured and supported by the JVM. A parked virtual thread does not hold on to a platform thread,
+ * so blocking listener callbacks do not pin scarce platform threads.
+ */
+public final class ExecutorServiceFactoryImpl implements ExecutorServiceFactory {
+
+    static final String THREADS_VIRTUAL = "virtual";
+
+    private final WorkerPool workerPool;
+
+    ExecutorServiceFactoryImpl(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Get the factory that is configured by the framework properties.
+     */
+    public static ExecutorServiceFactory getExecutorServiceFactory(BundleManager bundleManager) {
+        Object value = bundleManager.getProperty(Constants.PROPERTY_EXECUTOR_FACTORY);
+        if (value instanceof ExecutorServiceFactory)
+            return (ExecutorServiceFactory) value;
+
+        if (value != null) {
+            try {
+                Class<?> factoryClass = Class.forName(value.toString().trim(), true, ExecutorServiceFactory.class.getClassLoader());
+                return (ExecutorServiceFactory) factoryClass.newInstance();
+            } catch (Exception ex) {
+                throw MESSAGES.illegalStateCannotCreateExecutorServiceFactory(ex, value);
+            }
+        }
+
+        BundleManagerPlugin bundleManagerPlugin = BundleManagerPlugin.assertBundleManagerPlugin(bundleManager);
+        return new ExecutorServiceFactoryImpl(bundleManagerPlugin.getWorkerPool());
+    }
+
+    @Override
+    public ExecutorService createExecutorService(String threadName) {
+        return workerPool.createLane(threadName);
+    }
+}
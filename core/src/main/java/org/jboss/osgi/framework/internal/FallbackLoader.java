@@ -100,6 +100,17 @@ final class FallbackLoader implements LocalLoader {
 
     @Override
     public Class<?> loadClassLocal(String className, boolean resolve) {
+        ClassLoadingMetricsImpl metrics = frameworkState.getClassLoadingMetrics();
+        if (metrics.isEnabled() == false)
+            return loadClassFallback(className);
+
+        long start = System.nanoTime();
+        Class<?> result = loadClassFallback(className);
+        metrics.addFallback(hostBundle.getBundleId(), System.nanoTime() - start, result != null);
+        return result;
+    }
+
+    private Class<?> loadClassFallback(String className) {
         XBundleRevision brev = null;
         try {
             lockFallbackLoader();
@@ -132,6 +143,17 @@ final class FallbackLoader implements LocalLoader {
 
     @Override
     public List<Resource> loadResourceLocal(String resName) {
+        ClassLoadingMetricsImpl metrics = frameworkState.getClassLoadingMetrics();
+        if (metrics.isEnabled() == false)
+            return loadResourceFallback(resName);
+
+        long start = System.nanoTime();
+        List<Resource> result = loadResourceFallback(resName);
+        metrics.addFallback(hostBundle.getBundleId(), System.nanoTime() - start, result.isEmpty() == false);
+        return result;
+    }
+
+    private List<Resource> loadResourceFallback(String resName) {
         XBundleRevision brev = null;
         try {
             lockFallbackLoader();
@@ -53,6 +53,8 @@ import org.jboss.osgi.framework.spi.StartLevelPlugin;
 import org.jboss.osgi.framework.spi.StartLevelSupport;
 import org.jboss.osgi.framework.spi.SystemPathsPlugin;
 import org.jboss.osgi.framework.spi.SystemServicesPlugin;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
@@ -170,9 +172,23 @@ public final class FrameworkActive extends AbstractFrameworkService {
     public void stop(StopContext context) {
         BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
         bundleManager.injectedFrameworkActive.uninject();
+        flushClassDataCaches(bundleManager);
         super.stop(context);
     }
 
+    // Write the classes that were loaded in this session for the next start
+    private void flushClassDataCaches(BundleManagerPlugin bundleManager) {
+        for (XBundle bundle : bundleManager.getBundles()) {
+            if (bundle instanceof UserBundleState) {
+                for (XBundleRevision brev : ((UserBundleState<?>) bundle).getAllBundleRevisions()) {
+                    for (RevisionContent revContent : ((UserBundleRevision) brev).getClassPathContent()) {
+                        revContent.flushClassDataCache();
+                    }
+                }
+            }
+        }
+    }
+
     private int getBeginningStartLevel(BundleManagerPlugin bundleManager) {
         String levelSpec = (String) bundleManager.getProperty(Constants.FRAMEWORK_BEGINNING_STARTLEVEL);
         if (levelSpec != null) {
@@ -73,6 +73,7 @@ public final class FrameworkBuilderImpl implements FrameworkBuilder {
     private final Mode initialMode;
     private ServiceContainer serviceContainer;
     private ServiceTarget serviceTarget;
+    private BootProfilerImpl bootProfiler;
     private boolean closed;
 
     public FrameworkBuilderImpl(Map<String, Object> props, Mode initialMode) {
@@ -171,10 +172,12 @@ public final class FrameworkBuilderImpl implements FrameworkBuilder {
 
         BundleManagerPlugin bundleManager = new BundleManagerPlugin(serviceContainer, this);
         FrameworkState frameworkState = new FrameworkState(bundleManager);
+        bootProfiler = bundleManager.getBootProfiler();
 
         registerIntegrationService(FrameworkPhase.CREATE, bundleManager);
         registerIntegrationService(FrameworkPhase.CREATE, new FrameworkCreate(frameworkState, initialMode));
         registerIntegrationService(FrameworkPhase.CREATE, new BundleLifecyclePlugin());
+        registerIntegrationService(FrameworkPhase.CREATE, new ClassLoadingMetricsPlugin(frameworkState));
         registerIntegrationService(FrameworkPhase.CREATE, new FrameworkModuleProviderPlugin());
         registerIntegrationService(FrameworkPhase.CREATE, new FrameworkModuleLoaderPlugin());
         registerIntegrationService(FrameworkPhase.CREATE, new StartLevelPlugin());
@@ -208,6 +211,13 @@ public final class FrameworkBuilderImpl implements FrameworkBuilder {
     public void installServices(FrameworkPhase phase, ServiceTarget serviceTarget, ServiceListener<Object> listener) {
         assertNotClosed();
         Map<ServiceName, IntegrationService<?>> phaseServices = integrationServices.get(phase);
+
+        // Time the start of the integration services
+        if (bootProfiler != null && bootProfiler.isEnabled()) {
+            serviceTarget = serviceTarget.subTarget();
+            serviceTarget.addListener(bootProfiler.getServiceListener());
+        }
+
         for (IntegrationService<?> service : phaseServices.values()) {
             service.install(serviceTarget, listener);
         }
@@ -455,40 +455,64 @@ final class FrameworkEventsImpl implements FrameworkEvents {
 
     @Override
     public void fireServiceEvent(final XBundle bundleState, int type, final ServiceState serviceState) {
+        fireServiceEvents(bundleState, type, Collections.singletonList(serviceState));
+    }
+
+    @Override
+    public void fireServiceEvents(final XBundle bundleState, int type, final List<ServiceState> serviceStates) {
 
         // Do nothing it the framework is not active
         if (bundleManager.isFrameworkCreated() == false)
             return;
 
         // Get a snapshot of the current listeners
-        List<ServiceListenerRegistration> listenerRegs = new ArrayList<ServiceListenerRegistration>();
+        List<ServiceListenerRegistration> listenerSnapshot = new ArrayList<ServiceListenerRegistration>();
         synchronized (serviceListeners) {
             for (Entry<XBundle, List<ServiceListenerRegistration>> entry : serviceListeners.entrySet()) {
                 for (ServiceListenerRegistration listener : entry.getValue()) {
                     BundleContext context = listener.getBundleContext();
                     if (context != null)
-                        listenerRegs.add(listener);
+                        listenerSnapshot.add(listener);
                 }
             }
         }
 
-        // Expose the wrapper not the state itself
-        ServiceEvent event = new ServiceEventImpl(type, serviceState);
-        String typeName = ConstantsHelper.serviceEvent(event.getType());
-        LOGGER.tracef("Service %s: %s", typeName, serviceState);
-
-        // Call the registered event hooks
+        // Get the registered event hooks
         SystemBundleState sysBundle = bundleManager.getSystemBundle();
         BundleContext sysContext = sysBundle.getBundleContext();
-        listenerRegs = processEventHooks(sysContext, listenerRegs, event);
+        List<EventHook> eventHooks = getEventHooks(sysContext);
 
-        // Nobody is interested
-        if (listenerRegs.isEmpty())
-            return;
+        for (ServiceState serviceState : serviceStates) {
+
+            // A service of a batch may have been unregistered by a listener to a previous event
+            if (type == ServiceEvent.REGISTERED && serviceState.isUnregistered())
+                continue;
+
+            // Expose the wrapper not the state itself
+            ServiceEvent event = new ServiceEventImpl(type, serviceState);
+            String typeName = ConstantsHelper.serviceEvent(event.getType());
+            LOGGER.tracef("Service %s: %s", typeName, serviceState);
+
+            // Call the registered event hooks
+            List<ServiceListenerRegistration> listenerRegs = new ArrayList<ServiceListenerRegistration>(listenerSnapshot);
+            listenerRegs = processEventHooks(eventHooks, listenerRegs, event);
 
+            // Nobody is interested
+            if (listenerRegs.isEmpty())
+                continue;
+
+            deliverServiceEvent(listenerRegs, event, typeName, serviceState);
+        }
+    }
+
+    private void deliverServiceEvent(List<ServiceListenerRegistration> listenerRegs, ServiceEvent event, String typeName, ServiceState serviceState) {
         // Call the listeners. All service events are synchronously delivered
         for (ServiceListenerRegistration listenerReg : listenerRegs) {
 
+            // A previous listener may have removed this one, or stopped its bundle
+            if (isRegistered(listenerReg) == false)
+                continue;
+
             // Service events must only be delivered to event listeners which can validly cast the event
             if (listenerReg.isAllServiceListener() == false) {
                 XBundle owner = listenerReg.getBundleState();
@@ -526,7 +550,21 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         }
     }
 
-    private List<ServiceListenerRegistration> processEventHooks(BundleContext syscontext, List<ServiceListenerRegistration> listeners, final ServiceEvent event) {
+    private boolean isRegistered(ServiceListenerRegistration listenerReg) {
+        if (listenerReg.getBundleContext() == null)
+            return false;
+        List<ServiceListenerRegistration> listeners = serviceListeners.get(listenerReg.getBundleState());
+        if (listeners != null) {
+            // Identity, a listener that was added again has a new registration
+            for (ServiceListenerRegistration aux : listeners) {
+                if (aux == listenerReg)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private List<ServiceListenerRegistration> processEventHooks(List<EventHook> eventHooks, List<ServiceListenerRegistration> listeners, final ServiceEvent event) {
         // Collect the BundleContexts
         Collection<BundleContext> contexts = new HashSet<BundleContext>();
         for (ServiceListenerRegistration listener : listeners) {
@@ -537,7 +575,6 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         contexts = new RemoveOnlyCollection<BundleContext>(contexts);
 
         // Call the registered event hooks
-        List<EventHook> eventHooks = getEventHooks(syscontext);
         for (EventHook hook : eventHooks) {
             try {
                 hook.event(event, contexts);
@@ -24,6 +24,7 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -34,6 +35,7 @@ import java.util.Map;
 import org.jboss.msc.service.ServiceContainer;
 import org.jboss.msc.service.ServiceTarget;
 import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.BootProfiler;
 import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.FrameworkBuilder;
 import org.jboss.osgi.framework.spi.FrameworkBuilder.FrameworkPhase;
@@ -133,6 +135,7 @@ final class FrameworkProxy implements Framework, Adaptable {
             return;
 
         LOGGER.debugf("Init framework");
+        long startTime = System.nanoTime();
         try {
             ServiceContainer serviceContainer = frameworkBuilder.getServiceContainer();
             if (serviceContainer == null)
@@ -155,6 +158,11 @@ final class FrameworkProxy implements Framework, Adaptable {
                 throw serviceTracker.getFirstFailure();
             }
 
+            BootProfilerImpl bootProfiler = bundleManager.getBootProfiler();
+            if (bootProfiler.isEnabled()) {
+                bootProfiler.addSpan(BootProfiler.CATEGORY_PHASE, "init", startTime, System.nanoTime());
+            }
+
         } catch (BundleException ex) {
             bundleManager.setManagerState(Bundle.INSTALLED);
             throw ex;
@@ -194,6 +202,7 @@ final class FrameworkProxy implements Framework, Adaptable {
             init();
 
         LOGGER.debugf("Start framework");
+        long startTime = System.nanoTime();
         try {
 
             ServiceTracker<Object> serviceTracker = new ServiceTracker<Object>("Framework.start");
@@ -206,6 +215,14 @@ final class FrameworkProxy implements Framework, Adaptable {
 
             bundleManager.setManagerState(Bundle.ACTIVE);
 
+            // Write the boot profile to the storage area
+            BootProfilerImpl bootProfiler = bundleManager.getBootProfiler();
+            if (bootProfiler.isEnabled()) {
+                bootProfiler.addSpan(BootProfiler.CATEGORY_PHASE, "start", startTime, System.nanoTime());
+                File storageArea = bundleManager.getFrameworkState().getBundleStorage().getStorageArea();
+                bootProfiler.writeReport(storageArea);
+            }
+
         } catch (BundleException ex) {
             throw ex;
         } catch (Throwable ex) {
@@ -49,6 +49,9 @@ import org.osgi.framework.launch.Framework;
 final class FrameworkState {
 
     private final BundleManager bundleManager;
+    private final RevisionContentURLHandler revisionContentURLHandler = new RevisionContentURLHandler();
+    private final ClassLoadingMetricsImpl classLoadingMetrics = new ClassLoadingMetricsImpl();
+    private final WiringIndex wiringIndex = new WiringIndex();
 
     final InjectedValue<BundleStorage> injectedBundleStorage = new InjectedValue<BundleStorage>();
     final InjectedValue<DeploymentProvider> injectedDeploymentFactory = new InjectedValue<DeploymentProvider>();
@@ -77,6 +80,18 @@ final class FrameworkState {
         return BundleManagerPlugin.assertBundleManagerPlugin(bundleManager);
     }
 
+    ClassLoadingMetricsImpl getClassLoadingMetrics() {
+        return classLoadingMetrics;
+    }
+
+    RevisionContentURLHandler getRevisionContentURLHandler() {
+        return revisionContentURLHandler;
+    }
+
+    WiringIndex getWiringIndex() {
+        return wiringIndex;
+    }
+
     BundleStorage getBundleStorage() {
         return injectedBundleStorage.getValue();
     }
@@ -21,11 +21,14 @@ package org.jboss.osgi.framework.internal;
  * #L%
  */
 
+import java.util.Arrays;
+
 import org.jboss.modules.ClassSpec;
 import org.jboss.modules.ModuleClassLoader;
 import org.jboss.modules.ModuleClassLoaderFactory;
 import org.jboss.modules.filter.PathFilter;
 import org.jboss.osgi.framework.spi.BundleReferenceClassLoader;
+import org.osgi.framework.Bundle;
 
 /**
  * A {@link ModuleClassLoader} that hosld a reference to the underlying bundle.
@@ -35,30 +38,89 @@ import org.jboss.osgi.framework.spi.BundleReferenceClassLoader;
  */
 final class HostBundleClassLoader extends BundleReferenceClassLoader<HostBundleState> {
 
+    // The start times of the class defines in progress on the current thread
+    private static final ThreadLocal<DefineTimes> defineTimes = new ThreadLocal<DefineTimes>() {
+        @Override
+        protected DefineTimes initialValue() {
+            return new DefineTimes();
+        }
+    };
+
     private final PathFilter lazyFilter;
+    private final ClassLoadingMetricsImpl metrics;
 
     private HostBundleClassLoader(Configuration configuration, HostBundleState bundleState, PathFilter lazyFilter) {
         super(configuration, bundleState);
         this.lazyFilter = lazyFilter;
+        this.metrics = bundleState.getFrameworkState().getClassLoadingMetrics();
     }
 
     @Override
     protected void preDefine(ClassSpec classSpec, String className) {
-        if (getBundleState().awaitLazyActivation()) {
-            String path = className.substring(0, className.lastIndexOf('.')).replace('.', '/');
-            if (lazyFilter.accept(path)) {
-                LazyActivationTracker.preDefineClass(getBundleState(), className);
-            }
+        if (metrics.isEnabled()) {
+            defineTimes.get().push(className, System.nanoTime());
+        }
+        if (awaitLazyActivation() && acceptLazyActivation(className)) {
+            LazyActivationTracker.preDefineClass(getBundleState(), className);
         }
     }
 
     @Override
     protected void postDefine(ClassSpec classSpec, Class<?> definedClass) {
-        if (getBundleState().awaitLazyActivation()) {
-            String path = definedClass.getPackage().getName().replace('.', '/');
-            if (lazyFilter.accept(path)) {
-                LazyActivationTracker.postDefineClass(getBundleState(), definedClass);
+        if (metrics.isEnabled()) {
+            long start = defineTimes.get().pop(definedClass.getName());
+            if (start != DefineTimes.NO_START) {
+                metrics.addDefine(getBundleState().getBundleId(), System.nanoTime() - start);
+            }
+        }
+        if (awaitLazyActivation() && acceptLazyActivation(definedClass.getName())) {
+            LazyActivationTracker.postDefineClass(getBundleState(), definedClass);
+        }
+    }
+
+    // An active bundle is done with lazy activation, also when it was started eagerly
+    private boolean awaitLazyActivation() {
+        HostBundleState bundleState = getBundleState();
+        return bundleState.awaitLazyActivation() && bundleState.getState() != Bundle.ACTIVE;
+    }
+
+    private boolean acceptLazyActivation(String className) {
+        int index = className.lastIndexOf('.');
+        String path = index > 0 ? className.substring(0, index).replace('.', '/') : "";
+        return lazyFilter.accept(path);
+    }
+
+    // A define that fails has no postDefine, its entry is dropped by the next matching pop
+    private static class DefineTimes {
+
+        static final long NO_START = Long.MIN_VALUE;
+
+        private String[] classNames = new String[8];
+        private long[] startTimes = new long[8];
+        private int depth;
+
+        void push(String className, long startTime) {
+            if (depth == classNames.length) {
+                classNames = Arrays.copyOf(classNames, depth * 2);
+                startTimes = Arrays.copyOf(startTimes, depth * 2);
+            }
+            classNames[depth] = className;
+            startTimes[depth] = startTime;
+            depth++;
+        }
+
+        long pop(String className) {
+            for (int i = depth - 1; i >= 0; i--) {
+                if (className.equals(classNames[i])) {
+                    long startTime = startTimes[i];
+                    for (int j = i; j < depth; j++) {
+                        classNames[j] = null;
+                    }
+                    depth = i;
+                    return startTime;
+                }
             }
+            return NO_START;
         }
     }
 
@@ -31,9 +31,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.jboss.modules.ModuleClassLoader;
 import org.jboss.modules.ModuleIdentifier;
@@ -142,24 +145,76 @@ final class HostBundleRevision extends UserBundleRevision {
     }
 
     Enumeration<URL> findResolvedEntries(String path, String pattern, boolean recurse) {
-        Enumeration<URL> hostEntries = super.findEntries(path, pattern, recurse);
-
         Set<FragmentBundleRevision> fragments = getAttachedFragments();
         if (fragments.size() == 0)
-            return hostEntries;
+            return super.findEntries(path, pattern, recurse);
+
+        // Build the missing entry indexes of the host and the fragments in parallel
+        List<RevisionContent> contents = new ArrayList<RevisionContent>();
+        addRootContent(contents, this);
+        for (FragmentBundleRevision fragmentRevision : fragments) {
+            addRootContent(contents, fragmentRevision);
+        }
+        if (contents.size() > 1) {
+            List<Callable<EntryIndex>> tasks = new ArrayList<Callable<EntryIndex>>();
+            for (final RevisionContent revContent : contents) {
+                tasks.add(new Callable<EntryIndex>() {
+                    @Override
+                    public EntryIndex call() throws Exception {
+                        return revContent.getEntryIndex();
+                    }
+                });
+            }
+            try {
+                BundleManagerPlugin bundleManager = BundleManagerPlugin.assertBundleManagerPlugin(getFrameworkState().getBundleManager());
+                bundleManager.getEntryIndexTasks().invokeAll(tasks);
+            } catch (ExecutionException ex) {
+                LOGGER.debugf(ex.getCause(), "Cannot build entry indexes for: %s", this);
+            }
+        }
 
         // If there are attached fragments, their entries also need to be included.
-        List<URL> allEntries = (hostEntries == null ? new ArrayList<URL>() : new ArrayList<URL>(Collections.list(hostEntries)));
+        final List<Enumeration<URL>> allEntries = new ArrayList<Enumeration<URL>>();
+        Enumeration<URL> hostEntries = super.findEntries(path, pattern, recurse);
+        if (hostEntries != null)
+            allEntries.add(hostEntries);
         for (FragmentBundleRevision fragmentRevision : fragments) {
             Enumeration<URL> fragEntries = fragmentRevision.findEntries(path, pattern, recurse);
             if (fragEntries != null)
-                allEntries.addAll(Collections.list(fragEntries));
+                allEntries.add(fragEntries);
         }
 
         if (allEntries.size() == 0)
             return null;
-        else
-            return Collections.enumeration(allEntries);
+        if (allEntries.size() == 1)
+            return allEntries.get(0);
+
+        return new Enumeration<URL>() {
+            private int index;
+
+            @Override
+            public boolean hasMoreElements() {
+                while (index < allEntries.size()) {
+                    if (allEntries.get(index).hasMoreElements())
+                        return true;
+                    index++;
+                }
+                return false;
+            }
+
+            @Override
+            public URL nextElement() {
+                if (hasMoreElements() == false)
+                    throw new NoSuchElementException();
+                return allEntries.get(index).nextElement();
+            }
+        };
+    }
+
+    private static void addRootContent(List<RevisionContent> contents, UserBundleRevision userRev) {
+        RevisionContent rootContent = userRev.getContentById(0);
+        if (rootContent != null && rootContent.hasEntryIndex() == false)
+            contents.add(rootContent);
     }
 
     @Override
@@ -25,9 +25,7 @@ import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.logging.Logger.Level;
@@ -54,9 +52,6 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
-import org.osgi.framework.wiring.BundleRevision;
-import org.osgi.framework.wiring.BundleWiring;
-import org.osgi.resource.Wire;
 import org.osgi.service.resolver.ResolutionException;
 
 /**
@@ -167,21 +162,6 @@ final class HostBundleState extends UserBundleState<HostBundleRevision> {
         return alreadyStarting.get();
     }
 
-    Set<HostBundleState> getDependentBundles() {
-        Set<HostBundleState> result = new HashSet<HostBundleState>();
-        if (isResolved() == true) {
-            BundleWiring wiring = getBundleRevision().getWiring();
-            List<Wire> wires = wiring.getRequiredResourceWires(null);
-            for (Wire wire : wires) {
-                BundleRevision brev = (BundleRevision) wire.getProvider();
-                Bundle bundle = brev.getBundle();
-                if (bundle instanceof UserBundleState)
-                    result.add((HostBundleState) bundle);
-            }
-        }
-        return result;
-    }
-
     @Override
     void startInternal(int options) throws BundleException {
 
@@ -484,6 +464,7 @@ final class HostBundleState extends UserBundleState<HostBundleRevision> {
         for (ServiceState serviceState : hostState.getRegisteredServicesInternal()) {
             serviceState.unregisterInternal();
         }
+        hostState.releaseServicesInUse();
 
         // Any listeners registered by this bundle must be removed
         FrameworkEvents eventsPlugin = hostState.getFrameworkState().getFrameworkEvents();
@@ -23,28 +23,33 @@ package org.jboss.osgi.framework.internal;
 
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * A {@link ThreadLocal} of bundles that need to get started caused by lazy activation.
  *
+ * The state of a thread is kept in a single {@link Activations} instance, which is only created
+ * when there is something to track and is removed again when the outermost tracking scope ends.
+ * Bundles are activated in LIFO order, a bundle that is added while another one is activated
+ * is started before the remaining bundles.
+ *
  * @author thomas.diesler@jboss.com
  * @since 02-May-2011
  */
 final class LazyActivationTracker {
 
-    private final static ThreadLocal<Stack<HostBundleState>> stackAssociation = new ThreadLocal<Stack<HostBundleState>>();
-    private final static ThreadLocal<HostBundleState> initiatorAssociation = new ThreadLocal<HostBundleState>();
+    private final static ThreadLocal<Activations> activationsAssociation = new ThreadLocal<Activations>();
 
     static void startTracking(HostBundleState hostBundle, String className) {
         LOGGER.tracef("startTracking %s from: %s", className, hostBundle);
-        initiatorAssociation.set(hostBundle);
+        getActivations().depth++;
     }
 
     static void processLoadedClass(Class<?> loadedClass) {
-        assert initiatorAssociation.get() != null : "No activation initiator";
+        Activations activations = activationsAssociation.get();
+        assert activations != null && activations.depth > 0 : "No activation initiator";
         LOGGER.tracef("processLoadedClass: %s", loadedClass.getName());
-        processActivationStack();
+        processActivations(activations);
     }
 
     static void preDefineClass(HostBundleState hostBundle, String className) {
@@ -54,37 +59,48 @@ final class LazyActivationTracker {
 
     static void postDefineClass(HostBundleState hostBundle, Class<?> definedClass) {
         LOGGER.tracef("postDefineClass %s from: %s", definedClass.getName(), hostBundle);
-        if (initiatorAssociation.get() == null) {
-            processActivationStack();
+        Activations activations = activationsAssociation.get();
+        if (activations != null && activations.depth == 0) {
+            processActivations(activations);
+            if (activations.depth == 0 && activations.size == 0) {
+                activationsAssociation.remove();
+            }
         }
     }
 
     static void stopTracking(HostBundleState hostBundle, String className) {
         LOGGER.tracef("stopTracking %s from: %s", className, hostBundle);
-        initiatorAssociation.remove();
-        stackAssociation.remove();
+        Activations activations = activationsAssociation.get();
+        if (activations != null && --activations.depth == 0) {
+            activationsAssociation.remove();
+        }
+    }
+
+    private static Activations getActivations() {
+        Activations activations = activationsAssociation.get();
+        if (activations == null) {
+            activations = new Activations();
+            activationsAssociation.set(activations);
+        }
+        return activations;
     }
 
     private static void addDefinedClass(HostBundleState hostBundle, String className) {
         if (hostBundle.awaitLazyActivation() && hostBundle.isAlreadyStarting() == false) {
-            Stack<HostBundleState> stack = stackAssociation.get();
-            if (stack == null) {
-                stack = new Stack<HostBundleState>();
-                stackAssociation.set(stack);
-            }
-            if (stack.contains(hostBundle) == false) {
+            Activations activations = getActivations();
+            if (activations.contains(hostBundle) == false) {
                 LOGGER.tracef("addDefinedClass %s from: %s", className, hostBundle);
-                stack.push(hostBundle);
+                activations.push(hostBundle);
             }
         }
     }
 
-    private static void processActivationStack() {
-        Stack<HostBundleState> stack = stackAssociation.get();
-        if (stack != null) {
-            LOGGER.tracef("processActivationStack: %s", stack);
-            while (stack.isEmpty() == false) {
-                HostBundleState hostBundle = stack.pop();
+    private static void processActivations(Activations activations) {
+        if (activations.size > 0) {
+            LOGGER.tracef("processActivations: %s", activations);
+            // An activation may add bundles on this thread again, those are popped next
+            while (activations.size > 0) {
+                HostBundleState hostBundle = activations.pop();
                 if (hostBundle.awaitLazyActivation()) {
                     try {
                         hostBundle.activateLazily();
@@ -95,4 +111,38 @@ final class LazyActivationTracker {
             }
         }
     }
+
+    // The bundles of the current thread that await activation, in the order they were added
+    private static class Activations {
+
+        private int depth;
+        private HostBundleState[] bundles = new HostBundleState[4];
+        private int size;
+
+        boolean contains(HostBundleState hostBundle) {
+            for (int i = 0; i < size; i++) {
+                if (bundles[i] == hostBundle)
+                    return true;
+            }
+            return false;
+        }
+
+        void push(HostBundleState hostBundle) {
+            if (size == bundles.length) {
+                bundles = Arrays.copyOf(bundles, size * 2);
+            }
+            bundles[size++] = hostBundle;
+        }
+
+        HostBundleState pop() {
+            HostBundleState result = bundles[--size];
+            bundles[size] = null;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.asList(bundles).subList(0, size).toString();
+        }
+    }
 }
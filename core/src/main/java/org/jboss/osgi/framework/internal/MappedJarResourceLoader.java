@@ -0,0 +1,331 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+import org.jboss.modules.ClassSpec;
+import org.jboss.modules.PackageSpec;
+import org.jboss.modules.Resource;
+import org.jboss.modules.ResourceLoader;
+import org.jboss.osgi.framework.spi.PathTable;
+import org.jboss.osgi.vfs.VFSUtils;
+
+/**
+ * A {@link ResourceLoader} for a bundle jar on the local file system.
+ *
+ * The central directory is read once into a compact index of sorted entry names with parallel
+ * arrays for the entry attributes. The jar is memory-mapped. Stored entries are copied straight
+ * from the mapped region and deflated entries are inflated into arrays of the known entry size.
+ *
+ * Signed jars and zip64 archives are not supported, {@link #create(File, URL)} returns null for those.
+ * The mapping is released by the garbage collector only, which keeps the file locked on Windows.
+ */
+final class MappedJarResourceLoader implements ResourceLoader {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private final File jarFile;
+    private final URL rootURL;
+    private final ByteBuffer buffer;
+    private final String[] names;
+    private final int[] methods;
+    private final int[] compressedSizes;
+    private final int[] sizes;
+    private final int[] headerOffsets;
+    private final PathTable paths;
+    private volatile Manifest manifest;
+
+    private MappedJarResourceLoader(File jarFile, URL rootURL, ByteBuffer buffer, int entryCount, int centralOffset) throws IOException {
+        this.jarFile = jarFile;
+        this.rootURL = rootURL;
+        this.buffer = buffer;
+
+        // Read the central directory in archive order
+        String[] entryNames = new String[entryCount];
+        int[] entryPositions = new int[entryCount];
+        int pos = centralOffset;
+        for (int i = 0; i < entryCount; i++) {
+            if (buffer.getInt(pos) != CENTRAL_HEADER_SIGNATURE)
+                throw new IOException("Invalid central directory header in: " + jarFile);
+            int nameLength = getShort(pos + 28);
+            int extraLength = getShort(pos + 30);
+            int commentLength = getShort(pos + 32);
+            entryNames[i] = getString(pos + CENTRAL_HEADER_SIZE, nameLength);
+            entryPositions[i] = pos;
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        // Sort the index by name
+        Integer[] order = new Integer[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            order[i] = i;
+        }
+        final String[] unsorted = entryNames;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return unsorted[o1].compareTo(unsorted[o2]);
+            }
+        });
+
+        names = new String[entryCount];
+        methods = new int[entryCount];
+        compressedSizes = new int[entryCount];
+        sizes = new int[entryCount];
+        headerOffsets = new int[entryCount];
+        Set<String> pathSet = new HashSet<String>();
+        for (int i = 0; i < entryCount; i++) {
+            int entryPos = entryPositions[order[i]];
+            String name = unsorted[order[i]];
+            names[i] = name;
+            methods[i] = getShort(entryPos + 10);
+            compressedSizes[i] = buffer.getInt(entryPos + 20);
+            sizes[i] = buffer.getInt(entryPos + 24);
+            headerOffsets[i] = buffer.getInt(entryPos + 42);
+            if ((getShort(entryPos + 8) & 1) != 0)
+                throw new IOException("Encrypted entry " + name + " in: " + jarFile);
+            if (compressedSizes[i] < 0 || sizes[i] < 0 || headerOffsets[i] < 0)
+                throw new IOException("Unsupported entry size " + name + " in: " + jarFile);
+            if (isSignatureFile(name))
+                throw new IOException("Signed jar not supported: " + jarFile);
+            if (name.endsWith("/") == false) {
+                int index = name.lastIndexOf('/');
+                pathSet.add(index > 0 ? name.substring(0, index) : "");
+            }
+        }
+        if (pathSet.isEmpty())
+            throw new IOException("Cannot obtain paths from: " + jarFile);
+
+        paths = PathTable.create(pathSet);
+    }
+
+    /**
+     * Create a loader for the given jar file.
+     *
+     * @return The loader or null if the file cannot be served by this loader
+     */
+    static MappedJarResourceLoader create(File jarFile, URL rootURL) {
+        try {
+            if (jarFile.isFile() == false || jarFile.length() > Integer.MAX_VALUE)
+                return null;
+
+            MappedByteBuffer buffer;
+            RandomAccessFile raf = new RandomAccessFile(jarFile, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                VFSUtils.safeClose(raf);
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            int endPos = findEndHeader(buffer);
+            if (endPos < 0)
+                return null;
+
+            int entryCount = buffer.getShort(endPos + 10) & 0xffff;
+            int centralOffset = buffer.getInt(endPos + 16);
+            if (entryCount == 0xffff || centralOffset < 0)
+                return null;
+
+            return new MappedJarResourceLoader(jarFile, rootURL, buffer, entryCount, centralOffset);
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot create mapped resource loader for: %s", jarFile);
+            return null;
+        } catch (RuntimeException ex) {
+            LOGGER.debugf(ex, "Cannot create mapped resource loader for: %s", jarFile);
+            return null;
+        }
+    }
+
+    @Override
+    public String getRootName() {
+        return jarFile.getName();
+    }
+
+    @Override
+    public ClassSpec getClassSpec(String fileName) throws IOException {
+        int index = Arrays.binarySearch(names, fileName);
+        if (index < 0)
+            return null;
+
+        ClassSpec classSpec = new ClassSpec();
+        classSpec.setBytes(getEntryBytes(index));
+        int nameIndex = fileName.lastIndexOf('/');
+        String simpleName = nameIndex >= 0 ? fileName.substring(nameIndex + 1) : fileName;
+        classSpec.setCodeSource(new CodeSource(new URL("jar", null, -1, simpleName), (CodeSigner[]) null));
+        return classSpec;
+    }
+
+    @Override
+    public PackageSpec getPackageSpec(String name) throws IOException {
+        PackageSpec spec = new PackageSpec();
+        Manifest manifest = getManifest();
+        if (manifest == null) {
+            return spec;
+        }
+        Attributes mainAttribute = manifest.getMainAttributes();
+        Attributes entryAttribute = manifest.getAttributes(name);
+        spec.setSpecTitle(getDefinedAttribute(Attributes.Name.SPECIFICATION_TITLE, entryAttribute, mainAttribute));
+        spec.setSpecVersion(getDefinedAttribute(Attributes.Name.SPECIFICATION_VERSION, entryAttribute, mainAttribute));
+        spec.setSpecVendor(getDefinedAttribute(Attributes.Name.SPECIFICATION_VENDOR, entryAttribute, mainAttribute));
+        spec.setImplTitle(getDefinedAttribute(Attributes.Name.IMPLEMENTATION_TITLE, entryAttribute, mainAttribute));
+        spec.setImplVersion(getDefinedAttribute(Attributes.Name.IMPLEMENTATION_VERSION, entryAttribute, mainAttribute));
+        spec.setImplVendor(getDefinedAttribute(Attributes.Name.IMPLEMENTATION_VENDOR, entryAttribute, mainAttribute));
+        if (Boolean.parseBoolean(getDefinedAttribute(Attributes.Name.SEALED, entryAttribute, mainAttribute))) {
+            spec.setSealBase(rootURL);
+        }
+        return spec;
+    }
+
+    // Resources are served through the revision content, which provides bundle URLs
+    @Override
+    public Resource getResource(String name) {
+        return null;
+    }
+
+    @Override
+    public String getLibrary(String name) {
+        return null;
+    }
+
+    @Override
+    public Collection<String> getPaths() {
+        return paths;
+    }
+
+    private Manifest getManifest() throws IOException {
+        if (manifest == null) {
+            int index = Arrays.binarySearch(names, MANIFEST_NAME);
+            if (index < 0)
+                return null;
+            manifest = new Manifest(new ByteArrayInputStream(getEntryBytes(index)));
+        }
+        return manifest;
+    }
+
+    private byte[] getEntryBytes(int index) throws IOException {
+        int headerOffset = headerOffsets[index];
+        if (buffer.getInt(headerOffset) != LOCAL_HEADER_SIGNATURE)
+            throw new IOException("Invalid local header for " + names[index] + " in: " + jarFile);
+
+        int dataOffset = headerOffset + LOCAL_HEADER_SIZE + getShort(headerOffset + 26) + getShort(headerOffset + 28);
+        int compressedSize = compressedSizes[index];
+        byte[] bytes = new byte[sizes[index]];
+        if (methods[index] == ZipEntry.STORED) {
+            readBytes(dataOffset, bytes);
+            return bytes;
+        }
+        if (methods[index] != ZipEntry.DEFLATED)
+            throw new IOException("Unsupported compression method for " + names[index] + " in: " + jarFile);
+
+        byte[] compressed = new byte[compressedSize];
+        readBytes(dataOffset, compressed);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int count = 0;
+            while (count < bytes.length) {
+                int inflated = inflater.inflate(bytes, count, bytes.length - count);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                count += inflated;
+            }
+            if (count != bytes.length)
+                throw new IOException("Truncated entry " + names[index] + " in: " + jarFile);
+            return bytes;
+        } catch (DataFormatException ex) {
+            throw new IOException("Invalid entry " + names[index] + " in: " + jarFile + ": " + ex.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // The shared buffer is never repositioned, a duplicate is used for the relative bulk get
+    private void readBytes(int offset, byte[] bytes) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+    }
+
+    private int getShort(int offset) {
+        return buffer.getShort(offset) & 0xffff;
+    }
+
+    private String getString(int offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        readBytes(offset, bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static int findEndHeader(ByteBuffer buffer) {
+        int limit = Math.max(0, buffer.capacity() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int pos = buffer.capacity() - END_HEADER_SIZE; pos >= limit; pos--) {
+            if (buffer.getInt(pos) == END_HEADER_SIGNATURE) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSignatureFile(String name) {
+        if (name.startsWith("META-INF/") == false || name.indexOf('/', 9) >= 0)
+            return false;
+        String upper = name.toUpperCase();
+        return upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC");
+    }
+
+    private static String getDefinedAttribute(Attributes.Name name, Attributes entryAttribute, Attributes mainAttribute) {
+        final String value = entryAttribute == null ? null : entryAttribute.getValue(name);
+        return value == null ? mainAttribute == null ? null : mainAttribute.getValue(name) : value;
+    }
+}
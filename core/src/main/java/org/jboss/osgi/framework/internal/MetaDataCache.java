@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.BundleManager;
+import org.jboss.osgi.framework.spi.StorageState;
+import org.jboss.osgi.metadata.OSGiMetaData;
+import org.jboss.osgi.metadata.OSGiMetaDataBuilder;
+import org.jboss.osgi.vfs.VFSUtils;
+
+/**
+ * A cache of validated bundle metadata in the bundle's storage dir.
+ *
+ * An entry is only valid for the persisted content it was created from. The content
+ * is identified by its digest when the storage is content-addressed, otherwise by the
+ * revision and the size and timestamp of the revision file.
+ *
+ * On a warm start this avoids reading the manifest from the bundle content and
+ * validating the metadata again.
+ */
+final class MetaDataCache {
+
+    static final String METADATA_CACHE_FILE = "bundle-metadata.properties";
+
+    private static final String PROPERTY_CACHE_KEY = "CacheKey";
+    private static final String PROPERTY_VALIDATED = "Validated";
+    private static final String HEADER_PREFIX = "header.";
+
+    // Hide ctor
+    private MetaDataCache() {
+    }
+
+    /**
+     * True unless the cache is turned off with {@link Constants#PROPERTY_METADATA_CACHE}.
+     */
+    static boolean isEnabled(BundleManager bundleManager) {
+        Object value = bundleManager.getProperty(Constants.PROPERTY_METADATA_CACHE);
+        return value == null || Boolean.parseBoolean(value.toString());
+    }
+
+    /**
+     * Get the cached metadata for the given storage state.
+     *
+     * @return The metadata or null if there is no valid cache entry
+     */
+    static OSGiMetaData getMetaData(StorageState storageState) {
+        Properties props = loadValidEntry(storageState);
+        if (props == null)
+            return null;
+
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith(HEADER_PREFIX)) {
+                attributes.putValue(key.substring(HEADER_PREFIX.length()), props.getProperty(key));
+            }
+        }
+        try {
+            OSGiMetaData metadata = OSGiMetaDataBuilder.load(manifest);
+            LOGGER.debugf("Using cached metadata for: %s", storageState);
+            return metadata;
+        } catch (Exception ex) {
+            LOGGER.debugf(ex, "Cannot use cached metadata for: %s", storageState);
+            return null;
+        }
+    }
+
+    /**
+     * True if there is a valid cache entry for metadata that passed validation.
+     */
+    static boolean isValidated(StorageState storageState) {
+        Properties props = loadValidEntry(storageState);
+        return props != null && Boolean.parseBoolean(props.getProperty(PROPERTY_VALIDATED));
+    }
+
+    /**
+     * Cache the given validated metadata for the given storage state.
+     */
+    static void putMetaData(StorageState storageState, OSGiMetaData metadata) {
+        String cacheKey = getCacheKey(storageState);
+        if (cacheKey == null || metadata.getBundleSymbolicName() == null)
+            return;
+
+        Properties props = new Properties();
+        props.setProperty(PROPERTY_CACHE_KEY, cacheKey);
+        props.setProperty(PROPERTY_VALIDATED, Boolean.TRUE.toString());
+        Dictionary<String, String> headers = metadata.getHeaders();
+        Enumeration<String> keys = headers.keys();
+        while (keys.hasMoreElements()) {
+            String key = keys.nextElement();
+            props.setProperty(HEADER_PREFIX + key, headers.get(key));
+        }
+        File cacheFile = new File(storageState.getStorageDir(), METADATA_CACHE_FILE);
+        try {
+            FileOutputStream output = new FileOutputStream(cacheFile);
+            try {
+                props.store(output, "Cached Bundle Metadata");
+            } finally {
+                VFSUtils.safeClose(output);
+            }
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot write metadata cache: %s", cacheFile);
+            cacheFile.delete();
+        }
+    }
+
+    private static Properties loadValidEntry(StorageState storageState) {
+        File cacheFile = new File(storageState.getStorageDir(), METADATA_CACHE_FILE);
+        if (cacheFile.exists() == false)
+            return null;
+
+        Properties props = new Properties();
+        try {
+            FileInputStream input = new FileInputStream(cacheFile);
+            try {
+                props.load(input);
+            } finally {
+                VFSUtils.safeClose(input);
+            }
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot read metadata cache: %s", cacheFile);
+            return null;
+        }
+        String cacheKey = getCacheKey(storageState);
+        return cacheKey != null && cacheKey.equals(props.getProperty(PROPERTY_CACHE_KEY)) ? props : null;
+    }
+
+    /**
+     * Get the key that identifies the persisted content of the given storage state.
+     *
+     * @return The key or null if the content cannot be identified
+     */
+    static String getCacheKey(StorageState storageState) {
+        String digest = storageState.getContentDigest();
+        if (digest != null)
+            return digest;
+
+        try {
+            File bundleFile = storageState.getBundleFile();
+            if (bundleFile == null || bundleFile.exists() == false)
+                return null;
+            return "rev" + storageState.getRevisionId() + ":" + bundleFile.length() + ":" + bundleFile.lastModified();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
@@ -54,6 +54,7 @@ import org.jboss.osgi.framework.spi.FrameworkModuleLoader.ModuleSpecBuilderConte
 import org.jboss.osgi.framework.spi.FrameworkModuleProvider;
 import org.jboss.osgi.framework.spi.ModuleManager;
 import org.jboss.osgi.framework.spi.NativeLibraryProvider;
+import org.jboss.osgi.framework.spi.PathTable;
 import org.jboss.osgi.framework.spi.SystemPaths;
 import org.jboss.osgi.metadata.ActivationPolicyMetaData;
 import org.jboss.osgi.metadata.NativeLibrary;
@@ -225,9 +226,6 @@ public final class ModuleManagerImpl implements ModuleManager {
         // For every {@link XWire} add a dependency on the exporter
         processModuleWireList(wires, specHolderMap);
 
-        // Process fragment wires
-        Set<String> allPaths = new HashSet<String>();
-
         // Add the holder values to dependencies
         for (ModuleDependencyHolder holder : specHolderMap.values()) {
             moduleDependencies.put(holder.getIdentifier(), holder.create());
@@ -241,7 +239,6 @@ public final class ModuleManagerImpl implements ModuleManager {
         for (RevisionContent revContent : contentRoots) {
             ResourceLoader resLoader = new RevisionContentResourceLoader(revContent);
             specBuilder.addResourceRoot(ResourceLoaderSpec.createResourceLoaderSpec(resLoader));
-            allPaths.addAll(resLoader.getPaths());
         }
 
         // Process fragment local content and more resource roots
@@ -250,24 +247,24 @@ public final class ModuleManagerImpl implements ModuleManager {
             for (RevisionContent revContent : fragRev.getClassPathContent()) {
                 ResourceLoader resLoader = new RevisionContentResourceLoader(revContent);
                 specBuilder.addResourceRoot(ResourceLoaderSpec.createResourceLoaderSpec(resLoader));
-                allPaths.addAll(resLoader.getPaths());
             }
         }
 
-        // Get the set of imported paths
-        Set<String> importedPaths = new HashSet<String>();
+        // Get the set of imported paths, which is held by the fallback loader for the lifetime of the module
+        List<Set<String>> importPathSets = new ArrayList<Set<String>>();
         for (ModuleDependencyHolder holder : specHolderMap.values()) {
             Set<String> paths = holder.getImportPaths();
             if (paths != null) {
-                importedPaths.addAll(paths);
+                importPathSets.add(paths);
             }
         }
+        PathTable importedPaths = PathTable.union(importPathSets);
 
         // Setup the local loader dependency
         PathFilter importFilter = acceptAll;
         PathFilter exportFilter = acceptAll;
         if (importedPaths.isEmpty() == false) {
-            importFilter = PathFilters.not(PathFilters.in(importedPaths));
+            importFilter = PathFilters.not(importedPaths);
         }
         PathFilter resImportFilter = PathFilters.acceptAll();
         PathFilter resExportFilter = PathFilters.acceptAll();
@@ -356,7 +353,7 @@ public final class ModuleManagerImpl implements ModuleManager {
             }
         }
 
-        Set<String> importedPaths = new HashSet<String>();
+        Set<String> importedPathSet = new HashSet<String>();
         Set<Resource> packageExporters = new HashSet<Resource>();
         for (BundleWire wire : packageWires) {
             XBundleRevision exporter = (XBundleRevision) wire.getProvider();
@@ -367,9 +364,9 @@ public final class ModuleManagerImpl implements ModuleManager {
             String path = VFSUtils.getPathFromPackageName(packreq.getPackageName());
             holder.setOptional(packreq.isOptional());
             holder.addImportPath(path);
-            importedPaths.add(path);
+            importedPathSet.add(path);
         }
-        PathFilter importedPathsFilter = PathFilters.in(importedPaths);
+        PathTable importedPaths = PathTable.create(importedPathSet);
 
         for (BundleWire wire : bundleWires) {
             XBundleRevision exporter = (XBundleRevision) wire.getProvider();
@@ -379,7 +376,7 @@ public final class ModuleManagerImpl implements ModuleManager {
             XRequirement xreq = (XRequirement) wire.getRequirement();
             XResourceRequirement resreq = xreq.adapt(XResourceRequirement.class);
             ModuleDependencyHolder holder = getDependencyHolder(depBuilderMap, exporter);
-            holder.setImportFilter(PathFilters.not(importedPathsFilter));
+            holder.setImportFilter(PathFilters.not(importedPaths));
             holder.setOptional(resreq.isOptional());
 
             boolean reexport = VISIBILITY_REEXPORT.equals(resreq.getVisibility());
@@ -392,7 +389,7 @@ public final class ModuleManagerImpl implements ModuleManager {
                     if (importedPaths.contains(path) == false)
                         exportedPaths.add(path);
                 }
-                PathFilter exportedPathsFilter = PathFilters.in(exportedPaths);
+                PathFilter exportedPathsFilter = PathTable.create(exportedPaths);
                 holder.setImportFilter(exportedPathsFilter);
                 holder.setExportFilter(exportedPathsFilter);
             }
@@ -456,7 +453,7 @@ public final class ModuleManagerImpl implements ModuleManager {
                 for (String packageName : includes)
                     paths.add(packageName.replace('.', '/'));
 
-                result = PathFilters.in(paths);
+                result = PathTable.create(paths);
             }
 
             List<String> excludes = activationPolicy.getExcludes();
@@ -467,9 +464,9 @@ public final class ModuleManagerImpl implements ModuleManager {
                     paths.add(packageName.replace('.', '/'));
 
                 if (includes != null)
-                    result = PathFilters.all(result, PathFilters.not(PathFilters.in(paths)));
+                    result = PathFilters.all(result, PathFilters.not(PathTable.create(paths)));
                 else
-                    result = PathFilters.not(PathFilters.in(paths));
+                    result = PathFilters.not(PathTable.create(paths));
             }
         }
         return result;
@@ -591,7 +588,7 @@ public final class ModuleManagerImpl implements ModuleManager {
                 exportFilter = PathFilters.rejectAll();
             }
             if (importFilter == null) {
-                importFilter = (importPaths != null ? PathFilters.in(importPaths) : PathFilters.acceptAll());
+                importFilter = (importPaths != null ? PathTable.create(importPaths) : PathFilters.acceptAll());
             }
             Module frameworkModule = getFrameworkModule();
             ModuleLoader depLoader = (frameworkModule.getIdentifier().equals(identifier) ? frameworkModule.getModuleLoader() : moduleLoader
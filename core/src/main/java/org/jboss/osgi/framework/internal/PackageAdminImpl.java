@@ -24,20 +24,23 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.FrameworkEvents;
 import org.jboss.osgi.framework.spi.FrameworkWiringLock;
@@ -53,7 +56,6 @@ import org.jboss.osgi.resolver.XEnvironment;
 import org.jboss.osgi.resolver.XPackageCapability;
 import org.jboss.osgi.resolver.XResolveContext;
 import org.jboss.osgi.resolver.XResolver;
-import org.jboss.osgi.resolver.XResource;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.Version;
@@ -88,6 +90,9 @@ public class PackageAdminImpl implements PackageAdminSupport {
     private final LockManager lockManager;
     private final ExecutorService executorService;
     private final AtomicBoolean immediateExecution;
+    private final int refreshThreads;
+    private final ParallelTasks refreshTasks;
+    private volatile Map<String, Long> lastRefreshTimings = Collections.emptyMap();
 
     public PackageAdminImpl(BundleManager bundleManager, XEnvironment environment, FrameworkEvents events,
             ModuleManager moduleManager, XResolver resolver, StartLevel startLevelPlugin, LockManager lockManager,
@@ -101,6 +106,10 @@ public class PackageAdminImpl implements PackageAdminSupport {
         this.lockManager = lockManager;
         this.executorService = executorService;
         this.immediateExecution = immediateExecution;
+        Object value = this.bundleManager.getProperty(Constants.PROPERTY_REFRESH_THREADS);
+        this.refreshThreads = value != null ? ParallelTasks.getMaxThreads(value) : 1;
+        // The bundles of a wave are stopped and started on the framework worker pool
+        this.refreshTasks = new ParallelTasks(this.bundleManager.getWorkerPool(), refreshThreads);
     }
 
     @Override
@@ -125,16 +134,7 @@ public class PackageAdminImpl implements PackageAdminSupport {
             return null;
 
         List<ExportedPackage> result = new ArrayList<ExportedPackage>();
-        XBundle bundleState = (XBundle) bundle;
-        for (XBundleRevision brev : bundleState.getAllBundleRevisions()) {
-            if (brev.getWiring() != null) {
-                for (Capability cap : brev.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
-                    XCapability xcap = (XCapability) cap;
-                    XPackageCapability packcap = xcap.adapt(XPackageCapability.class);
-                    result.add(new ExportedPackageImpl(packcap));
-                }
-            }
-        }
+        addExportedPackages((XBundle) bundle, result);
 
         // mandated by spec
         if (result.size() == 0)
@@ -144,16 +144,26 @@ public class PackageAdminImpl implements PackageAdminSupport {
     }
 
     private ExportedPackage[] getAllExportedPackages() {
+        // The bundles are known to the system, there is no need to look them up again
         List<ExportedPackage> result = new ArrayList<ExportedPackage>();
-        for (Bundle bundle : bundleManager.getBundles()) {
-            ExportedPackage[] pkgs = getExportedPackages(bundle);
-            if (pkgs != null)
-                result.addAll(Arrays.asList(pkgs));
+        for (XBundle bundle : bundleManager.getBundles()) {
+            addExportedPackages(bundle, result);
         }
-
         return result.toArray(new ExportedPackage[result.size()]);
     }
 
+    private void addExportedPackages(XBundle bundle, List<ExportedPackage> result) {
+        for (XBundleRevision brev : bundle.getAllBundleRevisions()) {
+            if (brev.getWiring() != null) {
+                for (Capability cap : brev.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
+                    XCapability xcap = (XCapability) cap;
+                    XPackageCapability packcap = xcap.adapt(XPackageCapability.class);
+                    result.add(new ExportedPackageImpl(packcap));
+                }
+            }
+        }
+    }
+
     @Override
     public ExportedPackage[] getExportedPackages(String name) {
         ExportedPackage[] pkgs = getExportedPackagesInternal(name);
@@ -165,9 +175,9 @@ public class PackageAdminImpl implements PackageAdminSupport {
     private ExportedPackage[] getExportedPackagesInternal(String name) {
         assert name != null : "Null name";
 
+        // Only the revisions that export the package are visited
         Set<ExportedPackage> result = new HashSet<ExportedPackage>();
-        for (XResource res : environment.getResources(XEnvironment.ALL_IDENTITY_TYPES)) {
-            XBundleRevision brev = (XBundleRevision) res;
+        for (XBundleRevision brev : getWiringIndex().getExporters(name)) {
             BundleWiring wiring = brev.getWiring();
             if (wiring != null && !brev.isFragment()) {
                 for (Capability cap : wiring.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
@@ -188,9 +198,10 @@ public class PackageAdminImpl implements PackageAdminSupport {
         List<ExportedPackage> wired = new ArrayList<ExportedPackage>();
         List<ExportedPackage> notWired = new ArrayList<ExportedPackage>();
 
+        WiringIndex wiringIndex = getWiringIndex();
         for (ExportedPackage ep : exported) {
             XPackageCapability cap = ((ExportedPackageImpl) ep).getCapability();
-            if (isWired(cap))
+            if (wiringIndex.isWired(cap))
                 wired.add(ep);
             else
                 notWired.add(ep);
@@ -207,142 +218,213 @@ public class PackageAdminImpl implements PackageAdminSupport {
             return null;
     }
 
-    private boolean isWired(XPackageCapability cap) {
-        BundleWiring wiring = ((BundleRevision) cap.getResource()).getWiring();
-        if (wiring != null) {
-            for (BundleWire wire : wiring.getProvidedWires(cap.getNamespace())) {
-                if (cap.equals(wire.getCapability()))
-                    return true;
-            }
-            List<BundleWire> requireBundleWires = wiring.getProvidedWires(BundleNamespace.BUNDLE_NAMESPACE);
-            if (requireBundleWires.size() > 0)
-                return true;
-        }
-        return false;
-    }
-
     @Override
     public void refreshPackages(final Bundle[] bundles) {
 
-        final List<Bundle> bundlesToRefresh = new ArrayList<Bundle>();
-        if (bundles != null) {
-            bundlesToRefresh.addAll(Arrays.asList(bundles));
-        }
-
         Runnable runner = new Runnable() {
             @Override
             public void run() {
+                long startTime = System.currentTimeMillis();
+                Map<String, Long> timings = new LinkedHashMap<String, Long>();
+                if (refreshThreads > 1) {
+                    refreshConcurrently(bundles, timings);
+                } else {
+                    refreshSequentially(bundles, timings);
+                }
+                timings.put(REFRESH_TIME_TOTAL, System.currentTimeMillis() - startTime);
+                lastRefreshTimings = Collections.unmodifiableMap(timings);
+                LOGGER.debugf("Packages refreshed: %s", timings);
 
-                LockContext lockContext = null;
-                try {
-                    FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
-                    lockContext = lockManager.lockItems(Method.REFRESH, wireLock);
-
-                    if (bundles == null) {
-                        // 4.2 core spec 7.5.3.11 on null:
-                        // all bundles updated or uninstalled since the last call to this method.
-
-                        for (Bundle bundle : bundleManager.getBundles(null)) {
-                            if (bundle.getBundleId() != 0) {
-                                if (bundle instanceof UserBundleState) {
-                                    UserBundleState userBundle = (UserBundleState) bundle;
-                                    // a bundle with more than 1 revision has been updated since the last refresh packages call
-                                    if (userBundle.getAllBundleRevisions().size() > 1 || bundle.getState() == Bundle.UNINSTALLED)
-                                        bundlesToRefresh.add(userBundle);
-                                }
-                            }
-                        }
-                    }
+                events.fireFrameworkEvent(bundleManager.getSystemBundle(), FrameworkEvent.PACKAGES_REFRESHED, null);
+            }
+        };
 
-                    Set<UserBundleState> providedBundles = new LinkedHashSet<UserBundleState>();
-                    for (Bundle bundle : bundlesToRefresh) {
-                        if (bundle instanceof UserBundleState) {
-                            UserBundleState bundleState = UserBundleState.assertBundleState(bundle);
-                            providedBundles.add(bundleState);
-                        }
-                    }
+        executeTask(runner);
+    }
 
-                    Set<HostBundleState> stopBundles = new HashSet<HostBundleState>();
-                    Set<UserBundleState> refreshBundles = new HashSet<UserBundleState>();
-                    Set<UserBundleState> uninstallBundles = new HashSet<UserBundleState>();
+    // All phases run in the calling thread while the wiring lock is held
+    private void refreshSequentially(Bundle[] bundles, Map<String, Long> timings) {
+        LockContext lockContext = null;
+        try {
+            FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
+            lockContext = lockManager.lockItems(Method.REFRESH, wireLock);
 
-                    for (UserBundleState userBundle : providedBundles) {
-                        if (userBundle.getState() == Bundle.UNINSTALLED)
-                            uninstallBundles.add(userBundle);
-                        else if (userBundle.isResolved() == true)
-                            refreshBundles.add(userBundle);
-                    }
+            RefreshPlan plan = createRefreshPlan(bundles);
 
-                    // Compute all depending bundles that need to be stopped and unresolved.
-                    for (XBundle bundle : bundleManager.getBundles(Bundle.RESOLVED | Bundle.ACTIVE)) {
-                        if (bundle instanceof HostBundleState) {
-                            HostBundleState hostBundle = HostBundleState.assertBundleState(bundle);
-                            for (UserBundleState depBundle : hostBundle.getDependentBundles()) {
-                                if (providedBundles.contains(depBundle)) {
-                                    int state = hostBundle.getState();
-                                    if (state == Bundle.ACTIVE || state == Bundle.STARTING) {
-                                        stopBundles.add(hostBundle);
-                                    }
-                                    refreshBundles.add(hostBundle);
-                                    break;
-                                }
-                            }
-                        }
-                    }
+            long time = System.currentTimeMillis();
+            runWaves(plan.getStopWaves(), false);
+            timings.put(REFRESH_TIME_STOP, System.currentTimeMillis() - time);
 
-                    // Add relevant bundles to be refreshed also to the stop list.
-                    for (UserBundleState aux : refreshBundles) {
-                        if (aux instanceof HostBundleState) {
-                            int state = aux.getState();
-                            if (state == Bundle.ACTIVE || state == Bundle.STARTING) {
-                                stopBundles.add((HostBundleState) aux);
-                            }
-                        }
-                    }
+            time = System.currentTimeMillis();
+            removeAndRefresh(plan);
+            timings.put(REFRESH_TIME_REFRESH, System.currentTimeMillis() - time);
 
-                    List<HostBundleState> stopList = new ArrayList<HostBundleState>(stopBundles);
-                    List<UserBundleState> refreshList = new ArrayList<UserBundleState>(refreshBundles);
+            time = System.currentTimeMillis();
+            runWaves(plan.getStartWaves(), true);
+            timings.put(REFRESH_TIME_START, System.currentTimeMillis() - time);
+        } finally {
+            lockManager.unlockItems(lockContext);
+        }
+    }
 
-                    BundleStartLevelComparator startLevelComparator = new BundleStartLevelComparator(startLevelPlugin);
-                    Collections.sort(stopList, startLevelComparator);
+    // The wiring lock is only held while the plan is created and the bundles are refreshed.
+    // Bundles are stopped and started by worker threads, which may need to take the lock themselves.
+    // The plan is computed again under the lock before the refresh, because bundles may have been
+    // wired or started in between. Those are stopped in the calling thread while the lock is held.
+    private void refreshConcurrently(Bundle[] bundles, Map<String, Long> timings) {
+        FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
+        RefreshPlan plan;
+        LockContext lockContext = lockManager.lockItems(Method.REFRESH, wireLock);
+        try {
+            plan = createRefreshPlan(bundles);
+        } finally {
+            lockManager.unlockItems(lockContext);
+        }
 
-                    for (ListIterator<HostBundleState> it = stopList.listIterator(stopList.size()); it.hasPrevious();) {
-                        HostBundleState hostBundle = it.previous();
-                        try {
-                            hostBundle.stop(Bundle.STOP_TRANSIENT);
-                        } catch (Exception th) {
-                            events.fireFrameworkEvent(hostBundle, FrameworkEvent.ERROR, th);
-                        }
-                    }
+        long time = System.currentTimeMillis();
+        runWaves(plan.getStopWaves(), false);
+        timings.put(REFRESH_TIME_STOP, System.currentTimeMillis() - time);
 
-                    for (UserBundleState userBundle : uninstallBundles) {
-                        bundleManager.removeBundle(userBundle, 0);
-                    }
+        time = System.currentTimeMillis();
+        RefreshPlan current;
+        lockContext = lockManager.lockItems(Method.REFRESH, wireLock);
+        try {
+            // The stopped bundles are no longer in the stop list, what remains was started in between
+            current = createRefreshPlan(bundles);
+            for (List<HostBundleState> wave : current.getStopWaves()) {
+                for (HostBundleState hostBundle : wave) {
+                    startOrStop(hostBundle, false);
+                }
+            }
+            removeAndRefresh(current);
+        } finally {
+            lockManager.unlockItems(lockContext);
+        }
+        timings.put(REFRESH_TIME_REFRESH, System.currentTimeMillis() - time);
+
+        time = System.currentTimeMillis();
+        List<HostBundleState> startList = new ArrayList<HostBundleState>(plan.getStopList());
+        startList.addAll(current.getStopList());
+        resolveBeforeStart(startList);
+        runWaves(plan.getStartWaves(), true);
+        runWaves(current.getStartWaves(), true);
+        timings.put(REFRESH_TIME_START, System.currentTimeMillis() - time);
+    }
 
-                    for (UserBundleState userBundle : refreshList) {
-                        try {
-                            userBundle.refresh();
-                        } catch (Exception th) {
-                            events.fireFrameworkEvent(userBundle, FrameworkEvent.ERROR, th);
-                        }
-                    }
+    private RefreshPlan createRefreshPlan(Bundle[] bundles) {
+        // Compute all bundles that transitively depend on the provided bundles.
+        // These need to be stopped and unresolved, or removed when they are uninstalled.
+        WiringIndex wiringIndex = getWiringIndex();
+        Set<XBundle> affected = wiringIndex.getDependencyClosure(getBundlesToRefresh(bundles));
+        return new RefreshPlan(affected, wiringIndex, startLevelPlugin);
+    }
 
-                    for (HostBundleState hostBundle : stopList) {
-                        try {
-                            hostBundle.start(Bundle.START_TRANSIENT);
-                        } catch (Exception th) {
-                            events.fireFrameworkEvent(hostBundle, FrameworkEvent.ERROR, th);
-                        }
+    private void removeAndRefresh(RefreshPlan plan) {
+        for (UserBundleState userBundle : plan.getUninstallList()) {
+            bundleManager.removeBundle(userBundle, 0);
+        }
+        for (UserBundleState userBundle : plan.getRefreshList()) {
+            try {
+                userBundle.refresh();
+            } catch (Exception th) {
+                events.fireFrameworkEvent(userBundle, FrameworkEvent.ERROR, th);
+            }
+        }
+    }
+
+    // Resolve the bundles together, so that the concurrent starts do not resolve them one by one
+    private void resolveBeforeStart(List<HostBundleState> hostBundles) {
+        Set<BundleRevision> resolve = new LinkedHashSet<BundleRevision>();
+        for (HostBundleState hostBundle : hostBundles) {
+            if (hostBundle.getState() == Bundle.INSTALLED) {
+                resolve.add(hostBundle.getBundleRevision());
+            }
+        }
+        if (resolve.isEmpty() == false) {
+            try {
+                XResolveContext context = resolver.createResolveContext(environment, resolve, null);
+                resolver.resolveAndApply(context);
+            } catch (ResolutionException ex) {
+                LOGGER.debugf(ex, "Cannot resolve before start: %s", resolve);
+            }
+        }
+    }
+
+    // The bundles of a wave are independent of each other, the waves run in order
+    private void runWaves(List<List<HostBundleState>> waves, final boolean start) {
+        for (List<HostBundleState> wave : waves) {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (final HostBundleState hostBundle : wave) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        startOrStop(hostBundle, start);
+                        return null;
                     }
-                } finally {
-                    lockManager.unlockItems(lockContext);
-                }
+                });
+            }
+            try {
+                refreshTasks.invokeAll(tasks);
+            } catch (ExecutionException ex) {
+                events.fireFrameworkEvent(bundleManager.getSystemBundle(), FrameworkEvent.ERROR, ex.getCause());
+            }
+        }
+    }
 
-                events.fireFrameworkEvent(bundleManager.getSystemBundle(), FrameworkEvent.PACKAGES_REFRESHED, null);
+    private void startOrStop(HostBundleState hostBundle, boolean start) {
+        try {
+            if (start) {
+                hostBundle.start(Bundle.START_TRANSIENT);
+            } else {
+                hostBundle.stop(Bundle.STOP_TRANSIENT);
             }
-        };
+        } catch (Exception th) {
+            events.fireFrameworkEvent(hostBundle, FrameworkEvent.ERROR, th);
+        }
+    }
 
-        executeTask(runner);
+    @Override
+    public Map<String, Long> getLastRefreshTimings() {
+        return lastRefreshTimings;
+    }
+
+    @Override
+    public Set<XBundle> getRefreshImpact(Bundle[] bundles) {
+        Set<XBundle> result = getWiringIndex().getDependencyClosure(getBundlesToRefresh(bundles));
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public Set<XBundle> getUninstallImpact(Bundle bundle) {
+        assert bundle != null : "Null bundle";
+        return getRefreshImpact(new Bundle[] { bundle });
+    }
+
+    private Set<UserBundleState> getBundlesToRefresh(Bundle[] bundles) {
+        Set<UserBundleState> result = new LinkedHashSet<UserBundleState>();
+        if (bundles == null) {
+            // 4.2 core spec 7.5.3.11 on null:
+            // all bundles updated or uninstalled since the last call to this method.
+            for (Bundle bundle : bundleManager.getBundles(null)) {
+                if (bundle.getBundleId() != 0 && bundle instanceof UserBundleState) {
+                    UserBundleState userBundle = (UserBundleState) bundle;
+                    // a bundle with more than 1 revision has been updated since the last refresh packages call
+                    if (userBundle.getAllBundleRevisions().size() > 1 || bundle.getState() == Bundle.UNINSTALLED)
+                        result.add(userBundle);
+                }
+            }
+        } else {
+            for (Bundle bundle : bundles) {
+                if (bundle instanceof UserBundleState) {
+                    result.add(UserBundleState.assertBundleState(bundle));
+                }
+            }
+        }
+        return result;
+    }
+
+    private WiringIndex getWiringIndex() {
+        return bundleManager.getFrameworkState().getWiringIndex();
     }
 
     @Override
@@ -643,21 +725,6 @@ public class PackageAdminImpl implements PackageAdminSupport {
         }
     }
 
-    private static class BundleStartLevelComparator implements Comparator<HostBundleState> {
-        private final StartLevel startLevelPlugin;
-
-        BundleStartLevelComparator(StartLevel startLevel) {
-            this.startLevelPlugin = startLevel;
-        }
-
-        @Override
-        public int compare(HostBundleState o1, HostBundleState o2) {
-            int sl1 = startLevelPlugin.getBundleStartLevel(o1);
-            int sl2 = startLevelPlugin.getBundleStartLevel(o2);
-            return sl1 < sl2 ? -1 : (sl1 == sl2 ? 0 : 1);
-        }
-    }
-
     private static class ExportedPackageComparator implements Comparator<ExportedPackage> {
 
         @Override
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs batches of independent tasks on a bounded pool of threads.
+ *
+ * The results are returned in task order. Small batches run in the calling thread.
+ * The calling thread also takes part in a parallel batch and runs the tasks that no pool thread has picked up yet,
+ * so that a batch completes even when the pool is busy or shut down.
+ *
+ * The tasks run either on a given executor, such as the framework worker pool, or on an own pool.
+ * The own pool is created with the first parallel batch and reused for the following ones.
+ * Its threads time out when they are idle, so that an instance may live as long as the framework.
+ */
+final class ParallelTasks {
+
+    // Batches smaller than this are not worth the thread handoff
+    static final int MIN_PARALLEL_TASKS = 4;
+    static final long KEEP_ALIVE_SECONDS = 10;
+
+    private final String threadName;
+    private final int maxThreads;
+    private final Executor sharedExecutor;
+    private ThreadPoolExecutor executor;
+
+    ParallelTasks(String threadName, int maxThreads) {
+        this.threadName = threadName;
+        this.maxThreads = Math.max(1, maxThreads);
+        this.sharedExecutor = null;
+    }
+
+    /**
+     * Run the tasks on the given executor, which is not shut down by this instance.
+     */
+    ParallelTasks(Executor sharedExecutor, int maxThreads) {
+        assert sharedExecutor != null : "Null sharedExecutor";
+        this.threadName = null;
+        this.maxThreads = Math.max(1, maxThreads);
+        this.sharedExecutor = sharedExecutor;
+    }
+
+    /**
+     * Get the number of threads configured by the given property value, which defaults to the number of processors.
+     */
+    static int getMaxThreads(Object propValue) {
+        if (propValue != null) {
+            try {
+                return Integer.parseInt(propValue.toString().trim());
+            } catch (NumberFormatException ex) {
+                // use the default
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Run all tasks and return their results in task order.
+     *
+     * @throws ExecutionException with the cause of the first task that failed
+     */
+    <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws ExecutionException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (maxThreads < 2 || tasks.size() < MIN_PARALLEL_TASKS) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception ex) {
+                    throw new ExecutionException(ex);
+                }
+            }
+            return results;
+        }
+
+        final List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(new FutureTask<T>(task));
+        }
+        final AtomicInteger nextTask = new AtomicInteger();
+        Runnable runner = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = nextTask.getAndIncrement()) < futures.size()) {
+                    futures.get(index).run();
+                }
+            }
+        };
+        try {
+            // The calling thread is one of the runners
+            Executor executorService = getExecutor();
+            int helpers = Math.min(maxThreads, tasks.size()) - 1;
+            for (int i = 0; i < helpers; i++) {
+                try {
+                    executorService.execute(runner);
+                } catch (RejectedExecutionException ex) {
+                    break;
+                }
+            }
+            runner.run();
+            for (FutureTask<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new ExecutionException(ex);
+                }
+            }
+            return results;
+        } finally {
+            // Do not leave tasks of a failed batch behind
+            if (results.size() < tasks.size()) {
+                for (FutureTask<T> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the threads of the own pool. A later batch creates a new pool.
+     * A given executor is left alone.
+     */
+    synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized Executor getExecutor() {
+        if (sharedExecutor != null)
+            return sharedExecutor;
+        if (executor == null) {
+            ThreadFactory threadFactory = new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable run) {
+                    Thread thread = new Thread(run);
+                    thread.setName(threadName + " " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+            executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
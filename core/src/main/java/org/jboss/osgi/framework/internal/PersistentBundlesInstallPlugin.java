@@ -25,10 +25,14 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceTarget;
@@ -36,6 +40,8 @@ import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
 import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.BootProfiler;
 import org.jboss.osgi.framework.spi.BootstrapBundlesInstall;
 import org.jboss.osgi.framework.spi.BundleStorage;
 import org.jboss.osgi.framework.spi.DeploymentProvider;
@@ -84,13 +90,52 @@ final class PersistentBundlesInstallPlugin extends BootstrapBundlesInstall<Void>
             }
         }
 
+        // Parse the bundle metadata in parallel
+        List<StorageState> sortedStates = new ArrayList<StorageState>(storageStates);
+        Collections.sort(sortedStates, new Comparator<StorageState>() {
+            @Override
+            public int compare(StorageState o1, StorageState o2) {
+                long id1 = o1.getBundleId();
+                long id2 = o2.getBundleId();
+                return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+            }
+        });
+        final BootProfiler profiler = getBootProfiler(getBundleManager());
+        List<Callable<Deployment>> tasks = new ArrayList<Callable<Deployment>>();
+        for (final StorageState storageState : sortedStates) {
+            tasks.add(new Callable<Deployment>() {
+                @Override
+                public Deployment call() throws Exception {
+                    long startTime = profiler != null ? System.nanoTime() : 0;
+                    try {
+                        Deployment dep = deploymentPlugin.createDeployment(storageState);
+                        if (profiler != null) {
+                            profiler.addSpan(BootProfiler.CATEGORY_METADATA, "parse " + storageState.getLocation(), startTime, System.nanoTime());
+                        }
+                        return dep;
+                    } catch (BundleException ex) {
+                        LOGGER.errorStateCannotInstallInitialBundle(ex, storageState.getLocation());
+                        return null;
+                    }
+                }
+            });
+        }
+        List<Deployment> results;
+        Object maxThreads = getBundleManager().getProperty(Constants.PROPERTY_FRAMEWORK_RESTORE_THREADS);
+        ParallelTasks restoreTasks = new ParallelTasks("Bundle Restore Thread", ParallelTasks.getMaxThreads(maxThreads));
+        try {
+            results = restoreTasks.invokeAll(tasks);
+        } catch (ExecutionException ex) {
+            throw new StartException(ex.getCause());
+        } finally {
+            restoreTasks.shutdown();
+        }
+
+        // Install the deployments in bundle id order
         List<Deployment> deployments = new ArrayList<Deployment>();
-        for (StorageState storageState : storageStates) {
-            try {
-                Deployment dep = deploymentPlugin.createDeployment(storageState);
+        for (Deployment dep : results) {
+            if (dep != null) {
                 deployments.add(dep);
-            } catch (BundleException ex) {
-                LOGGER.errorStateCannotInstallInitialBundle(ex, storageState.getLocation());
             }
         }
 
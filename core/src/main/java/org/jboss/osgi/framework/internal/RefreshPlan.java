@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.osgi.framework.Bundle;
+import org.osgi.service.startlevel.StartLevel;
+
+/**
+ * The bundles that are affected by a refresh and the order in which they are stopped and started again.
+ *
+ * Bundles are stopped in descending and started in ascending start level order. Within a start level
+ * a bundle is stopped after the bundles that are wired to it and started after the bundles it is wired to.
+ * Bundles in the same wave do not depend on each other and can be stopped or started concurrently.
+ * Bundles that are wired to each other in a cycle have no such order. A cycle is stopped and started
+ * as one unit, in the wave of its last consumer.
+ */
+final class RefreshPlan {
+
+    private final List<HostBundleState> stopList = new ArrayList<HostBundleState>();
+    private final List<UserBundleState> refreshList = new ArrayList<UserBundleState>();
+    private final List<UserBundleState> uninstallList = new ArrayList<UserBundleState>();
+    private final List<List<HostBundleState>> stopWaves = new ArrayList<List<HostBundleState>>();
+
+    /**
+     * Create the plan for the given bundles, which must be computed while the wiring is still intact.
+     *
+     * @param affected The bundles to refresh and all bundles that depend on them
+     */
+    RefreshPlan(Collection<XBundle> affected, WiringIndex wiringIndex, StartLevel startLevel) {
+        for (XBundle bundle : affected) {
+            if (bundle instanceof UserBundleState) {
+                UserBundleState userBundle = (UserBundleState) bundle;
+                if (userBundle.getState() == Bundle.UNINSTALLED) {
+                    uninstallList.add(userBundle);
+                } else if (userBundle.isResolved() == true) {
+                    refreshList.add(userBundle);
+                    int state = userBundle.getState();
+                    if (userBundle instanceof HostBundleState && (state == Bundle.ACTIVE || state == Bundle.STARTING)) {
+                        stopList.add((HostBundleState) userBundle);
+                    }
+                }
+            }
+        }
+
+        // Group the bundles to stop by start level, highest first
+        Map<Integer, List<HostBundleState>> levels = new TreeMap<Integer, List<HostBundleState>>(Collections.reverseOrder());
+        for (HostBundleState hostBundle : stopList) {
+            Integer level = startLevel.getBundleStartLevel(hostBundle);
+            List<HostBundleState> bundles = levels.get(level);
+            if (bundles == null) {
+                bundles = new ArrayList<HostBundleState>();
+                levels.put(level, bundles);
+            }
+            bundles.add(hostBundle);
+        }
+        for (List<HostBundleState> bundles : levels.values()) {
+            stopWaves.addAll(getStopWaves(bundles, wiringIndex));
+        }
+    }
+
+    private static List<List<HostBundleState>> getStopWaves(List<HostBundleState> bundles, WiringIndex wiringIndex) {
+        Set<HostBundleState> bundleSet = new HashSet<HostBundleState>(bundles);
+        Map<HostBundleState, Set<HostBundleState>> consumers = new HashMap<HostBundleState, Set<HostBundleState>>();
+        for (HostBundleState hostBundle : bundles) {
+            Set<HostBundleState> bundleConsumers = new HashSet<HostBundleState>();
+            for (XBundle consumer : wiringIndex.getConsumers(hostBundle)) {
+                if (consumer != hostBundle && bundleSet.contains(consumer)) {
+                    bundleConsumers.add((HostBundleState) consumer);
+                }
+            }
+            consumers.put(hostBundle, bundleConsumers);
+        }
+        return getWaves(bundles, consumers);
+    }
+
+    /**
+     * Get the waves of nodes, so that every node comes after its consumers.
+     *
+     * The strongly connected components of the graph are collapsed first, so that a cycle only holds back
+     * its own members and the nodes that it consumes. Every wave contains the components of which no
+     * consumer is still pending.
+     */
+    static <T> List<List<T>> getWaves(List<T> nodes, Map<T, Set<T>> consumers) {
+        List<List<T>> components = getComponents(nodes, consumers);
+        Map<T, Integer> componentIndex = new HashMap<T, Integer>();
+        for (int i = 0; i < components.size(); i++) {
+            for (T node : components.get(i)) {
+                componentIndex.put(node, i);
+            }
+        }
+        // The providers of every component and the number of its consumers that are still pending
+        int[] pending = new int[components.size()];
+        List<List<Integer>> providers = new ArrayList<List<Integer>>();
+        for (int i = 0; i < components.size(); i++) {
+            providers.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < components.size(); i++) {
+            Set<Integer> componentConsumers = new HashSet<Integer>();
+            for (T node : components.get(i)) {
+                for (T consumer : consumers.get(node)) {
+                    componentConsumers.add(componentIndex.get(consumer));
+                }
+            }
+            componentConsumers.remove(i);
+            pending[i] = componentConsumers.size();
+            for (Integer consumer : componentConsumers) {
+                providers.get(consumer).add(i);
+            }
+        }
+        List<Integer> ready = new ArrayList<Integer>();
+        for (int i = 0; i < components.size(); i++) {
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+        List<List<T>> result = new ArrayList<List<T>>();
+        while (ready.isEmpty() == false) {
+            List<T> wave = new ArrayList<T>();
+            List<Integer> next = new ArrayList<Integer>();
+            for (Integer i : ready) {
+                wave.addAll(components.get(i));
+                for (Integer provider : providers.get(i)) {
+                    if (--pending[provider] == 0) {
+                        next.add(provider);
+                    }
+                }
+            }
+            Collections.sort(next);
+            result.add(wave);
+            ready = next;
+        }
+        return result;
+    }
+
+    // Tarjan's algorithm, iterative so that a long chain of bundles does not overflow the stack.
+    // The components are ordered by their first node and keep the order of the given nodes.
+    private static <T> List<List<T>> getComponents(List<T> nodes, Map<T, Set<T>> consumers) {
+        final Map<T, Integer> order = new HashMap<T, Integer>();
+        for (T node : nodes) {
+            order.put(node, order.size());
+        }
+        Map<T, Integer> index = new HashMap<T, Integer>();
+        Map<T, Integer> lowlink = new HashMap<T, Integer>();
+        LinkedList<T> stack = new LinkedList<T>();
+        Set<T> onStack = new HashSet<T>();
+        List<List<T>> result = new ArrayList<List<T>>();
+        for (T root : nodes) {
+            if (index.containsKey(root))
+                continue;
+
+            LinkedList<T> path = new LinkedList<T>();
+            Map<T, Iterator<T>> iterators = new HashMap<T, Iterator<T>>();
+            visit(root, index, lowlink, stack, onStack, path, iterators, consumers);
+            while (path.isEmpty() == false) {
+                T node = path.getFirst();
+                Iterator<T> iterator = iterators.get(node);
+                if (iterator.hasNext()) {
+                    T next = iterator.next();
+                    if (index.containsKey(next) == false) {
+                        visit(next, index, lowlink, stack, onStack, path, iterators, consumers);
+                    } else if (onStack.contains(next)) {
+                        lowlink.put(node, Math.min(lowlink.get(node), index.get(next)));
+                    }
+                    continue;
+                }
+                path.removeFirst();
+                if (lowlink.get(node).equals(index.get(node))) {
+                    List<T> component = new ArrayList<T>();
+                    T member;
+                    do {
+                        member = stack.removeFirst();
+                        onStack.remove(member);
+                        component.add(member);
+                    } while (member != node);
+                    result.add(component);
+                }
+                if (path.isEmpty() == false) {
+                    T parent = path.getFirst();
+                    lowlink.put(parent, Math.min(lowlink.get(parent), lowlink.get(node)));
+                }
+            }
+        }
+        Comparator<T> nodeOrder = new Comparator<T>() {
+            @Override
+            public int compare(T o1, T o2) {
+                return order.get(o1) - order.get(o2);
+            }
+        };
+        for (List<T> component : result) {
+            Collections.sort(component, nodeOrder);
+        }
+        Collections.sort(result, new Comparator<List<T>>() {
+            @Override
+            public int compare(List<T> o1, List<T> o2) {
+                return order.get(o1.get(0)) - order.get(o2.get(0));
+            }
+        });
+        return result;
+    }
+
+    private static <T> void visit(T node, Map<T, Integer> index, Map<T, Integer> lowlink, LinkedList<T> stack, Set<T> onStack,
+            LinkedList<T> path, Map<T, Iterator<T>> iterators, Map<T, Set<T>> consumers) {
+        index.put(node, index.size());
+        lowlink.put(node, index.get(node));
+        stack.addFirst(node);
+        onStack.add(node);
+        path.addFirst(node);
+        iterators.put(node, consumers.get(node).iterator());
+    }
+
+    List<HostBundleState> getStopList() {
+        return Collections.unmodifiableList(stopList);
+    }
+
+    List<UserBundleState> getRefreshList() {
+        return Collections.unmodifiableList(refreshList);
+    }
+
+    List<UserBundleState> getUninstallList() {
+        return Collections.unmodifiableList(uninstallList);
+    }
+
+    /**
+     * Get the waves of bundles to stop, in order.
+     */
+    List<List<HostBundleState>> getStopWaves() {
+        return Collections.unmodifiableList(stopWaves);
+    }
+
+    /**
+     * Get the waves of bundles to start, which is the reverse order of the stop waves.
+     */
+    List<List<HostBundleState>> getStartWaves() {
+        List<List<HostBundleState>> result = new ArrayList<List<HostBundleState>>(stopWaves);
+        Collections.reverse(result);
+        return Collections.unmodifiableList(result);
+    }
+}
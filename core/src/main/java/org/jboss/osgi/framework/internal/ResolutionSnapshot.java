@@ -0,0 +1,290 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XEnvironment;
+import org.jboss.osgi.resolver.XRequirement;
+import org.jboss.osgi.resolver.XResource;
+import org.jboss.osgi.vfs.VFSUtils;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * A persisted resolver result.
+ *
+ * Resources are identified by bundle id and revision id. Capabilities and requirements are identified
+ * by their index in the declaring resource. The snapshot is only valid for the fingerprint of the
+ * installed revision set it was created from. The fingerprint covers the capabilities and requirements
+ * of every installed revision, whether it is already resolved and the resources of the resolve context.
+ */
+final class ResolutionSnapshot {
+
+    private static final String PROPERTY_FINGERPRINT = "Fingerprint";
+    private static final String PROPERTY_RESOURCE_COUNT = "Resources";
+    private static final String RESOURCE_PREFIX = "resource.";
+
+    private final File snapshotFile;
+    private final Map<String, Resource> resources = new HashMap<String, Resource>();
+    private final Map<Resource, String> identities = new HashMap<Resource, String>();
+    private final String fingerprint;
+
+    ResolutionSnapshot(File snapshotFile, XEnvironment environment, ResolveContext context) {
+        this.snapshotFile = snapshotFile;
+        boolean identifiable = true;
+        for (XResource res : environment.getResources(XEnvironment.ALL_IDENTITY_TYPES)) {
+            String identity = getIdentity(res);
+            if (identity == null) {
+                identifiable = false;
+                break;
+            }
+            resources.put(identity, res);
+            identities.put(res, identity);
+        }
+        fingerprint = identifiable ? getFingerprint(context) : null;
+    }
+
+    File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Get the stored wire map.
+     *
+     * @return The wire map or null if there is no valid snapshot
+     */
+    Map<Resource, List<Wire>> load() {
+        if (fingerprint == null || snapshotFile.exists() == false)
+            return null;
+
+        Properties props = new Properties();
+        try {
+            FileInputStream input = new FileInputStream(snapshotFile);
+            try {
+                props.load(input);
+            } finally {
+                VFSUtils.safeClose(input);
+            }
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot read resolution snapshot: %s", snapshotFile);
+            return null;
+        }
+
+        if (fingerprint.equals(props.getProperty(PROPERTY_FINGERPRINT)) == false) {
+            LOGGER.debugf("Resolution snapshot does not match the installed revisions: %s", snapshotFile);
+            return null;
+        }
+
+        try {
+            Map<Resource, List<Wire>> wiremap = new LinkedHashMap<Resource, List<Wire>>();
+            int resourceCount = Integer.parseInt(props.getProperty(PROPERTY_RESOURCE_COUNT));
+            for (int i = 0; i < resourceCount; i++) {
+                String prefix = RESOURCE_PREFIX + i;
+                Resource res = getResource(props.getProperty(prefix));
+                int wireCount = Integer.parseInt(props.getProperty(prefix + ".wires"));
+                List<Wire> wires = new ArrayList<Wire>(wireCount);
+                for (int j = 0; j < wireCount; j++) {
+                    wires.add(toWire(props.getProperty(prefix + ".wire." + j)));
+                }
+                wiremap.put(res, wires);
+            }
+            return wiremap;
+        } catch (RuntimeException ex) {
+            LOGGER.debugf(ex, "Invalid resolution snapshot: %s", snapshotFile);
+            return null;
+        }
+    }
+
+    /**
+     * Store the given wire map, which must have been created for the resolve context of this snapshot.
+     */
+    void store(Map<Resource, List<Wire>> wiremap) {
+        if (fingerprint == null) {
+            delete();
+            return;
+        }
+
+        Properties props = new Properties();
+        props.setProperty(PROPERTY_FINGERPRINT, fingerprint);
+        props.setProperty(PROPERTY_RESOURCE_COUNT, "" + wiremap.size());
+        int i = 0;
+        for (Entry<Resource, List<Wire>> entry : wiremap.entrySet()) {
+            String identity = identities.get(entry.getKey());
+            if (identity == null) {
+                delete();
+                return;
+            }
+            String prefix = RESOURCE_PREFIX + i++;
+            props.setProperty(prefix, identity);
+            List<Wire> wires = entry.getValue();
+            props.setProperty(prefix + ".wires", "" + wires.size());
+            for (int j = 0; j < wires.size(); j++) {
+                String wire = fromWire(wires.get(j));
+                if (wire == null) {
+                    delete();
+                    return;
+                }
+                props.setProperty(prefix + ".wire." + j, wire);
+            }
+        }
+
+        try {
+            snapshotFile.getParentFile().mkdirs();
+            FileOutputStream output = new FileOutputStream(snapshotFile);
+            try {
+                props.store(output, "Resolution Snapshot");
+            } finally {
+                VFSUtils.safeClose(output);
+            }
+            LOGGER.debugf("Stored resolution snapshot: %s", snapshotFile);
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot write resolution snapshot: %s", snapshotFile);
+            delete();
+        }
+    }
+
+    void delete() {
+        snapshotFile.delete();
+    }
+
+    private String getIdentity(Resource res) {
+        if (res instanceof BundleStateRevision) {
+            BundleStateRevision brev = (BundleStateRevision) res;
+            XBundle bundle = brev.getBundle();
+            if (bundle != null) {
+                return bundle.getBundleId() + ":" + brev.getRevisionId();
+            }
+        }
+        return null;
+    }
+
+    private Resource getResource(String identity) {
+        Resource res = resources.get(identity);
+        if (res == null)
+            throw new IllegalStateException("Unknown resource: " + identity);
+        return res;
+    }
+
+    // [capability resource],[capability index],[provider],[requirement resource],[requirement index],[requirer]
+    private String fromWire(Wire wire) {
+        Capability cap = wire.getCapability();
+        Requirement req = wire.getRequirement();
+        String capOwner = identities.get(cap.getResource());
+        String provider = identities.get(wire.getProvider());
+        String reqOwner = identities.get(req.getResource());
+        String requirer = identities.get(wire.getRequirer());
+        int capIndex = cap.getResource().getCapabilities(null).indexOf(cap);
+        int reqIndex = req.getResource().getRequirements(null).indexOf(req);
+        if (capOwner == null || provider == null || reqOwner == null || requirer == null || capIndex < 0 || reqIndex < 0)
+            return null;
+
+        return capOwner + "," + capIndex + "," + provider + "," + reqOwner + "," + reqIndex + "," + requirer;
+    }
+
+    private Wire toWire(String spec) {
+        String[] parts = spec.split(",");
+        if (parts.length != 6)
+            throw new IllegalStateException("Invalid wire: " + spec);
+
+        Capability cap = getResource(parts[0]).getCapabilities(null).get(Integer.parseInt(parts[1]));
+        Resource provider = getResource(parts[2]);
+        Requirement req = getResource(parts[3]).getRequirements(null).get(Integer.parseInt(parts[4]));
+        Resource requirer = getResource(parts[5]);
+        if (((XRequirement) req).matches(cap) == false)
+            throw new IllegalStateException("Requirement does not match capability: " + spec);
+
+        return new AbstractBundleWire((BundleCapability) cap, (BundleRequirement) req, (BundleRevision) provider, (BundleRevision) requirer);
+    }
+
+    private String getFingerprint(ResolveContext context) {
+        Set<String> mandatory = getIdentities(context.getMandatoryResources());
+        Set<String> optional = getIdentities(context.getOptionalResources());
+        if (mandatory == null || optional == null)
+            return null;
+
+        // Sort the revisions by identity so that the fingerprint does not depend on the install order
+        Map<String, Resource> sorted = new TreeMap<String, Resource>(resources);
+        MessageDigest md = BundleContentStore.newMessageDigest();
+        for (Entry<String, Resource> entry : sorted.entrySet()) {
+            String identity = entry.getKey();
+            XResource res = (XResource) entry.getValue();
+            StringBuilder builder = new StringBuilder(identity);
+            builder.append(mandatory.contains(identity) ? ";mandatory" : "");
+            builder.append(optional.contains(identity) ? ";optional" : "");
+            builder.append(res.getWiring() != null ? ";resolved" : "");
+            for (Capability cap : res.getCapabilities(null)) {
+                builder.append("\nc:" + cap.getNamespace());
+                builder.append(new TreeMap<String, Object>(cap.getAttributes()));
+                builder.append(new TreeMap<String, String>(cap.getDirectives()));
+            }
+            for (Requirement req : res.getRequirements(null)) {
+                builder.append("\nr:" + req.getNamespace());
+                builder.append(new TreeMap<String, Object>(req.getAttributes()));
+                builder.append(new TreeMap<String, String>(req.getDirectives()));
+            }
+            builder.append("\n");
+            try {
+                md.update(builder.toString().getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return BundleContentStore.toHex(md.digest());
+    }
+
+    private Set<String> getIdentities(Collection<Resource> resources) {
+        Set<String> result = new HashSet<String>();
+        for (Resource res : resources) {
+            String identity = identities.get(res);
+            if (identity == null)
+                return null;
+            result.add(identity);
+        }
+        return result;
+    }
+}
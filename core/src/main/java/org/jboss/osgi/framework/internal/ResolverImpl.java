@@ -23,6 +23,7 @@ package org.jboss.osgi.framework.internal;
 
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,17 +31,23 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import org.jboss.modules.ModuleIdentifier;
 import org.jboss.msc.service.ServiceContainer;
 import org.jboss.msc.service.ServiceController;
 import org.jboss.msc.service.ServiceController.State;
 import org.jboss.msc.service.ServiceName;
 import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.FrameworkModuleLoader;
 import org.jboss.osgi.framework.spi.FrameworkWiringLock;
@@ -50,6 +57,7 @@ import org.jboss.osgi.framework.spi.LockManager.LockContext;
 import org.jboss.osgi.framework.spi.LockManager.Method;
 import org.jboss.osgi.framework.spi.ModuleManager;
 import org.jboss.osgi.framework.spi.NativeCode;
+import org.jboss.osgi.framework.spi.ResolverSupport;
 import org.jboss.osgi.metadata.NativeLibraryMetaData;
 import org.jboss.osgi.resolver.XBundle;
 import org.jboss.osgi.resolver.XBundleRevision;
@@ -58,14 +66,12 @@ import org.jboss.osgi.resolver.XIdentityCapability;
 import org.jboss.osgi.resolver.XPackageRequirement;
 import org.jboss.osgi.resolver.XRequirement;
 import org.jboss.osgi.resolver.XResolveContext;
-import org.jboss.osgi.resolver.XResolver;
 import org.jboss.osgi.resolver.XResource;
 import org.jboss.osgi.resolver.felix.StatelessResolver;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.namespace.HostNamespace;
-import org.osgi.framework.namespace.IdentityNamespace;
 import org.osgi.framework.namespace.PackageNamespace;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRevision;
@@ -84,7 +90,10 @@ import org.osgi.service.resolver.ResolveContext;
  * @author thomas.diesler@jboss.com
  * @since 15-Feb-2012
  */
-public final class ResolverImpl extends StatelessResolver implements XResolver {
+public final class ResolverImpl extends StatelessResolver implements ResolverSupport {
+
+    // The time in seconds to wait for the services of previous revisions to be removed
+    private static final long SERVICE_REMOVAL_TIMEOUT = 10;
 
     private final BundleManagerPlugin bundleManager;
     private final NativeCode nativeCode;
@@ -92,6 +101,8 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
     private final FrameworkModuleLoader moduleLoader;
     private final XEnvironment environment;
     private final LockManager lockManager;
+    private final boolean incremental;
+    private final ParallelTasks moduleTasks;
 
     public ResolverImpl(BundleManager bundleManager, NativeCode nativeCode, ModuleManager moduleManager, FrameworkModuleLoader moduleLoader,
             XEnvironment environment, LockManager lockManager) {
@@ -101,6 +112,11 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
         this.moduleLoader = moduleLoader;
         this.environment = environment;
         this.lockManager = lockManager;
+        Object value = this.bundleManager.getProperty(Constants.PROPERTY_RESOLVER_INCREMENTAL);
+        this.incremental = value != null && Boolean.parseBoolean(value.toString());
+        int maxThreads = ParallelTasks.getMaxThreads(this.bundleManager.getProperty(Constants.PROPERTY_RESOLVER_MODULE_THREADS));
+        // The module specs are built on the framework worker pool, which is shut down with the framework
+        this.moduleTasks = new ParallelTasks(this.bundleManager.getWorkerPool(), maxThreads);
     }
 
     @Override
@@ -109,6 +125,7 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
         Collection<Resource> optres = new HashSet<Resource>(optional != null ? optional : Collections.<Resource> emptySet());
         appendOptionalFragments(mandatory, optres);
         appendOptionalHostBundles(mandatory, optres);
+        LOGGER.debugf("Resolve context with %d mandatory and %d optional resources", manres.size(), optres.size());
         return super.createResolveContext(environment, manres, optres);
     }
 
@@ -145,6 +162,40 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
         return wirings;
     }
 
+    @Override
+    public synchronized Map<Resource, Wiring> resolveAndApply(XResolveContext resolveContext, File snapshotFile) throws ResolutionException {
+        assert snapshotFile != null : "Null snapshotFile";
+
+        Map<Resource, List<Wire>> wiremap;
+        Map<Resource, Wiring> wirings;
+
+        LockContext lockContext = null;
+        try {
+            FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
+            lockContext = lockManager.lockItems(Method.RESOLVE, wireLock);
+            ResolutionSnapshot snapshot = new ResolutionSnapshot(snapshotFile, environment, resolveContext);
+            wiremap = snapshot.load();
+            if (wiremap != null) {
+                LOGGER.debugf("Applying resolution snapshot: %s", snapshotFile);
+            } else {
+                wiremap = super.resolve(resolveContext);
+                snapshot.store(wiremap);
+            }
+            try {
+                wirings = applyResolverResults(wiremap);
+            } catch (ResolutionException ex) {
+                snapshot.delete();
+                throw ex;
+            }
+        } finally {
+            lockManager.unlockItems(lockContext);
+        }
+
+        // Send the {@link BundleEvent.RESOLVED} event outside the lock
+        sendBundleResolvedEvents(wiremap);
+        return wirings;
+    }
+
     private void appendOptionalFragments(Collection<? extends Resource> mandatory, Collection<Resource> optional) {
         Collection<Capability> hostcaps = getHostCapabilities(mandatory);
         if (hostcaps.isEmpty() == false) {
@@ -152,16 +203,20 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
         }
     }
 
-    // Append the set of all unresolved resources if there is at least one optional package requirement
+    // Append the set of unresolved resources if there is at least one optional package requirement
     private void appendOptionalHostBundles(Collection<? extends Resource> mandatory, Collection<Resource> optional) {
         for (Resource res : mandatory) {
             for (Requirement req : res.getRequirements(PackageNamespace.PACKAGE_NAMESPACE)) {
                 XPackageRequirement preq = (XPackageRequirement) req;
                 if (preq.isOptional()) {
-                    for (XBundle bundle : bundleManager.getBundles(Bundle.INSTALLED)) {
-                        XResource auxrev = bundle.getBundleRevision();
-                        if (!bundle.isFragment() && !mandatory.contains(auxrev)) {
-                            optional.add(auxrev);
+                    if (incremental) {
+                        appendCandidateClosure(mandatory, optional);
+                    } else {
+                        for (XBundle bundle : bundleManager.getBundles(Bundle.INSTALLED)) {
+                            XResource auxrev = bundle.getBundleRevision();
+                            if (!bundle.isFragment() && !mandatory.contains(auxrev)) {
+                                optional.add(auxrev);
+                            }
                         }
                     }
                     return;
@@ -170,6 +225,46 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
         }
     }
 
+    // Append the unresolved resources that can directly or transitively provide a capability to the mandatory resources
+    private void appendCandidateClosure(Collection<? extends Resource> mandatory, Collection<Resource> optional) {
+        Set<Resource> mandatorySet = new HashSet<Resource>(mandatory);
+        CapabilityIndex index = getCapabilityIndex();
+        Set<Resource> closure = new LinkedHashSet<Resource>();
+        LinkedList<Resource> pending = new LinkedList<Resource>(mandatorySet);
+        while (pending.isEmpty() == false) {
+            Resource res = pending.removeFirst();
+            for (Requirement req : res.getRequirements(null)) {
+                for (Capability cap : index.findProviders(req)) {
+                    Resource provider = cap.getResource();
+                    if (isUnresolvedHost(provider) && !mandatorySet.contains(provider) && closure.add(provider)) {
+                        pending.add(provider);
+                    }
+                }
+            }
+        }
+        optional.addAll(closure);
+    }
+
+    private boolean isUnresolvedHost(Resource res) {
+        if (res instanceof XBundleRevision == false)
+            return false;
+        XBundleRevision brev = (XBundleRevision) res;
+        XBundle bundle = brev.getBundle();
+        return bundle != null && !brev.isFragment() && bundle.getState() == Bundle.INSTALLED && bundle.getBundleRevision() == brev;
+    }
+
+    private CapabilityIndex getCapabilityIndex() {
+        if (environment instanceof EnvironmentImpl)
+            return ((EnvironmentImpl) environment).getCapabilityIndex();
+
+        // Index the resources of a foreign environment on the fly
+        CapabilityIndex index = new CapabilityIndex();
+        for (XResource res : environment.getResources(XEnvironment.ALL_IDENTITY_TYPES)) {
+            index.addResource(res);
+        }
+        return index;
+    }
+
     private Collection<Capability> getHostCapabilities(Collection<? extends Resource> resources) {
         Collection<Capability> result = new HashSet<Capability>();
         for (Resource res : resources) {
@@ -200,12 +295,12 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
 
     private Collection<XResource> findAttachableFragments(Collection<? extends Capability> hostcaps) {
         Set<XResource> result = new HashSet<XResource>();
-        for (XResource res : environment.getResources(IdentityNamespace.TYPE_FRAGMENT)) {
-            Requirement req = res.getRequirements(HostNamespace.HOST_NAMESPACE).get(0);
-            XRequirement xreq = (XRequirement) req;
-            for (Capability cap : hostcaps) {
+        CapabilityIndex index = getCapabilityIndex();
+        for (Capability cap : hostcaps) {
+            for (Requirement req : index.getHostRequirements(cap)) {
+                XRequirement xreq = (XRequirement) req;
                 if (xreq.matches(cap)) {
-                    result.add(res);
+                    result.add((XResource) req.getResource());
                 }
             }
         }
@@ -261,6 +356,15 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
             res.addAttachment(Wiring.class, entry.getValue());
         }
 
+        // Maintain the reverse wiring index
+        WiringIndex wiringIndex = bundleManager.getFrameworkState().getWiringIndex();
+        for (Entry<Resource, List<Wire>> entry : wiremap.entrySet()) {
+            wiringIndex.addWires(entry.getKey(), entry.getValue());
+        }
+        for (Entry<Resource, Wiring> entry : wirings.entrySet()) {
+            wiringIndex.addExporter((XBundleRevision) entry.getKey(), entry.getValue());
+        }
+
         // Change the bundle state to RESOLVED
         setBundleStatesToResolved(brevmap);
 
@@ -299,17 +403,52 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
         }
     }
 
+    // Build the module specs in parallel, they only depend on the wires and the revision content.
+    // The FrameworkModuleLoader integration callbacks are therefore invoked on worker threads.
     private void addModules(Map<BundleRevision, List<BundleWire>> wiremap) {
+        List<Callable<ModuleIdentifier>> tasks = new ArrayList<Callable<ModuleIdentifier>>();
         for (Map.Entry<BundleRevision, List<BundleWire>> entry : wiremap.entrySet()) {
-            XBundleRevision brev = (XBundleRevision) entry.getKey();
+            final XBundleRevision brev = (XBundleRevision) entry.getKey();
             if (brev.isFragment() == false) {
-                List<BundleWire> wires = wiremap.get(brev);
-                moduleManager.addModule(brev, wires);
+                final List<BundleWire> wires = entry.getValue();
+                tasks.add(new Callable<ModuleIdentifier>() {
+                    @Override
+                    public ModuleIdentifier call() throws Exception {
+                        return moduleManager.addModule(brev, wires);
+                    }
+                });
             }
         }
+        try {
+            moduleTasks.invokeAll(tasks);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
     }
 
     private void createModuleServices(Map<BundleRevision, List<BundleWire>> wiremap) {
+
+        // Wait for the module services of previous revisions to go away
+        List<ServiceController<?>> removing = new ArrayList<ServiceController<?>>();
+        ServiceContainer serviceContainer = bundleManager.getServiceContainer();
+        for (Map.Entry<BundleRevision, List<BundleWire>> entry : wiremap.entrySet()) {
+            XBundleRevision brev = (XBundleRevision) entry.getKey();
+            XBundle bundle = brev.getBundle();
+            if (bundle != null && bundle.getBundleId() != 0 && !brev.isFragment()) {
+                ServiceName serviceName = moduleLoader.getModuleServiceName(brev.getModuleIdentifier());
+                ServiceController<?> controller = serviceContainer.getService(serviceName);
+                if (controller != null) {
+                    removing.add(controller);
+                }
+            }
+        }
+        awaitServiceRemoval(removing);
+
         for (Map.Entry<BundleRevision, List<BundleWire>> entry : wiremap.entrySet()) {
             XBundleRevision brev = (XBundleRevision) entry.getKey();
             List<BundleWire> wires = entry.getValue();
@@ -320,27 +459,44 @@ public final class ResolverImpl extends StatelessResolver implements XResolver {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private void createBundleServices(Map<BundleRevision, List<BundleWire>> wiremap) {
+
+        // Wait for the RESOLVED services of previous revisions to go away
+        List<HostBundleRevision> hostRevs = new ArrayList<HostBundleRevision>();
+        List<ServiceController<?>> removing = new ArrayList<ServiceController<?>>();
+        ServiceContainer serviceContainer = bundleManager.getServiceContainer();
         for (Map.Entry<BundleRevision, List<BundleWire>> entry : wiremap.entrySet()) {
             XBundleRevision brev = (XBundleRevision) entry.getKey();
             XBundle bundle = brev.getBundle();
             if (bundle != null && bundle.getBundleId() != 0 && !brev.isFragment()) {
                 HostBundleRevision hostRev = HostBundleRevision.assertHostRevision(brev);
-                HostBundleState hostState = hostRev.getBundleState();
-                BundleManager bundleManager = hostState.adapt(BundleManager.class);
-                ServiceContainer serviceContainer = bundleManager.getServiceContainer();
-                ServiceName serviceName = hostState.getServiceName(Bundle.RESOLVED);
-                ServiceController<HostBundleState> controller = (ServiceController<HostBundleState>) serviceContainer.getService(serviceName);
+                ServiceName serviceName = hostRev.getBundleState().getServiceName(Bundle.RESOLVED);
+                ServiceController<?> controller = serviceContainer.getService(serviceName);
                 if (controller != null) {
-                    FutureServiceValue<HostBundleState> future = new FutureServiceValue<HostBundleState>(controller, State.REMOVED);
-                    try {
-                        future.get(10, TimeUnit.SECONDS);
-                    } catch (Exception ex) {
-                        // ignore
-                    }
+                    removing.add(controller);
                 }
-                hostRev.createResolvedService(hostState.getServiceTarget());
+                hostRevs.add(hostRev);
+            }
+        }
+        awaitServiceRemoval(removing);
+
+        for (HostBundleRevision hostRev : hostRevs) {
+            HostBundleState hostState = hostRev.getBundleState();
+            hostRev.createResolvedService(hostState.getServiceTarget());
+        }
+    }
+
+    // Wait for the given services to be removed, all of them share one timeout
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void awaitServiceRemoval(List<ServiceController<?>> controllers) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(SERVICE_REMOVAL_TIMEOUT);
+        for (ServiceController<?> controller : controllers) {
+            long timeout = Math.max(0, deadline - System.currentTimeMillis());
+            FutureServiceValue future = new FutureServiceValue(controller, State.REMOVED);
+            try {
+                future.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (Exception ex) {
+                // ignore
             }
         }
     }
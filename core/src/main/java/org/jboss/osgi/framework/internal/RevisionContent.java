@@ -24,13 +24,16 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.net.URLStreamHandler;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Vector;
+import java.util.List;
+import java.util.NoSuchElementException;
 
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.StorageState;
 import org.jboss.osgi.metadata.OSGiMetaData;
 import org.jboss.osgi.vfs.AbstractVFS;
 import org.jboss.osgi.vfs.VFSUtils;
@@ -48,8 +51,14 @@ final class RevisionContent implements EntriesProvider {
 
     private final UserBundleRevision userRev;
     private final VirtualFile virtualFile;
+    private final RevisionContentURLHandler urlHandler;
     private final String identity;
     private final int contentId;
+    private volatile String rootURLPrefix;
+    private EntryIndex entryIndex;
+    private ClassDataCache classDataCache;
+    private boolean classDataCacheChecked;
+    private boolean entryIndexFailed;
     private boolean closedMarker;
 
     RevisionContent(UserBundleRevision brev, OSGiMetaData metadata, long bundleId, int contentId, VirtualFile rootFile) {
@@ -68,6 +77,8 @@ final class RevisionContent implements EntriesProvider {
         }
         int revisionId = brev.getRevisionId();
         identity = symbolicName + "-" + bundleId + "-" + revisionId + "-" + contentId;
+        urlHandler = brev.getFrameworkState().getRevisionContentURLHandler();
+        urlHandler.addRevisionContent(this);
         LOGGER.tracef("new RevisionContent: %s", identity);
     }
 
@@ -124,6 +135,11 @@ final class RevisionContent implements EntriesProvider {
     @Override
     public Enumeration<URL> findEntries(String path, String pattern, boolean recurse) {
         assertNotClosed();
+        EntryIndex index = getEntryIndex();
+        if (index != null) {
+            List<String> names = index.findEntries(path, pattern, recurse);
+            return names.isEmpty() ? null : getBundleURLs(names);
+        }
         try {
             Enumeration<URL> urls = virtualFile.findEntries(path, pattern, recurse);
             return getBundleURLs(urls);
@@ -135,6 +151,11 @@ final class RevisionContent implements EntriesProvider {
     @Override
     public Enumeration<String> getEntryPaths(String path) {
         assertNotClosed();
+        EntryIndex index = getEntryIndex();
+        if (index != null) {
+            List<String> names = index.getEntryPaths(path);
+            return names.isEmpty() ? null : Collections.enumeration(names);
+        }
         try {
             Enumeration<String> entryPaths = virtualFile.getEntryPaths(path);
             if (entryPaths != null && entryPaths.hasMoreElements())
@@ -146,7 +167,72 @@ final class RevisionContent implements EntriesProvider {
         }
     }
 
+    synchronized boolean hasEntryIndex() {
+        return entryIndex != null || entryIndexFailed;
+    }
+
+    /**
+     * Get the entry index for this content, which is built on first access.
+     *
+     * @return The index or null if it cannot be built
+     */
+    synchronized EntryIndex getEntryIndex() {
+        if (entryIndex == null && entryIndexFailed == false) {
+            try {
+                File bundleFile = contentId == 0 ? userRev.getStorageState().getBundleFile() : null;
+                if (bundleFile != null && bundleFile.isFile()) {
+                    entryIndex = EntryIndex.create(bundleFile);
+                } else {
+                    entryIndex = EntryIndex.create(virtualFile);
+                }
+                LOGGER.tracef("Entry index with %d entries for: %s", entryIndex.size(), identity);
+            } catch (IOException ex) {
+                LOGGER.debugf(ex, "Cannot build entry index for: %s", identity);
+                entryIndexFailed = true;
+            }
+        }
+        return entryIndex;
+    }
+
+    /**
+     * Get the class data cache for this content.
+     *
+     * @return The cache or null if class data caching is disabled or the content cannot be identified
+     */
+    synchronized ClassDataCache getClassDataCache() {
+        if (classDataCacheChecked == false) {
+            classDataCacheChecked = true;
+            Object value = userRev.getFrameworkState().getBundleManager().getProperty(Constants.PROPERTY_CLASS_DATA_CACHE);
+            if (value != null && Boolean.parseBoolean(value.toString())) {
+                StorageState storageState = userRev.getStorageState();
+                String cacheKey = MetaDataCache.getCacheKey(storageState);
+                if (cacheKey != null) {
+                    File cacheFile = ClassDataCache.getCacheFile(storageState.getStorageDir(), storageState.getRevisionId(), contentId);
+                    URL sealBase = null;
+                    try {
+                        sealBase = virtualFile.toURL();
+                    } catch (IOException ex) {
+                        LOGGER.debugf(ex, "Cannot obtain seal base for: %s", identity);
+                    }
+                    classDataCache = new ClassDataCache(cacheFile, cacheKey, sealBase);
+                }
+            }
+        }
+        return classDataCache;
+    }
+
+    /**
+     * Write the class data that was loaded since the last flush.
+     */
+    synchronized void flushClassDataCache() {
+        if (classDataCache != null) {
+            classDataCache.flush();
+        }
+    }
+
     void close() {
+        flushClassDataCache();
+        urlHandler.removeRevisionContent(this);
         VFSUtils.safeClose(virtualFile);
         closedMarker = true;
     }
@@ -157,38 +243,78 @@ final class RevisionContent implements EntriesProvider {
         }
     }
 
-    private Enumeration<URL> getBundleURLs(Enumeration<URL> urls) throws IOException {
+    private Enumeration<URL> getBundleURLs(final Enumeration<URL> urls) throws IOException {
         if (urls == null)
             return null;
 
         if (!urls.hasMoreElements())
             return null;
 
-        Vector<URL> result = new Vector<URL>();
-        while (urls.hasMoreElements()) {
-            VirtualFile child = AbstractVFS.toVirtualFile(urls.nextElement());
-            result.add(getBundleURL(child));
-        }
+        // Convert the VFS URLs lazily, a scanner may not consume all of them
+        return new Enumeration<URL>() {
 
-        return result.elements();
+            @Override
+            public boolean hasMoreElements() {
+                return urls.hasMoreElements();
+            }
+
+            @Override
+            public URL nextElement() {
+                URL url = urls.nextElement();
+                try {
+                    return getBundleURL(url);
+                } catch (IOException ex) {
+                    throw MESSAGES.illegalStateCannotObtainBundleURL(ex, url.toExternalForm());
+                }
+            }
+        };
     }
 
-    URL getBundleURL(final VirtualFile child) throws IOException {
-        final String orgPath = child.getPathName();
-        URLStreamHandler streamHandler = new URLStreamHandler() {
+    private Enumeration<URL> getBundleURLs(final List<String> names) {
+        return new Enumeration<URL>() {
+            private int index;
+
             @Override
-            protected URLConnection openConnection(URL url) throws IOException {
-                String path = url.getPath();
-                VirtualFile real = (orgPath.equals(path) ? child : virtualFile.getChild(path));
-                return real.getStreamURL().openConnection();
+            public boolean hasMoreElements() {
+                return index < names.size();
             }
 
-            // [TODO] overwrite hashCode for to prevent host address resolution
-            // when offline the BundleEntriesTestCase is slow because of this
+            @Override
+            public URL nextElement() {
+                if (index >= names.size())
+                    throw new NoSuchElementException();
+                String name = names.get(index++);
+                try {
+                    return getBundleURL(name, name.endsWith("/"));
+                } catch (IOException ex) {
+                    throw MESSAGES.illegalStateCannotObtainBundleURL(ex, name);
+                }
+            }
         };
+    }
+
+    private URL getBundleURL(URL vfsURL) throws IOException {
+        // Derive the entry path from the VFS URL when it is a plain extension of the root URL
+        String prefix = rootURLPrefix;
+        if (prefix == null) {
+            prefix = virtualFile.toURL().toExternalForm();
+            rootURLPrefix = prefix;
+        }
+        String urlString = vfsURL.toExternalForm();
+        if (urlString.startsWith(prefix) && urlString.indexOf('%', prefix.length()) < 0) {
+            return getBundleURL(urlString.substring(prefix.length()), urlString.endsWith("/"));
+        }
+        VirtualFile child = AbstractVFS.toVirtualFile(vfsURL);
+        return getBundleURL(child);
+    }
 
+    URL getBundleURL(VirtualFile child) throws IOException {
         String rootPath = virtualFile.getPathName();
         String pathName = child.getPathName().substring(rootPath.length());
+        return getBundleURL(pathName, child.isDirectory());
+    }
+
+    private URL getBundleURL(String pathName, boolean directory) throws IOException {
 
         // The path can potentially be made characters longer (one leading and one trailing slash)
         StringBuilder path = new StringBuilder(pathName.length() + 2);
@@ -198,11 +324,11 @@ final class RevisionContent implements EntriesProvider {
 
         path.append(pathName);
 
-        if (child.isDirectory() && path.charAt(path.length() - 1) != '/') {
+        if (directory && path.charAt(path.length() - 1) != '/') {
             path.append('/');
         }
 
-        return new URL(BundleProtocolHandler.PROTOCOL_NAME, identity, -1, path.toString(), streamHandler);
+        return new URL(BundleProtocolHandler.PROTOCOL_NAME, identity, -1, path.toString(), urlHandler);
     }
 
     @Override
@@ -21,6 +21,9 @@ package org.jboss.osgi.framework.internal;
  * #L%
  */
 
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Collection;
@@ -29,6 +32,7 @@ import org.jboss.modules.ClassSpec;
 import org.jboss.modules.PackageSpec;
 import org.jboss.modules.Resource;
 import org.jboss.modules.ResourceLoader;
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.spi.VirtualFileResourceLoader;
 
 /**
@@ -40,35 +44,106 @@ import org.jboss.osgi.framework.spi.VirtualFileResourceLoader;
 final class RevisionContentResourceLoader implements ResourceLoader {
 
     private final RevisionContent revContent;
-    private final VirtualFileResourceLoader delegate;
+    private final ResourceLoader delegate;
+    private final ClassDataCache classDataCache;
+    private final ClassLoadingMetricsImpl metrics;
 
     RevisionContentResourceLoader(RevisionContent revContent) {
         assert revContent != null : "Null revContent";
-        this.delegate = new VirtualFileResourceLoader(revContent.getVirtualFile());
+        ResourceLoader mappedLoader = createMappedLoader(revContent);
+        this.delegate = mappedLoader != null ? mappedLoader : new VirtualFileResourceLoader(revContent.getVirtualFile());
+        this.classDataCache = revContent.getClassDataCache();
+        this.metrics = revContent.getRevision().getFrameworkState().getClassLoadingMetrics();
         this.revContent = revContent;
     }
 
+    // The root content of a revision is the bundle file in the storage area, which can be mapped when enabled
+    private static ResourceLoader createMappedLoader(RevisionContent revContent) {
+        if (revContent.getContentId() != 0)
+            return null;
+
+        UserBundleRevision userRev = revContent.getRevision();
+        Object value = userRev.getFrameworkState().getBundleManager().getProperty(Constants.PROPERTY_RESOURCE_LOADER_MAPPED);
+        if (value == null || Boolean.parseBoolean(value.toString()) == false)
+            return null;
+
+        try {
+            File bundleFile = userRev.getStorageState().getBundleFile();
+            if (bundleFile == null)
+                return null;
+            URL rootURL = revContent.getVirtualFile().toURL();
+            return MappedJarResourceLoader.create(bundleFile, rootURL);
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot obtain bundle file for: %s", revContent);
+            return null;
+        }
+    }
+
     @Override
     public String getRootName() {
-        return delegate.getRootName();
+        return revContent.getVirtualFile().getPathName();
     }
 
     @Override
     public ClassSpec getClassSpec(String fileName) throws IOException {
-        return delegate.getClassSpec(fileName);
+        if (metrics.isEnabled() == false)
+            return findClassSpec(fileName);
+
+        long start = System.nanoTime();
+        ClassSpec classSpec = findClassSpec(fileName);
+        metrics.addClassLookup(getBundleId(), System.nanoTime() - start, classSpec != null);
+        return classSpec;
+    }
+
+    private ClassSpec findClassSpec(String fileName) throws IOException {
+        if (classDataCache == null)
+            return delegate.getClassSpec(fileName);
+
+        ClassSpec classSpec = classDataCache.getClassSpec(fileName);
+        if (classSpec == null) {
+            classSpec = delegate.getClassSpec(fileName);
+            if (classSpec != null) {
+                classDataCache.putClassSpec(fileName, classSpec);
+            }
+        }
+        return classSpec;
     }
 
     @Override
     public PackageSpec getPackageSpec(String name) throws IOException {
-        return delegate.getPackageSpec(name);
+        if (classDataCache == null)
+            return delegate.getPackageSpec(name);
+
+        PackageSpec packageSpec = classDataCache.getPackageSpec(name);
+        if (packageSpec == null) {
+            packageSpec = delegate.getPackageSpec(name);
+            if (packageSpec != null) {
+                classDataCache.putPackageSpec(name, packageSpec);
+            }
+        }
+        return packageSpec;
     }
 
     @Override
     public Resource getResource(String path) {
+        if (metrics.isEnabled() == false)
+            return findResource(path);
+
+        long start = System.nanoTime();
+        Resource resource = findResource(path);
+        metrics.addResourceLookup(getBundleId(), System.nanoTime() - start, resource != null);
+        return resource;
+    }
+
+    private Resource findResource(String path) {
         URL url = revContent.getEntry(path);
         return url != null ? new URLResource(url) : null;
     }
 
+    private long getBundleId() {
+        return revContent.getRevision().getBundle().getBundleId();
+    }
+
     @Override
     public String getLibrary(String name) {
         return null;
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.osgi.vfs.VirtualFile;
+
+/**
+ * The stream handler that is shared by all 'bundle' URLs that a framework hands out.
+ *
+ * The revision content is resolved from the URL host, which is the content identity.
+ * Revision content registers itself on creation and is removed when it gets closed.
+ *
+ * The host of a bundle URL is not a network host. Host address resolution is
+ * therefore disabled, so that URL.hashCode() and URL.equals() never do a DNS lookup.
+ */
+final class RevisionContentURLHandler extends URLStreamHandler {
+
+    private final ConcurrentMap<String, RevisionContent> contents = new ConcurrentHashMap<String, RevisionContent>();
+
+    void addRevisionContent(RevisionContent revContent) {
+        contents.put(revContent.getIdentity(), revContent);
+    }
+
+    void removeRevisionContent(RevisionContent revContent) {
+        contents.remove(revContent.getIdentity(), revContent);
+    }
+
+    int getRevisionContentCount() {
+        return contents.size();
+    }
+
+    RevisionContent getRevisionContent(String identity) {
+        return identity != null ? contents.get(identity) : null;
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        LOGGER.tracef("openConnection: %s", url);
+        RevisionContent revContent = getRevisionContent(url.getHost());
+        if (revContent == null)
+            throw MESSAGES.cannotObtainRevisionContent(url);
+        VirtualFile child = revContent.getVirtualFile().getChild(url.getPath());
+        if (child == null)
+            throw MESSAGES.cannotObtainContent(url);
+        return child.getStreamURL().openConnection();
+    }
+
+    @Override
+    protected InetAddress getHostAddress(URL url) {
+        return null;
+    }
+
+    @Override
+    protected boolean hostsEqual(URL url1, URL url2) {
+        String host1 = url1.getHost();
+        String host2 = url2.getHost();
+        return host1 != null ? host1.equalsIgnoreCase(host2) : host2 == null;
+    }
+}
@@ -22,6 +22,7 @@
 package org.jboss.osgi.framework.internal;
 
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -35,8 +36,12 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.FrameworkEvents;
 import org.jboss.osgi.framework.spi.ServiceManager;
+import org.jboss.osgi.framework.spi.ServiceManager.ServiceSpec;
+import org.jboss.osgi.framework.spi.ServiceObjects;
 import org.jboss.osgi.framework.spi.ServiceState;
 import org.jboss.osgi.resolver.XBundle;
 import org.osgi.framework.Bundle;
@@ -63,10 +68,23 @@ public final class ServiceManagerImpl implements ServiceManager {
     private final FrameworkEvents frameworkEvents;
     private final Map<String, List<ServiceState>> serviceContainer = new HashMap<String, List<ServiceState>>();
     private final AtomicLong identityGenerator = new AtomicLong();
+    private final int prototypePoolSize;
 
-
-    public ServiceManagerImpl(FrameworkEvents frameworkEvents) {
+    public ServiceManagerImpl(BundleManager bundleManager, FrameworkEvents frameworkEvents) {
         this.frameworkEvents = frameworkEvents;
+        this.prototypePoolSize = getPrototypePoolSize(bundleManager);
+    }
+
+    private static int getPrototypePoolSize(BundleManager bundleManager) {
+        Object value = bundleManager.getProperty(Constants.PROPERTY_PROTOTYPE_POOL_SIZE);
+        if (value != null) {
+            try {
+                return Math.max(0, Integer.parseInt(value.toString().trim()));
+            } catch (NumberFormatException ex) {
+                LOGGER.debugf("Invalid %s: %s", Constants.PROPERTY_PROTOTYPE_POOL_SIZE, value);
+            }
+        }
+        return 0;
     }
 
     @Override
@@ -96,55 +114,85 @@ public final class ServiceManagerImpl implements ServiceManager {
      */
     @Override
     @SuppressWarnings({ "rawtypes" })
-    public ServiceState registerService(XBundle bundle, String[] classNames, final Object serviceValue, Dictionary properties) {
+    public ServiceState registerService(XBundle bundle, String[] classNames, Object serviceValue, Dictionary properties) {
         assert classNames != null && classNames.length > 0 : "Null service classes";
+        ServiceSpec serviceSpec = new ServiceSpec(classNames, serviceValue, properties);
+        return registerServices(bundle, Collections.singletonList(serviceSpec)).get(0);
+    }
+
+    @Override
+    public List<ServiceState> registerServices(XBundle bundle, List<ServiceSpec> serviceSpecs) {
+        assert serviceSpecs != null : "Null serviceSpecs";
 
         // Immediately after registration of a {@link ListenerHook}, the ListenerHook.added() method will be called
         // to provide the current collection of service listeners which had been added prior to the hook being registered.
         Collection<ListenerInfo> listenerInfos = null;
-        if (serviceValue instanceof ListenerHook) {
-            listenerInfos = frameworkEvents.getServiceListenerInfos(null);
-        }
-
-        ServiceState.ValueProvider valueProvider = new ServiceState.ValueProvider() {
-            public boolean isFactoryValue() {
-                return serviceValue instanceof ServiceFactory;
-            }
-
-            public Object getValue() {
-                return serviceValue;
+        for (ServiceSpec serviceSpec : serviceSpecs) {
+            if (serviceSpec.getServiceValue() instanceof ListenerHook) {
+                listenerInfos = frameworkEvents.getServiceListenerInfos(null);
+                break;
             }
-        };
+        }
 
-        long serviceId = getNextServiceId();
+        // Create all service states before any of them is registered
         AbstractBundleState bundleState = AbstractBundleState.assertBundleState(bundle);
-        ServiceState serviceState = new ServiceStateImpl(this, bundleState, serviceId, classNames, valueProvider, properties);
-        LOGGER.debugf("Register service: %s", serviceState);
+        List<ServiceState> serviceStates = new ArrayList<ServiceState>(serviceSpecs.size());
+        Map<String, List<ServiceState>> classIndex = new HashMap<String, List<ServiceState>>();
+        for (ServiceSpec serviceSpec : serviceSpecs) {
+            ServiceState serviceState = createServiceState(bundleState, serviceSpec);
+            LOGGER.debugf("Register service: %s", serviceState);
+            serviceStates.add(serviceState);
+            for (String className : serviceSpec.getClassNames()) {
+                List<ServiceState> classStates = classIndex.get(className);
+                if (classStates == null) {
+                    classStates = new ArrayList<ServiceState>();
+                    classIndex.put(className, classStates);
+                }
+                classStates.add(serviceState);
+            }
+        }
 
         synchronized (serviceContainer) {
-            for (String className : classNames) {
-                List<ServiceState> serviceStates = serviceContainer.get(className);
-                if (serviceStates != null) {
-                    serviceStates.add(serviceState);
+            for (Map.Entry<String, List<ServiceState>> entry : classIndex.entrySet()) {
+                List<ServiceState> serviceStatesForClass = serviceContainer.get(entry.getKey());
+                if (serviceStatesForClass != null) {
+                    serviceStatesForClass.addAll(entry.getValue());
                 } else {
-                    serviceStates = new CopyOnWriteArrayList<ServiceState>();
-                    serviceStates.add(serviceState);
-                    serviceContainer.put(className, serviceStates);
+                    serviceStatesForClass = new CopyOnWriteArrayList<ServiceState>(entry.getValue());
+                    serviceContainer.put(entry.getKey(), serviceStatesForClass);
                 }
             }
         }
-        bundleState.addRegisteredService(serviceState);
+        bundleState.addRegisteredServices(serviceStates);
 
-        // Call the newly added ListenerHook.added() method
-        if (serviceValue instanceof ListenerHook) {
-            ListenerHook listenerHook = (ListenerHook) serviceValue;
-            listenerHook.added(listenerInfos);
+        // Call the newly added ListenerHook.added() methods
+        for (ServiceSpec serviceSpec : serviceSpecs) {
+            if (serviceSpec.getServiceValue() instanceof ListenerHook) {
+                ListenerHook listenerHook = (ListenerHook) serviceSpec.getServiceValue();
+                listenerHook.added(listenerInfos);
+            }
         }
 
-        // This event is synchronously delivered after the service has been registered with the Framework.
-        frameworkEvents.fireServiceEvent(bundleState, ServiceEvent.REGISTERED, serviceState);
+        // These events are synchronously delivered after the services have been registered with the Framework.
+        frameworkEvents.fireServiceEvents(bundleState, ServiceEvent.REGISTERED, serviceStates);
 
-        return serviceState;
+        return serviceStates;
+    }
+
+    private ServiceState createServiceState(AbstractBundleState bundleState, ServiceSpec serviceSpec) {
+        final Object serviceValue = serviceSpec.getServiceValue();
+        ServiceState.ValueProvider valueProvider = new ServiceState.ValueProvider() {
+            public boolean isFactoryValue() {
+                return serviceValue instanceof ServiceFactory;
+            }
+
+            public Object getValue() {
+                return serviceValue;
+            }
+        };
+
+        long serviceId = getNextServiceId();
+        return new ServiceStateImpl(this, bundleState, serviceId, serviceSpec.getClassNames(), valueProvider, serviceSpec.getProperties(), prototypePoolSize);
     }
 
     /**
@@ -255,15 +303,23 @@ public final class ServiceManagerImpl implements ServiceManager {
         Object value = serviceState.getScopedValue(bundleState);
 
         // If the factory returned an invalid value
-        // restore the service usage counts
+        // restore the service usage count
         if (value == null) {
             bundleState.removeServiceInUse(serviceState);
-            serviceState.removeUsingBundle(bundleState);
         }
 
         return value;
     }
 
+    @Override
+    public ServiceObjects getServiceObjects(XBundle bundle, ServiceReference sref) {
+        ServiceState serviceState = ServiceStateImpl.assertServiceState(sref);
+        if (serviceState.isUnregistered())
+            return null;
+
+        return new ServiceObjectsImpl(bundle, serviceState);
+    }
+
     /**
      * Unregister the given service.
      */
@@ -320,12 +376,65 @@ public final class ServiceManagerImpl implements ServiceManager {
         AbstractBundleState bundleState = AbstractBundleState.assertBundleState(bundle);
         serviceState.ungetScopedValue(bundleState);
         int useCount = bundleState.removeServiceInUse(serviceState);
-        if (useCount == 0)
-            serviceState.removeUsingBundle(bundleState);
-
         return useCount >= 0;
     }
 
+    /**
+     * Every service object that is obtained counts as one use of the service, also when the same object is returned again.
+     */
+    private class ServiceObjectsImpl implements ServiceObjects {
+
+        private final XBundle bundle;
+        private final ServiceState serviceState;
+
+        ServiceObjectsImpl(XBundle bundle, ServiceState serviceState) {
+            this.bundle = bundle;
+            this.serviceState = serviceState;
+        }
+
+        @Override
+        public Object getService() {
+            if (serviceState.isPrototype() == false)
+                return ServiceManagerImpl.this.getService(bundle, serviceState);
+
+            if (serviceState.isUnregistered())
+                return null;
+
+            AbstractBundleState bundleState = AbstractBundleState.assertBundleState(bundle);
+            bundleState.addServiceInUse(serviceState);
+            serviceState.addUsingBundle(bundleState);
+
+            Object value = serviceState.getPrototypeValue(bundleState);
+            if (value == null) {
+                bundleState.removeServiceInUse(serviceState);
+            }
+            return value;
+        }
+
+        @Override
+        public void ungetService(Object service) {
+            if (serviceState.isPrototype() == false) {
+                ServiceManagerImpl.this.ungetService(bundle, serviceState);
+                return;
+            }
+
+            // The service objects have already been released when the service was unregistered
+            if (serviceState.isUnregistered())
+                return;
+
+            AbstractBundleState bundleState = AbstractBundleState.assertBundleState(bundle);
+            if (serviceState.ungetPrototypeValue(bundleState, service) == false)
+                throw MESSAGES.illegalArgumentUnknownServiceObject(service);
+
+            bundleState.removeServiceInUse(serviceState);
+        }
+
+        @Override
+        public ServiceReference getServiceReference() {
+            return serviceState.getReference();
+        }
+    }
+
     /*
      * The FindHook is called when a target bundle searches the service registry with the getServiceReference or
      * getServiceReferences methods. A registered FindHook service gets a chance to inspect the returned set of service
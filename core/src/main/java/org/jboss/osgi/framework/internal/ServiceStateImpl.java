@@ -24,20 +24,22 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Dictionary;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.jboss.osgi.framework.internal.AbstractBundleState.ServiceUse;
+import org.jboss.osgi.framework.spi.PrototypeServiceFactory;
 import org.jboss.osgi.framework.spi.ServiceManager;
 import org.jboss.osgi.framework.spi.ServiceState;
 import org.jboss.osgi.metadata.CaseInsensitiveDictionary;
@@ -70,15 +72,17 @@ final class ServiceStateImpl implements ServiceState {
     private final ValueProvider valueProvider;
     private final ServiceReference reference;
     private ServiceRegistration registration;
-    private Set<XBundle> usingBundles;
-    private Map<Long, ServiceFactoryHolder> factoryValues;
+    private final ConcurrentMap<XBundle, Boolean> usingBundles = new ConcurrentHashMap<XBundle, Boolean>();
+    private final ConcurrentMap<Long, ServiceFactoryHolder> factoryValues;
+    private final int prototypePoolSize;
+    private volatile boolean prototypesReleased;
 
     // The properties
     private CaseInsensitiveDictionary prevProperties;
     private CaseInsensitiveDictionary currProperties;
 
     @SuppressWarnings("unchecked")
-    ServiceStateImpl(ServiceManager serviceManager, XBundle owner, long serviceId, String[] classNames, ValueProvider valueProvider, Dictionary properties) {
+    ServiceStateImpl(ServiceManager serviceManager, XBundle owner, long serviceId, String[] classNames, ValueProvider valueProvider, Dictionary properties, int prototypePoolSize) {
         assert serviceManager != null : "Null serviceManager";
         assert owner != null : "Null owner";
         assert classNames != null && classNames.length > 0 : "Null clazzes";
@@ -89,6 +93,8 @@ final class ServiceStateImpl implements ServiceState {
         this.serviceId = serviceId;
         this.valueProvider = valueProvider;
         this.classNames = classNames;
+        this.factoryValues = valueProvider.isFactoryValue() ? new ConcurrentHashMap<Long, ServiceFactoryHolder>() : null;
+        this.prototypePoolSize = prototypePoolSize;
 
         if (!valueProvider.isFactoryValue() && !checkValidClassNames(owner, classNames, valueProvider.getValue()))
             throw MESSAGES.illegalArgumentInvalidObjectClass(Arrays.toString(classNames));
@@ -128,17 +134,7 @@ final class ServiceStateImpl implements ServiceState {
         // Get the ServiceFactory value
         Object result = null;
         try {
-            if (factoryValues == null)
-                factoryValues = new HashMap<Long, ServiceFactoryHolder>();
-
-            ServiceFactoryHolder factoryHolder = getFactoryHolder(bundle);
-            if (factoryHolder == null) {
-                ServiceFactory factory = (ServiceFactory) valueProvider.getValue();
-                factoryHolder = new ServiceFactoryHolder(bundle, factory);
-                factoryValues.put(bundle.getBundleId(), factoryHolder);
-            }
-
-            result = factoryHolder.getService();
+            result = getOrCreateFactoryHolder(bundle).getService();
 
             // If the service object returned by the ServiceFactory object is not an instanceof all the classes named
             // when the service was registered or the ServiceFactory object throws an exception,
@@ -170,10 +166,94 @@ final class ServiceStateImpl implements ServiceState {
         }
     }
 
+    @Override
+    public boolean isPrototype() {
+        return valueProvider.isFactoryValue() && valueProvider.getValue() instanceof PrototypeServiceFactory;
+    }
+
+    @Override
+    public Object getPrototypeValue(XBundle bundle) {
+        assert isPrototype() : "Not a prototype service: " + this;
+        // The use is recorded by the caller before the value is obtained
+        ServiceUse serviceUse = AbstractBundleState.assertBundleState(bundle).getServiceUse(this);
+        if (serviceUse == null || prototypesReleased)
+            return null;
+
+        Object result = null;
+        try {
+            result = getOrCreateFactoryHolder(bundle).getPrototypeService(serviceUse);
+            if (result == null && prototypesReleased == false) {
+                ServiceException sex = new ServiceException("Cannot get factory value", ServiceException.FACTORY_ERROR);
+                serviceManager.fireFrameworkEvent(bundle, FrameworkEvent.ERROR, sex);
+            }
+        } catch (Throwable th) {
+            ServiceException sex = new ServiceException("Cannot get factory value", ServiceException.FACTORY_EXCEPTION, th);
+            serviceManager.fireFrameworkEvent(bundle, FrameworkEvent.ERROR, sex);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean ungetPrototypeValue(XBundle bundle, Object value) {
+        ServiceFactoryHolder factoryHolder = getFactoryHolder(bundle);
+        ServiceUse serviceUse = AbstractBundleState.assertBundleState(bundle).getServiceUse(this);
+        if (factoryHolder == null || serviceUse == null)
+            return false;
+        try {
+            return factoryHolder.ungetPrototypeService(serviceUse, value);
+        } catch (RuntimeException rte) {
+            ServiceException sex = new ServiceException("Cannot unget factory value", ServiceException.FACTORY_EXCEPTION, rte);
+            serviceManager.fireFrameworkEvent(bundle, FrameworkEvent.WARNING, sex);
+            return true;
+        }
+    }
+
+    @Override
+    public void ungetPrototypeValues(XBundle bundle) {
+        ServiceFactoryHolder factoryHolder = getFactoryHolder(bundle);
+        if (factoryHolder != null) {
+            releasePrototypeServices(factoryHolder);
+        }
+    }
+
+    // There is exactly one holder per bundle, the factory is only called by the holder
+    private ServiceFactoryHolder getOrCreateFactoryHolder(XBundle bundle) {
+        ServiceFactoryHolder factoryHolder = getFactoryHolder(bundle);
+        if (factoryHolder == null) {
+            ServiceFactory factory = (ServiceFactory) valueProvider.getValue();
+            ServiceFactoryHolder newHolder = new ServiceFactoryHolder(bundle, factory);
+            factoryHolder = factoryValues.putIfAbsent(bundle.getBundleId(), newHolder);
+            if (factoryHolder == null)
+                factoryHolder = newHolder;
+        }
+        return factoryHolder;
+    }
+
     private ServiceFactoryHolder getFactoryHolder(XBundle bundle) {
         return factoryValues != null ? factoryValues.get(bundle.getBundleId()) : null;
     }
 
+    // The prototype service objects that are still in use or pooled are released when the service goes away.
+    // A holder that obtains an object after the flag is set releases it again, see getPrototypeService.
+    private void releasePrototypeValues() {
+        if (isPrototype()) {
+            prototypesReleased = true;
+            for (ServiceFactoryHolder factoryHolder : factoryValues.values()) {
+                releasePrototypeServices(factoryHolder);
+            }
+        }
+    }
+
+    private void releasePrototypeServices(ServiceFactoryHolder factoryHolder) {
+        ServiceUse serviceUse = AbstractBundleState.assertBundleState(factoryHolder.bundle).getServiceUse(this);
+        try {
+            factoryHolder.releasePrototypeServices(serviceUse);
+        } catch (RuntimeException rte) {
+            ServiceException sex = new ServiceException("Cannot unget factory value", ServiceException.FACTORY_EXCEPTION, rte);
+            serviceManager.fireFrameworkEvent(factoryHolder.bundle, FrameworkEvent.WARNING, sex);
+        }
+    }
+
     @Override
     public ServiceRegistration getRegistration() {
         return registration;
@@ -199,7 +279,11 @@ final class ServiceStateImpl implements ServiceState {
     @Override
     public void unregisterInternal() {
         serviceManager.unregisterService(this);
-        usingBundles = null;
+        releasePrototypeValues();
+        for (XBundle bundle : usingBundles.keySet()) {
+            AbstractBundleState.assertBundleState(bundle).clearServiceInUse(this);
+        }
+        usingBundles.clear();
         registration = null;
     }
 
@@ -259,47 +343,35 @@ final class ServiceStateImpl implements ServiceState {
         return ownerBundle;
     }
 
+    // A bundle stays registered while its use count is zero, the using bundles are those with a positive count
     @Override
     public void addUsingBundle(XBundle bundleState) {
-        synchronized (this) {
-            if (usingBundles == null)
-                usingBundles = new HashSet<XBundle>();
-
-            usingBundles.add(bundleState);
-        }
+        if (usingBundles.containsKey(bundleState) == false)
+            usingBundles.putIfAbsent(bundleState, Boolean.TRUE);
     }
 
     @Override
     public void removeUsingBundle(XBundle bundle) {
-        synchronized (this) {
-            if (usingBundles != null)
-                usingBundles.remove(bundle);
-        }
+        usingBundles.remove(bundle);
     }
 
     @Override
     public Set<XBundle> getUsingBundlesInternal() {
-        synchronized (this) {
-            if (usingBundles == null)
-                return Collections.emptySet();
-
-            // Return an unmodifieable snapshot of the set
-            return Collections.unmodifiableSet(new HashSet<XBundle>(usingBundles));
+        Set<XBundle> result = new HashSet<XBundle>();
+        for (XBundle bundle : usingBundles.keySet()) {
+            if (AbstractBundleState.assertBundleState(bundle).getServiceUseCount(this) > 0)
+                result.add(bundle);
         }
+        return Collections.unmodifiableSet(result);
     }
 
     @Override
     public Bundle[] getUsingBundles() {
-        synchronized (this) {
-            if (usingBundles == null)
-                return null;
-
-            Set<Bundle> bundles = new HashSet<Bundle>();
-            for (XBundle aux : usingBundles)
-                bundles.add(aux);
+        Set<XBundle> bundles = getUsingBundlesInternal();
+        if (bundles.isEmpty())
+            return null;
 
-            return bundles.toArray(new Bundle[bundles.size()]);
-        }
+        return bundles.toArray(new Bundle[bundles.size()]);
     }
 
     @Override
@@ -447,52 +519,105 @@ final class ServiceStateImpl implements ServiceState {
         return "ServiceState" + props;
     }
 
+    // Calls for the same bundle are serialized on the holder, other bundles are not blocked by a slow factory
     class ServiceFactoryHolder {
 
-        ServiceFactory factory;
-        XBundle bundle;
-        AtomicInteger useCount;
+        final ServiceFactory factory;
+        final XBundle bundle;
+        int useCount;
         Object value;
 
+        // The released prototype service objects that are kept for reuse.
+        // The objects in use are recorded in the ServiceUse of the bundle.
+        ArrayDeque<Object> prototypePool;
+
         ServiceFactoryHolder(XBundle bundle, ServiceFactory factory) {
             this.bundle = bundle;
             this.factory = factory;
-            this.useCount = new AtomicInteger();
         }
 
-        Object getService() {
+        synchronized Object getService() {
             // Multiple calls to getService() return the same value
-            if (useCount.get() == 0) {
+            if (useCount == 0) {
                 // The Framework must not allow this method to be concurrently called for the same bundle
-                synchronized (bundle) {
-                    Object retValue = factory.getService(bundle, getRegistration());
-                    if (retValue == null)
-                        return null;
+                Object retValue = factory.getService(bundle, getRegistration());
+                if (retValue == null)
+                    return null;
 
-                    // The Framework will check if the returned service object is an instance of all the
-                    // classes named when the service was registered. If not, then null is returned to the bundle.
-                    if (checkValidClassNames(ownerBundle, (String[]) getProperty(Constants.OBJECTCLASS), retValue) == false)
-                        return null;
+                // The Framework will check if the returned service object is an instance of all the
+                // classes named when the service was registered. If not, then null is returned to the bundle.
+                if (checkValidClassNames(ownerBundle, (String[]) getProperty(Constants.OBJECTCLASS), retValue) == false)
+                    return null;
 
-                    value = retValue;
-                }
+                value = retValue;
             }
 
-            useCount.incrementAndGet();
+            useCount++;
             return value;
         }
 
-        void ungetService() {
-            if (useCount.get() == 0)
+        synchronized void ungetService() {
+            if (useCount == 0)
                 return;
 
             // Call unget on the factory when done
-            if (useCount.decrementAndGet() == 0) {
-                synchronized (bundle) {
-                    factory.ungetService(bundle, getRegistration(), value);
-                    value = null;
+            if (--useCount == 0) {
+                Object retValue = value;
+                value = null;
+                factory.ungetService(bundle, getRegistration(), retValue);
+            }
+        }
+
+        synchronized Object getPrototypeService(ServiceUse serviceUse) {
+            if (prototypePool == null) {
+                prototypePool = new ArrayDeque<Object>();
+            }
+
+            ServiceRegistration reg = getRegistration();
+            Object retValue = prototypePool.poll();
+            if (retValue == null) {
+                retValue = factory.getService(bundle, reg);
+                if (retValue == null)
+                    return null;
+
+                if (checkValidClassNames(ownerBundle, (String[]) getProperty(Constants.OBJECTCLASS), retValue) == false)
+                    return null;
+            }
+
+            // The service may have been unregistered while the factory was called
+            if (prototypesReleased) {
+                factory.ungetService(bundle, reg, retValue);
+                return null;
+            }
+
+            serviceUse.addPrototypeValue(retValue);
+            return retValue;
+        }
+
+        synchronized boolean ungetPrototypeService(ServiceUse serviceUse, Object retValue) {
+            int count = serviceUse.removePrototypeValue(retValue);
+            if (count < 0)
+                return false;
+
+            if (count == 0) {
+                if (prototypesReleased == false && prototypePool != null && prototypePool.size() < prototypePoolSize) {
+                    prototypePool.add(retValue);
+                } else {
+                    factory.ungetService(bundle, getRegistration(), retValue);
                 }
             }
+            return true;
+        }
+
+        synchronized void releasePrototypeServices(ServiceUse serviceUse) {
+            List<Object> retValues = serviceUse != null ? serviceUse.removePrototypeValues() : new ArrayList<Object>();
+            if (prototypePool != null) {
+                retValues.addAll(prototypePool);
+                prototypePool.clear();
+            }
+            for (Object retValue : retValues) {
+                factory.ungetService(bundle, getRegistration(), retValue);
+            }
         }
     }
 }
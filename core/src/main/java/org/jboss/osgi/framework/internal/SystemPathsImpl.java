@@ -41,6 +41,7 @@ import org.jboss.modules.filter.MultiplePathFilterBuilder;
 import org.jboss.modules.filter.PathFilter;
 import org.jboss.modules.filter.PathFilters;
 import org.jboss.osgi.framework.spi.FrameworkBuilder;
+import org.jboss.osgi.framework.spi.PathTable;
 import org.jboss.osgi.framework.spi.SystemPaths;
 
 /**
@@ -177,7 +178,7 @@ public final class SystemPathsImpl implements SystemPaths {
                 String path = packageSpec.replace('.', '/');
                 paths.add(path);
             }
-            builder.addFilter(PathFilters.in(paths), true);
+            builder.addFilter(PathTable.create(paths), true);
             cachedSystemFilter = builder.create();
             LOGGER.debugf("SystemFilter: %s", cachedSystemFilter);
         }
@@ -226,7 +227,7 @@ public final class SystemPathsImpl implements SystemPaths {
     private PathFilter getFrameworkFilter() {
         assertInitialized();
         if (cachedFrameworkFilter == null) {
-            cachedFrameworkFilter = PathFilters.in(getFrameworkPaths());
+            cachedFrameworkFilter = PathTable.create(getFrameworkPaths());
             LOGGER.debugf("FrameworkFilter: %s", cachedFrameworkFilter);
         }
         return cachedFrameworkFilter;
@@ -34,6 +34,7 @@ import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
 import org.jboss.msc.service.StopContext;
 import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.framework.spi.BootProfiler;
 import org.jboss.osgi.framework.spi.BundleStorage;
 import org.jboss.osgi.framework.spi.IntegrationServices;
 import org.jboss.osgi.framework.spi.NativeCode;
@@ -92,7 +93,18 @@ abstract class UserBundleInstalledService<B extends UserBundleState, R extends U
             bundleState = createBundleState(brev, serviceName, context.getChildTarget());
             dep.addAttachment(Bundle.class, bundleState);
             bundleState.initLazyActivation();
-            validateBundle(bundleState, metadata);
+            boolean metadataCache = MetaDataCache.isEnabled(getBundleManager());
+            if (metadataCache == false || MetaDataCache.isValidated(storageState) == false) {
+                BootProfilerImpl profiler = getFrameworkState().getBundleManagerPlugin().getBootProfiler();
+                long startTime = profiler.isEnabled() ? System.nanoTime() : 0;
+                validateBundle(bundleState, metadata);
+                if (metadataCache) {
+                    MetaDataCache.putMetaData(storageState, metadata);
+                }
+                if (profiler.isEnabled()) {
+                    profiler.addSpan(BootProfiler.CATEGORY_METADATA, "validate " + dep.getLocation(), startTime, System.nanoTime());
+                }
+            }
             processNativeCode(bundleState, dep);
             installBundle(bundleState);
             bundleState.fireBundleEvent(BundleEvent.INSTALLED);
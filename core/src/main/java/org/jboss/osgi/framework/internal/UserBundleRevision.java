@@ -113,6 +113,10 @@ abstract class UserBundleRevision extends BundleStateRevision {
         for (RevisionContent aux : classPathContent) {
             aux.close();
         }
+        // The root content is not on the class path when the Bundle-ClassPath has no '.'
+        if (entriesProvider instanceof RevisionContent && classPathContent.contains(entriesProvider) == false) {
+            ((RevisionContent) entriesProvider).close();
+        }
     }
 
     @Override
@@ -167,6 +167,12 @@ abstract class UserBundleState<R extends UserBundleRevision> extends AbstractBun
 
     void clearOldRevisions() {
         R rev = getBundleRevision();
+        BundleStorage storagePlugin = getFrameworkState().getBundleStorage();
+        for (R oldRev : revisions) {
+            if (oldRev != rev) {
+                storagePlugin.releaseStorageState(oldRev.getStorageState());
+            }
+        }
         revisions.clear();
         revisions.add(rev);
     }
@@ -324,6 +330,7 @@ abstract class UserBundleState<R extends UserBundleRevision> extends AbstractBun
 
         // Remove the revisions from the environment
         ModuleManager moduleManager = getFrameworkState().getModuleManager();
+        WiringIndex wiringIndex = getFrameworkState().getWiringIndex();
         R currentRev = getBundleRevision();
         for (XBundleRevision brev : getAllBundleRevisions()) {
 
@@ -331,6 +338,7 @@ abstract class UserBundleState<R extends UserBundleRevision> extends AbstractBun
             XEnvironment env = getFrameworkState().getEnvironment();
             if (currentRev != brev) {
                 env.uninstallResources(brev);
+                wiringIndex.removeExporter(brev);
                 userRev.close();
             }
 
@@ -339,6 +347,7 @@ abstract class UserBundleState<R extends UserBundleRevision> extends AbstractBun
                 for (FragmentBundleRevision fragRev : hostRev.getAttachedFragments()) {
                     if (fragRev != fragRev.getBundle().getBundleRevision()) {
                         env.uninstallResources(fragRev);
+                        wiringIndex.removeExporter(fragRev);
                         fragRev.close();
                     }
                 }
@@ -352,6 +361,8 @@ abstract class UserBundleState<R extends UserBundleRevision> extends AbstractBun
 
         clearOldRevisions();
 
+        wiringIndex.removeRequirer(this);
+
         FrameworkEvents eventsPlugin = getFrameworkState().getFrameworkEvents();
         eventsPlugin.fireBundleEvent(this, BundleEvent.UNRESOLVED);
 
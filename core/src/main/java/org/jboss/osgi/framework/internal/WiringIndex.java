@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.osgi.framework.namespace.BundleNamespace;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+
+/**
+ * A reverse index of the bundle wiring.
+ *
+ * For every provider it maintains the bundles that are wired to it. A fragment and its host depend on each other.
+ * The index is updated when resolver results are applied and when a bundle gets unresolved or removed.
+ *
+ * This allows the bundles affected by a refresh to be computed in time proportional to their number.
+ *
+ * The index also maps package names to the resolved revisions that export them and counts the wires
+ * to every capability, so that {@link org.osgi.service.packageadmin.PackageAdmin} queries do not need
+ * to scan the environment.
+ */
+final class WiringIndex {
+
+    private final Map<XBundle, Set<XBundle>> consumers = new HashMap<XBundle, Set<XBundle>>();
+    private final Map<XBundle, Set<XBundle>> providers = new HashMap<XBundle, Set<XBundle>>();
+    private final Map<XBundle, List<Wire>> requiredWires = new HashMap<XBundle, List<Wire>>();
+    private final Map<Capability, Integer> wiredCapabilities = new HashMap<Capability, Integer>();
+    private final Map<Resource, Integer> requiredBundleProviders = new HashMap<Resource, Integer>();
+    private final Map<String, Set<XBundleRevision>> exporters = new HashMap<String, Set<XBundleRevision>>();
+    private final Map<XBundleRevision, Set<String>> exportedPackages = new HashMap<XBundleRevision, Set<String>>();
+
+    /**
+     * Add the wires of a resource that got resolved.
+     */
+    synchronized void addWires(Resource requirer, Collection<? extends Wire> wires) {
+        XBundle consumer = getBundle(requirer);
+        if (consumer == null)
+            return;
+
+        for (Wire wire : wires) {
+            addWire(consumer, wire);
+            XBundle provider = getBundle(wire.getProvider());
+            if (provider != null && provider != consumer) {
+                addDependency(provider, consumer);
+                if (HostNamespace.HOST_NAMESPACE.equals(wire.getCapability().getNamespace())) {
+                    addDependency(consumer, provider);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the package capabilities of a revision that got resolved.
+     */
+    synchronized void addExporter(XBundleRevision brev, Wiring wiring) {
+        if (brev.isFragment())
+            return;
+
+        for (Capability cap : wiring.getResourceCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
+            String packageName = (String) cap.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE);
+            if (packageName != null) {
+                addToSet(exporters, packageName, brev);
+                addToSet(exportedPackages, brev, packageName);
+            }
+        }
+    }
+
+    /**
+     * Remove a revision that got removed from the environment.
+     */
+    synchronized void removeExporter(XBundleRevision brev) {
+        Set<String> packageNames = exportedPackages.remove(brev);
+        if (packageNames != null) {
+            for (String packageName : packageNames) {
+                removeFromSet(exporters, packageName, brev);
+            }
+        }
+    }
+
+    /**
+     * Remove the wires that are required by a bundle that got unresolved.
+     */
+    synchronized void removeRequirer(XBundle bundle) {
+        Set<XBundle> bundleProviders = providers.remove(bundle);
+        if (bundleProviders != null) {
+            for (XBundle provider : bundleProviders) {
+                removeFromSet(consumers, provider, bundle);
+            }
+        }
+        List<Wire> wires = requiredWires.remove(bundle);
+        if (wires != null) {
+            for (Wire wire : wires) {
+                if (BundleNamespace.BUNDLE_NAMESPACE.equals(wire.getCapability().getNamespace())) {
+                    decrement(requiredBundleProviders, wire.getProvider());
+                }
+                decrement(wiredCapabilities, wire.getCapability());
+            }
+        }
+    }
+
+    /**
+     * Remove all wires of a bundle that got removed from the framework.
+     */
+    synchronized void removeBundle(XBundle bundle) {
+        removeRequirer(bundle);
+        for (XBundleRevision brev : bundle.getAllBundleRevisions()) {
+            removeExporter(brev);
+        }
+        Set<XBundle> bundleConsumers = consumers.remove(bundle);
+        if (bundleConsumers != null) {
+            for (XBundle consumer : bundleConsumers) {
+                removeFromSet(providers, consumer, bundle);
+            }
+        }
+    }
+
+    /**
+     * Get the bundles that are directly wired to the given provider.
+     */
+    synchronized Set<XBundle> getConsumers(XBundle provider) {
+        Set<XBundle> result = consumers.get(provider);
+        return result != null ? Collections.unmodifiableSet(new LinkedHashSet<XBundle>(result)) : Collections.<XBundle> emptySet();
+    }
+
+    /**
+     * Get the given bundles together with all bundles that directly or transitively depend on them.
+     */
+    synchronized Set<XBundle> getDependencyClosure(Collection<? extends XBundle> bundles) {
+        Set<XBundle> result = new LinkedHashSet<XBundle>(bundles);
+        Deque<XBundle> pending = new ArrayDeque<XBundle>(bundles);
+        while (pending.isEmpty() == false) {
+            Set<XBundle> bundleConsumers = consumers.get(pending.poll());
+            if (bundleConsumers != null) {
+                for (XBundle consumer : bundleConsumers) {
+                    if (result.add(consumer)) {
+                        pending.add(consumer);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the revisions that export the given package.
+     *
+     * A revision that got unresolved, but was not removed from the environment, is still contained.
+     */
+    synchronized Set<XBundleRevision> getExporters(String packageName) {
+        Set<XBundleRevision> result = exporters.get(packageName);
+        return result != null ? new LinkedHashSet<XBundleRevision>(result) : Collections.<XBundleRevision> emptySet();
+    }
+
+    /**
+     * True if there is a wire to the given capability, or the bundle that provides it is required by another bundle.
+     */
+    synchronized boolean isWired(Capability cap) {
+        return wiredCapabilities.containsKey(cap) || requiredBundleProviders.containsKey(cap.getResource());
+    }
+
+    private void addWire(XBundle consumer, Wire wire) {
+        List<Wire> wires = requiredWires.get(consumer);
+        if (wires == null) {
+            wires = new ArrayList<Wire>();
+            requiredWires.put(consumer, wires);
+        }
+        wires.add(wire);
+        if (BundleNamespace.BUNDLE_NAMESPACE.equals(wire.getCapability().getNamespace())) {
+            increment(requiredBundleProviders, wire.getProvider());
+        }
+        increment(wiredCapabilities, wire.getCapability());
+    }
+
+    private static <K> void increment(Map<K, Integer> map, K key) {
+        Integer count = map.get(key);
+        map.put(key, count != null ? count + 1 : 1);
+    }
+
+    private static <K> void decrement(Map<K, Integer> map, K key) {
+        Integer count = map.get(key);
+        if (count != null && count > 1) {
+            map.put(key, count - 1);
+        } else {
+            map.remove(key);
+        }
+    }
+
+    private void addDependency(XBundle provider, XBundle consumer) {
+        addToSet(consumers, provider, consumer);
+        addToSet(providers, consumer, provider);
+    }
+
+    private static <K, V> void addToSet(Map<K, Set<V>> map, K key, V value) {
+        Set<V> set = map.get(key);
+        if (set == null) {
+            set = new LinkedHashSet<V>();
+            map.put(key, set);
+        }
+        set.add(value);
+    }
+
+    private static <K, V> void removeFromSet(Map<K, Set<V>> map, K key, V value) {
+        Set<V> set = map.get(key);
+        if (set != null && set.remove(value) && set.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private static XBundle getBundle(Resource res) {
+        return res instanceof XBundleRevision ? ((XBundleRevision) res).getBundle() : null;
+    }
+}
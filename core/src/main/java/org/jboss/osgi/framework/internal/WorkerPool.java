@@ -0,0 +1,417 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.BundleManager;
+import org.jboss.osgi.framework.spi.WorkerPoolMetrics;
+
+/**
+ * A bounded pool of worker threads that is shared by the framework executors.
+ *
+ * Each executor is a named lane with its own bounded queue. A lane runs its tasks one at a time
+ * in submission order, on whatever worker is free. A submitter to a full lane is blocked until
+ * there is room again, but for no longer than the submit timeout. The task is then queued anyway.
+ * A task is only rejected when its lane is shut down.
+ *
+ * A task on one lane may wait for a task on another lane. The pool therefore has at least one
+ * worker per lane, no matter how few threads are configured.
+ *
+ * The worker threads time out when the framework is idle.
+ */
+final class WorkerPool implements WorkerPoolMetrics, Executor {
+
+    static final int DEFAULT_MAX_THREADS = 4;
+    static final int DEFAULT_QUEUE_SIZE = 10000;
+    static final long KEEP_ALIVE_SECONDS = 10;
+    static final long SUBMIT_TIMEOUT_MILLIS = 10000;
+
+    // The number of tasks a lane runs before it yields its worker to another lane
+    static final int MAX_BATCH_SIZE = 64;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxThreads;
+    private final int queueSize;
+    private final long submitTimeout;
+    private final List<Lane> lanes = new CopyOnWriteArrayList<Lane>();
+
+    WorkerPool(int maxThreads, int queueSize, long submitTimeout, ThreadFactory threadFactory) {
+        this.maxThreads = Math.max(1, maxThreads);
+        this.queueSize = Math.max(1, queueSize);
+        this.submitTimeout = submitTimeout;
+        this.executor = new ThreadPoolExecutor(this.maxThreads, this.maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    // One worker per lane, so that a lane that waits for another lane cannot starve it
+    private synchronized void updatePoolSize() {
+        int poolSize = Math.max(maxThreads, lanes.size());
+        if (poolSize > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(poolSize);
+            executor.setCorePoolSize(poolSize);
+        } else if (poolSize < executor.getMaximumPoolSize()) {
+            executor.setCorePoolSize(poolSize);
+            executor.setMaximumPoolSize(poolSize);
+        }
+    }
+
+    /**
+     * Create the worker pool that is configured by the framework properties.
+     */
+    static WorkerPool create(BundleManager bundleManager) {
+        int maxThreads = getIntProperty(bundleManager, Constants.PROPERTY_WORKER_THREADS, DEFAULT_MAX_THREADS);
+        int queueSize = getIntProperty(bundleManager, Constants.PROPERTY_WORKER_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        Object threads = bundleManager.getProperty(Constants.PROPERTY_EXECUTOR_THREADS);
+        ThreadFactory threadFactory = null;
+        if (threads != null && ExecutorServiceFactoryImpl.THREADS_VIRTUAL.equals(threads.toString().trim())) {
+            threadFactory = getVirtualThreadFactory();
+            if (threadFactory == null) {
+                LOGGER.warnVirtualThreadsNotAvailable("Framework Worker");
+            }
+        }
+        if (threadFactory == null) {
+            threadFactory = new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable run) {
+                    Thread thread = new Thread(run);
+                    thread.setName("Framework Worker " + count.incrementAndGet());
+                    return thread;
+                }
+            };
+        }
+        return new WorkerPool(maxThreads, queueSize, SUBMIT_TIMEOUT_MILLIS, threadFactory);
+    }
+
+    private static int getIntProperty(BundleManager bundleManager, String key, int defaultValue) {
+        Object value = bundleManager.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException ex) {
+                LOGGER.debugf("Invalid %s: %s", key, value);
+            }
+        }
+        return defaultValue;
+    }
+
+    // Thread.ofVirtual().name(prefix, start).factory() on a JVM that has virtual threads
+    private static ThreadFactory getVirtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "Framework Worker ", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception ex) {
+            LOGGER.debugf(ex, "Cannot create virtual thread factory");
+            return null;
+        }
+    }
+
+    /**
+     * Create a new lane with the given name.
+     */
+    ExecutorService createLane(String laneName) {
+        Lane lane = new Lane(laneName);
+        lanes.add(lane);
+        updatePoolSize();
+        return lane;
+    }
+
+    /**
+     * Run the given task on a free worker, outside of any lane.
+     *
+     * @throws RejectedExecutionException if the pool is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Shutdown all lanes, wait for their queued tasks, and stop the worker threads.
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        // Terminated lanes remove themselves
+        List<Lane> snapshot = new ArrayList<Lane>(lanes);
+        for (Lane lane : snapshot) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane lane : snapshot) {
+            try {
+                lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Override
+    public int getMaxThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    @Override
+    public Set<String> getLaneNames() {
+        Set<String> result = new LinkedHashSet<String>();
+        for (Lane lane : lanes) {
+            result.add(lane.laneName);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics(String laneName) {
+        // A lane that is created again under the same name replaces the old one
+        Lane result = null;
+        for (Lane lane : lanes) {
+            if (lane.laneName.equals(laneName))
+                result = lane;
+        }
+        return result != null ? result.getMetrics() : null;
+    }
+
+    private static final class Task {
+
+        final Runnable command;
+        final long submitTime;
+        final boolean permit;
+
+        Task(Runnable command, long submitTime, boolean permit) {
+            this.command = command;
+            this.submitTime = submitTime;
+            this.permit = permit;
+        }
+    }
+
+    private final class Lane extends AbstractExecutorService implements Runnable {
+
+        private final String laneName;
+        private final Queue<Task> queue = new ConcurrentLinkedQueue<Task>();
+        private final Semaphore permits = new Semaphore(queueSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong submittedCount = new AtomicLong();
+        private final AtomicLong completedCount = new AtomicLong();
+        private final AtomicLong rejectedCount = new AtomicLong();
+        private final AtomicLong taskLatency = new AtomicLong();
+        private final AtomicLong maxTaskLatency = new AtomicLong();
+        private volatile Thread runner;
+        private volatile boolean shutdown;
+
+        Lane(String laneName) {
+            this.laneName = laneName;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command == null)
+                throw MESSAGES.illegalArgumentNull("command");
+            if (shutdown) {
+                rejectedCount.incrementAndGet();
+                throw MESSAGES.rejectedExecutionCannotAcceptTask(laneName);
+            }
+
+            // A task that is submitted from the lane itself must not wait for the lane.
+            // A task that did not get a permit in time is queued without one.
+            boolean permit = Thread.currentThread() != runner && acquirePermit();
+            queue.add(new Task(command, System.nanoTime(), permit));
+            submittedCount.incrementAndGet();
+            schedule();
+        }
+
+        private boolean acquirePermit() {
+            if (permits.tryAcquire())
+                return true;
+            try {
+                return permits.tryAcquire(submitTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);
+                    throw ex;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName(laneName);
+            runner = thread;
+            try {
+                for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                    Task task = queue.poll();
+                    if (task == null)
+                        break;
+                    if (task.permit)
+                        permits.release();
+
+                    long latency = System.nanoTime() - task.submitTime;
+                    taskLatency.addAndGet(latency);
+                    long maxLatency = maxTaskLatency.get();
+                    while (latency > maxLatency && maxTaskLatency.compareAndSet(maxLatency, latency) == false) {
+                        maxLatency = maxTaskLatency.get();
+                    }
+
+                    try {
+                        task.command.run();
+                    } catch (Throwable th) {
+                        LOGGER.errorWhileRunningTask(th, laneName);
+                    }
+                    completedCount.incrementAndGet();
+                }
+            } finally {
+                runner = null;
+                thread.setName(threadName);
+                scheduled.set(false);
+            }
+
+            // Tasks that were added after the last poll, or that exceed the batch, need another worker
+            if (queue.isEmpty() == false) {
+                try {
+                    schedule();
+                } catch (RejectedExecutionException ex) {
+                    LOGGER.errorWhileRunningTask(ex, laneName);
+                }
+            } else if (shutdown) {
+                terminated();
+            }
+        }
+
+        // Notify the waiters and release the worker that is reserved for this lane
+        private void terminated() {
+            if (isTerminated()) {
+                if (lanes.remove(this)) {
+                    updatePoolSize();
+                }
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        Map<String, Long> getMetrics() {
+            Map<String, Long> result = new HashMap<String, Long>();
+            result.put(QUEUE_DEPTH, (long) queue.size());
+            result.put(SUBMITTED_COUNT, submittedCount.get());
+            result.put(COMPLETED_COUNT, completedCount.get());
+            result.put(REJECTED_COUNT, rejectedCount.get());
+            result.put(TASK_LATENCY, taskLatency.get());
+            result.put(MAX_TASK_LATENCY, maxTaskLatency.get());
+            return result;
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            terminated();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> result = new ArrayList<Runnable>();
+            Task task;
+            while ((task = queue.poll()) != null) {
+                if (task.permit)
+                    permits.release();
+                result.add(task.command);
+            }
+            terminated();
+            return result;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && queue.isEmpty() && scheduled.get() == false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                while (isTerminated() == false) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0)
+                        return false;
+                    wait(remaining);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Lane[" + laneName + "]";
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.spi;
+
+/**
+ * Records the wall time of the steps that boot the framework.
+ *
+ * The steps are only recorded when the framework property
+ * {@link org.jboss.osgi.framework.Constants#PROPERTY_BOOT_PROFILER} is set to true.
+ * When the framework has started, the report is written to the storage area as
+ * {@link #PROFILE_FILE} and as a Chrome trace compatible timeline {@link #TRACE_FILE}.
+ *
+ * Callers check {@link #isEnabled()} before they take any time.
+ * Times are {@link System#nanoTime()} values.
+ */
+public interface BootProfiler {
+
+    /** The report file in the storage area */
+    String PROFILE_FILE = "boot-profile.json";
+    /** The timeline file in the storage area, which can be loaded into chrome://tracing */
+    String TRACE_FILE = "boot-trace.json";
+
+    /** The framework init and start phases */
+    String CATEGORY_PHASE = "phase";
+    /** The start of an integration service */
+    String CATEGORY_SERVICE = "service";
+    /** The install, resolve and activate steps of the bootstrap and persistent bundles */
+    String CATEGORY_BOOTSTRAP = "bootstrap";
+    /** The steps for the single bundles, which run within the {@link #CATEGORY_BOOTSTRAP} steps and are totalled apart from them */
+    String CATEGORY_BOOTSTRAP_BUNDLE = "bootstrap.bundle";
+    /** The creation and restore of a bundle {@link StorageState} */
+    String CATEGORY_STORAGE = "storage";
+    /** The parsing and validation of bundle metadata */
+    String CATEGORY_METADATA = "metadata";
+
+    /**
+     * True if boot profiling is enabled and the report was not written yet
+     */
+    boolean isEnabled();
+
+    /**
+     * Record a step that was run by the current thread
+     */
+    void addSpan(String category, String name, long startTime, long endTime);
+}
@@ -36,6 +36,7 @@ import org.jboss.msc.service.ServiceName;
 import org.jboss.msc.service.ServiceTarget;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
+import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.resolver.XBundle;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleException;
@@ -62,6 +63,9 @@ public class BootstrapBundlesActivate<T> extends BootstrapBundlesService<T> {
 
         // Collect the resolved bundles
         ServiceContainer serviceRegistry = startContext.getController().getServiceContainer();
+        BundleManager bundleManager = (BundleManager) serviceRegistry.getRequiredService(Services.BUNDLE_MANAGER).getValue();
+        BootProfiler profiler = getBootProfiler(bundleManager);
+        long startTime = profiler != null ? System.nanoTime() : 0;
         List<XBundle> bundles = new ArrayList<XBundle>();
         for (ServiceName serviceName : resolvedServices) {
             ServiceController<?> controller = serviceRegistry.getRequiredService(serviceName);
@@ -78,11 +82,19 @@ public class BootstrapBundlesActivate<T> extends BootstrapBundlesService<T> {
 
         // Start the resolved bundles
         for (XBundle bundle : bundles) {
+            long bundleTime = profiler != null ? System.nanoTime() : 0;
             try {
                 bundle.start(Bundle.START_ACTIVATION_POLICY);
             } catch (BundleException ex) {
                 LOGGER.errorCannotStartBundle(ex, bundle);
             }
+            if (profiler != null) {
+                profiler.addSpan(BootProfiler.CATEGORY_BOOTSTRAP_BUNDLE, "start " + bundle.getLocation(), bundleTime, System.nanoTime());
+            }
+        }
+
+        if (profiler != null) {
+            profiler.addSpan(BootProfiler.CATEGORY_BOOTSTRAP, getServiceName().getCanonicalName(), startTime, System.nanoTime());
         }
 
         // We are done
@@ -68,6 +68,9 @@ public class BootstrapBundlesInstall<T> extends BootstrapBundlesService<T> {
 
         LOGGER.debugf("Install %s deployments %s on behalf of %s", getBundleType(), deployments, getServiceName().getCanonicalName());
 
+        final BootProfiler profiler = getBootProfiler(getBundleManager());
+        final long startTime = profiler != null ? System.nanoTime() : 0;
+
         // Track the Bundle INSTALLED services
         ServiceTracker<XBundle> installTracker = new ServiceTracker<XBundle>(getServiceName().getCanonicalName()) {
 
@@ -93,6 +96,9 @@ public class BootstrapBundlesInstall<T> extends BootstrapBundlesService<T> {
 
             @Override
             protected void complete() {
+                if (profiler != null) {
+                    profiler.addSpan(BootProfiler.CATEGORY_BOOTSTRAP, getServiceName().getCanonicalName(), startTime, System.nanoTime());
+                }
                 installResolveService(serviceTarget, installedServices);
             }
         };
@@ -100,11 +106,15 @@ public class BootstrapBundlesInstall<T> extends BootstrapBundlesService<T> {
         // Install the auto install bundles
         BundleManager bundleManager = getBundleManager();
         for (Deployment dep : deployments) {
+            long installTime = profiler != null ? System.nanoTime() : 0;
             try {
                 bundleManager.installBundle(dep, serviceTarget, installTracker);
             } catch (BundleException ex) {
                 LOGGER.errorStateCannotInstallInitialBundle(ex, dep.getLocation());
             }
+            if (profiler != null) {
+                profiler.addSpan(BootProfiler.CATEGORY_BOOTSTRAP_BUNDLE, "install " + dep.getLocation(), installTime, System.nanoTime());
+            }
         }
 
         // Check the tracker for completeness
@@ -23,6 +23,7 @@ package org.jboss.osgi.framework.spi;
 
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -52,11 +53,14 @@ import org.osgi.service.resolver.ResolutionException;
 
 public class BootstrapBundlesResolve<T> extends BootstrapBundlesService<T> {
 
+    static final String RESOLUTION_SNAPSHOT_FILE = "resolution-snapshot.properties";
+
     private final InjectedValue<BundleManager> injectedBundleManager = new InjectedValue<BundleManager>();
     private final InjectedValue<PackageAdmin> injectedPackageAdmin = new InjectedValue<PackageAdmin>();
     private final InjectedValue<XEnvironment> injectedEnvironment = new InjectedValue<XEnvironment>();
     private final InjectedValue<XBundle> injectedSystemBundle = new InjectedValue<XBundle>();
     private final InjectedValue<XResolver> injectedResolver = new InjectedValue<XResolver>();
+    private final InjectedValue<BundleStorage> injectedBundleStorage = new InjectedValue<BundleStorage>();
     private final Set<ServiceName> installedServices;
 
     public BootstrapBundlesResolve(ServiceName baseName, Set<ServiceName> installedServices) {
@@ -71,6 +75,7 @@ public class BootstrapBundlesResolve<T> extends BootstrapBundlesService<T> {
         builder.addDependency(Services.PACKAGE_ADMIN, PackageAdmin.class, injectedPackageAdmin);
         builder.addDependency(Services.ENVIRONMENT, XEnvironment.class, injectedEnvironment);
         builder.addDependency(Services.RESOLVER, XResolver.class, injectedResolver);
+        builder.addDependency(IntegrationServices.BUNDLE_STORAGE, BundleStorage.class, injectedBundleStorage);
         builder.addDependencies(getPreviousService());
     }
 
@@ -83,6 +88,8 @@ public class BootstrapBundlesResolve<T> extends BootstrapBundlesService<T> {
         super.start(context);
 
         LOGGER.debugf("Resolve %s bundles on behalf of %s", getBundleType(), getServiceName().getCanonicalName());
+        BootProfiler profiler = getBootProfiler(getBundleManager());
+        long startTime = profiler != null ? System.nanoTime() : 0;
 
         ServiceContainer serviceRegistry = context.getController().getServiceContainer();
         int targetLevel = getBeginningStartLevel();
@@ -122,9 +129,25 @@ public class BootstrapBundlesResolve<T> extends BootstrapBundlesService<T> {
 
             // Leniently resolve the persistent bundles
             if (IntegrationServices.PERSISTENT_BUNDLES.isParentOf(getServiceName())) {
-                Bundle[] bundles = resolvableServices.values().toArray(new Bundle[resolvableServices.size()]);
-                PackageAdmin packageAdmin = injectedPackageAdmin.getValue();
-                packageAdmin.resolveBundles(bundles);
+                XResolver resolver = injectedResolver.getValue();
+                File snapshotFile = getResolutionSnapshotFile();
+                if (snapshotFile != null && resolver instanceof ResolverSupport) {
+                    XEnvironment env = injectedEnvironment.getValue();
+                    List<XBundleRevision> mandatory = new ArrayList<XBundleRevision>();
+                    for (XBundle bundle : resolvableServices.values()) {
+                        mandatory.add(bundle.getBundleRevision());
+                    }
+                    XResolveContext ctx = resolver.createResolveContext(env, mandatory, null);
+                    try {
+                        ((ResolverSupport) resolver).resolveAndApply(ctx, snapshotFile);
+                    } catch (ResolutionException ex) {
+                        LOGGER.debugf(ex, "Cannot resolve: " + mandatory);
+                    }
+                } else {
+                    Bundle[] bundles = resolvableServices.values().toArray(new Bundle[resolvableServices.size()]);
+                    PackageAdmin packageAdmin = injectedPackageAdmin.getValue();
+                    packageAdmin.resolveBundles(bundles);
+                }
             }
 
             // Remove the unresolved service from the tracker
@@ -135,6 +158,21 @@ public class BootstrapBundlesResolve<T> extends BootstrapBundlesService<T> {
             }
         }
 
+        if (profiler != null) {
+            // The bundles are resolved together, so there is one span that names all of them
+            long endTime = System.nanoTime();
+            if (resolvableServices.isEmpty() == false) {
+                StringBuilder name = new StringBuilder("resolve");
+                String separator = " ";
+                for (XBundle bundle : resolvableServices.values()) {
+                    name.append(separator).append(bundle.getLocation());
+                    separator = ", ";
+                }
+                profiler.addSpan(BootProfiler.CATEGORY_BOOTSTRAP_BUNDLE, name.toString(), startTime, endTime);
+            }
+            profiler.addSpan(BootProfiler.CATEGORY_BOOTSTRAP, getServiceName().getCanonicalName(), startTime, endTime);
+        }
+
         installActivateService(context.getChildTarget(), resolvableServices.keySet());
     }
 
@@ -143,6 +181,15 @@ public class BootstrapBundlesResolve<T> extends BootstrapBundlesService<T> {
         return (ServiceController<XBundle>) serviceRegistry.getRequiredService(serviceName);
     }
 
+    private File getResolutionSnapshotFile() {
+        Object value = getBundleManager().getProperty(Constants.PROPERTY_RESOLVER_SNAPSHOT);
+        if (value == null || Boolean.parseBoolean(value.toString()) == false)
+            return null;
+
+        File storageArea = injectedBundleStorage.getValue().getStorageArea();
+        return new File(storageArea, RESOLUTION_SNAPSHOT_FILE);
+    }
+
     private int getBeginningStartLevel() {
         String levelSpec = (String) getBundleManager().getProperty(Constants.FRAMEWORK_BEGINNING_STARTLEVEL);
         if (levelSpec != null) {
@@ -68,6 +68,14 @@ public abstract class BootstrapBundlesService<T> extends AbstractIntegrationServ
         return listener;
     }
 
+    /**
+     * Get the boot profiler, which is null when boot profiling is disabled
+     */
+    protected BootProfiler getBootProfiler(BundleManager bundleManager) {
+        BootProfiler profiler = bundleManager.getSystemBundle().adapt(BootProfiler.class);
+        return profiler != null && profiler.isEnabled() ? profiler : null;
+    }
+
     @Override
     protected T createServiceValue(StartContext startContext) throws StartException {
         return null;
@@ -22,6 +22,7 @@
 package org.jboss.osgi.framework.spi;
 
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -132,6 +133,19 @@ public interface BundleManager extends Service<BundleManager> {
     ServiceName installBundle(Deployment deployment, ServiceTarget serviceTarget, ServiceListener<XBundle> listener)
             throws BundleException;
 
+    /**
+     * Install the bundles from the given deployments and optionally resolve them in one resolver pass.
+     *
+     * Bundles that cannot be resolved remain INSTALLED. If one of the deployments cannot be installed,
+     * the bundles that were installed from the other deployments are not resolved.
+     *
+     * @param deployments The bundle deployments
+     * @param resolve True if the installed bundles should be resolved
+     *
+     * @return The installed bundles in deployment order
+     */
+    List<XBundle> installBundles(List<Deployment> deployments, boolean resolve) throws BundleException;
+
     /**
      * Start the given bundle
      */
@@ -42,6 +42,12 @@ public interface BundleStorage {
 
     void deleteStorageState(StorageState storageState);
 
+    /**
+     * Release the content of a storage state that was superseded by a later revision of the same bundle.
+     * Unlike {@link #deleteStorageState(StorageState)}, the storage dir of the bundle is left alone.
+     */
+    void releaseStorageState(StorageState storageState);
+
     Set<StorageState> getStorageStates();
 
     StorageState getStorageState(String location);
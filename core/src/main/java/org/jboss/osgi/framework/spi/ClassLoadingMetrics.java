@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.spi;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per bundle class loading metrics.
+ *
+ * The metrics are only collected when the framework property
+ * {@link org.jboss.osgi.framework.Constants#PROPERTY_CLASSLOADING_METRICS} is set to true.
+ * The service is registered with the system bundle context either way.
+ *
+ * Times are reported in nanoseconds.
+ */
+public interface ClassLoadingMetrics {
+
+    /** The number of classes defined by the bundle class loader */
+    String DEFINE_COUNT = "defineCount";
+    /** The time between pre and post define, which includes the loading of super classes */
+    String DEFINE_TIME = "defineTime";
+    /** The number of class lookups in the bundle content */
+    String CLASS_LOOKUP_COUNT = "classLookupCount";
+    /** The time spent to read class bytes from the bundle content */
+    String CLASS_LOOKUP_TIME = "classLookupTime";
+    /** The number of resource lookups in the bundle content */
+    String RESOURCE_LOOKUP_COUNT = "resourceLookupCount";
+    /** The time spent to find resources in the bundle content */
+    String RESOURCE_LOOKUP_TIME = "resourceLookupTime";
+    /** The number of fallback attempts, which includes dynamic imports */
+    String FALLBACK_COUNT = "fallbackCount";
+    /** The time spent in the fallback loader */
+    String FALLBACK_TIME = "fallbackTime";
+    /** The number of class, resource and fallback lookups that did not find anything */
+    String MISS_COUNT = "missCount";
+
+    /**
+     * True if metrics are collected
+     */
+    boolean isEnabled();
+
+    /**
+     * Get the ids of the bundles that have metrics
+     */
+    Set<Long> getBundleIds();
+
+    /**
+     * Get the metrics for the given bundle
+     *
+     * @return The metric values by name or null if there are no metrics for the given bundle
+     */
+    Map<String, Long> getMetrics(long bundleId);
+
+    /**
+     * Discard all collected metrics
+     */
+    void reset();
+}
@@ -25,7 +25,9 @@ import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
+import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.internal.DeploymentProviderImpl;
 
 /**
@@ -36,17 +38,20 @@ import org.jboss.osgi.framework.internal.DeploymentProviderImpl;
  */
 public class DeploymentProviderPlugin extends AbstractIntegrationService<DeploymentProvider> {
 
+    private final InjectedValue<BundleManager> injectedBundleManager = new InjectedValue<BundleManager>();
+
     public DeploymentProviderPlugin() {
         super(IntegrationServices.DEPLOYMENT_PROVIDER_PLUGIN);
     }
 
     @Override
     protected void addServiceDependencies(ServiceBuilder<DeploymentProvider> builder) {
+        builder.addDependency(Services.BUNDLE_MANAGER, BundleManager.class, injectedBundleManager);
         builder.setInitialMode(Mode.ON_DEMAND);
     }
 
     @Override
     protected DeploymentProvider createServiceValue(StartContext startContext) throws StartException {
-        return new DeploymentProviderImpl();
+        return new DeploymentProviderImpl(injectedBundleManager.getValue());
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.spi;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the executors that the framework uses for asynchronous work,
+ * such as event delivery, start level changes and package refreshes.
+ *
+ * An embedder can provide its own factory with the {@link org.jboss.osgi.framework.Constants#PROPERTY_EXECUTOR_FACTORY}
+ * framework property.
+ *
+ * The framework owns every executor that it gets from the factory and shuts it down when the framework stops.
+ * A factory that runs the framework work on a shared pool must therefore not return the shared pool itself.
+ * It returns a serial view of the pool instead, which forwards the tasks to the pool and whose shutdown
+ * only stops the view from accepting tasks, leaving the shared pool running.
+ */
+public interface ExecutorServiceFactory {
+
+    /**
+     * Create an executor that runs the submitted tasks one at a time in submission order.
+     *
+     * The returned executor is owned by the framework, which shuts it down when the framework stops.
+     * A new executor must be returned on every call.
+     *
+     * @param threadName The name for the work that is done by the executor
+     */
+    ExecutorService createExecutorService(String threadName);
+}
@@ -23,8 +23,6 @@ package org.jboss.osgi.framework.spi;
  */
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceName;
@@ -33,10 +31,13 @@ import org.jboss.msc.service.StartException;
 import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.framework.Services;
+import org.jboss.osgi.framework.internal.ExecutorServiceFactoryImpl;
 
 /**
  * Plugin that provides an ExecutorService.
  *
+ * The executor is created by the {@link ExecutorServiceFactory} that is configured for the framework.
+ *
  * @author thomas.diesler@jboss.com
  * @since 10-Mar-2011
  */
@@ -78,15 +79,8 @@ public abstract class ExecutorServicePlugin<T> extends AbstractIntegrationServic
         return executorService;
     }
 
-    private ExecutorService createExecutorService(final String threadName) {
-        ExecutorService service = Executors.newSingleThreadExecutor(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable run) {
-                Thread thread = new Thread(run);
-                thread.setName(threadName);
-                return thread;
-            }
-        });
-        return service;
+    protected ExecutorService createExecutorService(String threadName) {
+        ExecutorServiceFactory factory = ExecutorServiceFactoryImpl.getExecutorServiceFactory(getBundleManager());
+        return factory.createExecutorService(threadName);
     }
-}
\ No newline at end of file
+}
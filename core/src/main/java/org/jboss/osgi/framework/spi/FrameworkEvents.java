@@ -22,6 +22,7 @@
 package org.jboss.osgi.framework.spi;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.jboss.osgi.resolver.XBundle;
 import org.osgi.framework.Bundle;
@@ -73,6 +74,13 @@ public interface FrameworkEvents {
 
     void fireServiceEvent(XBundle bundle, int type, ServiceState serviceState);
 
+    /**
+     * Fire an event of the given type for each of the given services, in the given order.
+     *
+     * The service listeners and event hooks are looked up once for all events.
+     */
+    void fireServiceEvents(XBundle bundle, int type, List<ServiceState> serviceStates);
+
     Collection<ListenerInfo> getServiceListenerInfos(XBundle bundle);
 
 }
\ No newline at end of file
@@ -45,6 +45,13 @@ public interface FrameworkModuleLoader {
 
     ModuleIdentifier getModuleIdentifier(XBundleRevision brev);
 
+    /**
+     * Add the integration dependencies to the module spec of the given context.
+     *
+     * The framework builds the module specs of a resolve result in parallel. This method may therefore be called
+     * concurrently for different bundle revisions, on framework worker threads with an unspecified thread context class loader.
+     * Implementations must be thread safe and must not rely on the calling thread.
+     */
     void addIntegrationDependencies(ModuleSpecBuilderContext context);
 
     void addModuleSpec(XBundleRevision brev, ModuleSpec moduleSpec);
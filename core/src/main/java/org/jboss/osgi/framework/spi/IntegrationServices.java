@@ -68,6 +68,8 @@ public interface IntegrationServices {
 	ServiceName BOOTSTRAP_BUNDLES_COMPLETE = BootstrapPhase.serviceName(BOOTSTRAP_BUNDLES, BootstrapPhase.COMPLETE);
 	/** The service name for the {@link BundleLifecycle} */
 	ServiceName BUNDLE_LIFECYCLE_PLUGIN = Services.JBOSGI_BASE_NAME.append("BundleLifecycle");
+	/** The {@link ClassLoadingMetrics} service name */
+	ServiceName CLASSLOADING_METRICS_PLUGIN = Services.JBOSGI_BASE_NAME.append("ClassLoadingMetrics");
 	/** The {@link BundleStorage} plugin service name */
 	ServiceName BUNDLE_STORAGE = Services.JBOSGI_BASE_NAME.append("BundleStorage");
     /** The {@link DeploymentProvider} service name */
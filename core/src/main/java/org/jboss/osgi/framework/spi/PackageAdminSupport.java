@@ -21,6 +21,11 @@
  */
 package org.jboss.osgi.framework.spi;
 
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.osgi.framework.Bundle;
 import org.osgi.service.packageadmin.PackageAdmin;
 
 /**
@@ -31,5 +36,36 @@ import org.osgi.service.packageadmin.PackageAdmin;
  */
 public interface PackageAdminSupport extends PackageAdmin {
 
+    /** The time in ms that it took to stop the affected bundles */
+    String REFRESH_TIME_STOP = "stop";
+    /** The time in ms that it took to remove uninstalled bundles and unresolve the affected bundles */
+    String REFRESH_TIME_REFRESH = "refresh";
+    /** The time in ms that it took to start the stopped bundles again */
+    String REFRESH_TIME_START = "start";
+    /** The time in ms that the refresh took in total */
+    String REFRESH_TIME_TOTAL = "total";
+
     void enableImmediateExecution(boolean enable);
+
+    /**
+     * Get the bundles that would be affected by a refresh of the given bundles, without refreshing them.
+     *
+     * @param bundles The bundles to refresh or null for all bundles that were updated or uninstalled since the last refresh
+     * @return The given bundles and all bundles that directly or transitively depend on them
+     */
+    Set<XBundle> getRefreshImpact(Bundle[] bundles);
+
+    /**
+     * Get the bundles that would be affected when the given bundle gets uninstalled and the packages are refreshed.
+     *
+     * @return The given bundle and all bundles that directly or transitively depend on it
+     */
+    Set<XBundle> getUninstallImpact(Bundle bundle);
+
+    /**
+     * Get the phase timings of the last refresh that completed.
+     *
+     * @return The timings by phase or an empty map if there was no refresh yet
+     */
+    Map<String, Long> getLastRefreshTimings();
 }
@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.spi;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.WeakHashMap;
+
+import org.jboss.modules.filter.PathFilter;
+
+/**
+ * An immutable, sorted set of resource paths.
+ *
+ * The paths are kept in a single sorted array and membership is tested by binary search.
+ * Path strings are interned in a framework wide pool, so that a path that is contained in
+ * many bundles (i.e. META-INF or a commonly split package) is held only once.
+ *
+ * A path table is also a {@link PathFilter} that accepts the contained paths. Use it instead of
+ * {@link org.jboss.modules.filter.PathFilters#in(java.util.Set)}, which copies the paths into a new hash set.
+ */
+public final class PathTable extends AbstractSet<String> implements PathFilter {
+
+    private static final Map<String, WeakReference<String>> pathPool = new WeakHashMap<String, WeakReference<String>>();
+    private static final PathTable EMPTY = new PathTable(new String[0]);
+
+    private final String[] paths;
+    private int hashCode;
+
+    private PathTable(String[] paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Get an empty path table
+     */
+    public static PathTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create a path table from the given paths. Duplicate paths are removed.
+     */
+    public static PathTable create(Collection<String> paths) {
+        if (paths == null || paths.isEmpty())
+            return EMPTY;
+        if (paths instanceof PathTable)
+            return (PathTable) paths;
+
+        String[] sorted = paths.toArray(new String[paths.size()]);
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (count == 0 || sorted[i].equals(sorted[count - 1]) == false) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        String[] result = new String[count];
+        synchronized (pathPool) {
+            for (int i = 0; i < count; i++) {
+                result[i] = internPath(sorted[i]);
+            }
+        }
+        return new PathTable(result);
+    }
+
+    /**
+     * Create a path table that contains the paths of all the given collections.
+     */
+    public static PathTable union(Collection<? extends Collection<String>> pathSets) {
+        int size = 0;
+        for (Collection<String> pathSet : pathSets) {
+            size += pathSet.size();
+        }
+        String[] all = new String[size];
+        int index = 0;
+        for (Collection<String> pathSet : pathSets) {
+            for (String path : pathSet) {
+                all[index++] = path;
+            }
+        }
+        return create(Arrays.asList(all));
+    }
+
+    private static String internPath(String path) {
+        WeakReference<String> ref = pathPool.get(path);
+        String pooled = ref != null ? ref.get() : null;
+        if (pooled == null) {
+            pathPool.put(path, new WeakReference<String>(path));
+            pooled = path;
+        }
+        return pooled;
+    }
+
+    @Override
+    public boolean accept(String path) {
+        return path != null && Arrays.binarySearch(paths, path) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        return obj instanceof String && Arrays.binarySearch(paths, (String) obj) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return paths.length;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < paths.length;
+            }
+
+            @Override
+            public String next() {
+                if (index >= paths.length)
+                    throw new NoSuchElementException();
+                return paths[index++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (obj instanceof PathTable)
+            return Arrays.equals(paths, ((PathTable) obj).paths);
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        // Immutable, the hash code is computed once
+        int result = hashCode;
+        if (result == 0) {
+            result = super.hashCode();
+            hashCode = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PathTable" + Arrays.toString(paths);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.spi;
+
+import org.osgi.framework.ServiceFactory;
+
+/**
+ * A {@link ServiceFactory} for prototype scoped services.
+ *
+ * The framework calls the factory for every {@link ServiceObjects#getService()}, so that each call returns
+ * a new service object. Through {@link org.osgi.framework.BundleContext#getService(org.osgi.framework.ServiceReference)}
+ * the service behaves like a bundle scoped {@link ServiceFactory}.
+ *
+ * This mirrors the OSGi R6 <code>PrototypeServiceFactory</code>, which is not part of the OSGi API used by this framework.
+ */
+public interface PrototypeServiceFactory extends ServiceFactory {
+}
@@ -0,0 +1,46 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.spi;
+
+import java.io.File;
+import java.util.Map;
+
+import org.jboss.osgi.resolver.XResolveContext;
+import org.jboss.osgi.resolver.XResolver;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolutionException;
+
+/**
+ * An extension of the {@link XResolver}.
+ */
+public interface ResolverSupport extends XResolver {
+
+    /**
+     * Resolve the given context and apply the results.
+     *
+     * If the snapshot file contains the wiring for the same set of installed revisions and the same
+     * resolve context, the stored wires are applied without calling the resolver. Otherwise the
+     * resolver results are applied and stored in the snapshot file.
+     */
+    Map<Resource, Wiring> resolveAndApply(XResolveContext context, File snapshotFile) throws ResolutionException;
+}
@@ -1,5 +1,7 @@
 package org.jboss.osgi.framework.spi;
 
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
+
 import java.util.Dictionary;
 import java.util.List;
 
@@ -25,6 +27,17 @@ public interface ServiceManager {
     @SuppressWarnings("rawtypes")
     ServiceState registerService(XBundle bundle, String[] classNames, Object serviceValue, Dictionary properties);
 
+    /**
+     * Registers the given services in one batch.
+     *
+     * All services are added to the registry before the first {@link org.osgi.framework.ServiceEvent#REGISTERED} event
+     * is delivered. The events are then delivered in the given order, with a single snapshot of the service listeners.
+     * If one of the services is invalid, none of them is registered.
+     *
+     * @return The registered services in the given order
+     */
+    List<ServiceState> registerServices(XBundle bundle, List<ServiceSpec> serviceSpecs);
+
     /**
      * Returns a <code>ServiceReference</code> object for a service that implements and was registered under the specified
      * class.
@@ -70,7 +83,49 @@ public interface ServiceManager {
      */
     boolean ungetService(XBundle bundle, ServiceState serviceState);
 
+    /**
+     * Returns the {@link ServiceObjects} for the service referenced by the specified <code>ServiceReference</code> object.
+     *
+     * Every service object that is obtained from it counts as a use of the service by the given bundle.
+     *
+     * @return The service objects or <code>null</code> if the service has been unregistered
+     */
+    ServiceObjects getServiceObjects(XBundle bundle, ServiceReference sref);
+
     void fireFrameworkEvent(XBundle bundle, int type, ServiceException ex);
 
     void fireServiceEvent(XBundle bundle, int type, ServiceState serviceState);
+
+    /**
+     * The class names, the service object or <code>ServiceFactory</code> and the properties of a service to register.
+     */
+    @SuppressWarnings("rawtypes")
+    final class ServiceSpec {
+
+        private final String[] classNames;
+        private final Object serviceValue;
+        private final Dictionary properties;
+
+        public ServiceSpec(String[] classNames, Object serviceValue, Dictionary properties) {
+            if (classNames == null || classNames.length == 0)
+                throw MESSAGES.illegalArgumentNull("classNames");
+            if (serviceValue == null)
+                throw MESSAGES.illegalArgumentNull("serviceValue");
+            this.classNames = classNames;
+            this.serviceValue = serviceValue;
+            this.properties = properties;
+        }
+
+        public String[] getClassNames() {
+            return classNames;
+        }
+
+        public Object getServiceValue() {
+            return serviceValue;
+        }
+
+        public Dictionary getProperties() {
+            return properties;
+        }
+    }
 }
\ No newline at end of file
@@ -55,7 +55,8 @@ public class ServiceManagerPlugin extends AbstractIntegrationService<ServiceMana
 
     @Override
     protected ServiceManager createServiceValue(StartContext startContext) throws StartException {
+        BundleManager bundleManager = injectedBundleManager.getValue();
         FrameworkEvents events = injectedFrameworkEvents.getValue();
-        return new ServiceManagerImpl(events);
+        return new ServiceManagerImpl(bundleManager, events);
     }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.spi;
+
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Allows a bundle to obtain multiple service objects for a service.
+ *
+ * For a service that is registered with a {@link PrototypeServiceFactory} every call to {@link #getService()}
+ * returns a new service object. For other services the calls behave like the corresponding calls on the
+ * bundle context.
+ *
+ * This mirrors the OSGi R6 <code>ServiceObjects</code>, which is not part of the OSGi API used by this framework.
+ *
+ * @see ServiceManager#getServiceObjects(org.jboss.osgi.resolver.XBundle, ServiceReference)
+ */
+public interface ServiceObjects {
+
+    /**
+     * Returns a service object for the associated service.
+     *
+     * @return A service object or <code>null</code> if the service is unregistered or the factory failed
+     */
+    Object getService();
+
+    /**
+     * Releases a service object for the associated service.
+     *
+     * @throws IllegalArgumentException If the service object was not obtained from this service objects
+     */
+    void ungetService(Object service);
+
+    /**
+     * Returns the reference to the associated service.
+     */
+    ServiceReference getServiceReference();
+}
@@ -43,6 +43,30 @@ public interface ServiceState extends ServiceRegistration, ServiceReference {
 
     void ungetScopedValue(XBundle bundle);
 
+    /**
+     * True if the service was registered with a {@link PrototypeServiceFactory}.
+     */
+    boolean isPrototype();
+
+    /**
+     * Get a new service object of a prototype service for the given bundle.
+     *
+     * @return The service object or null if the factory failed
+     */
+    Object getPrototypeValue(XBundle bundle);
+
+    /**
+     * Release a service object of a prototype service that was obtained by the given bundle.
+     *
+     * @return false if the service object was not obtained by the given bundle
+     */
+    boolean ungetPrototypeValue(XBundle bundle, Object value);
+
+    /**
+     * Release all service objects of a prototype service that the given bundle holds.
+     */
+    void ungetPrototypeValues(XBundle bundle);
+
     ServiceRegistration getRegistration();
 
     List<String> getClassNames();
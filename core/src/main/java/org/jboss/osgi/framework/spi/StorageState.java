@@ -47,6 +47,7 @@ import org.jboss.osgi.vfs.VirtualFile;
 public class StorageState {
 
     public static final String PROPERTY_BUNDLE_FILE = "BundleFile";
+    public static final String PROPERTY_BUNDLE_DIGEST = "BundleDigest";
     public static final String PROPERTY_BUNDLE_ID = "BundleId";
     public static final String PROPERTY_BUNDLE_LOCATION = "Location";
     public static final String PROPERTY_BUNDLE_REV = "BundleRev";
@@ -76,9 +77,8 @@ public class StorageState {
     public static StorageState createStorageState(File storageDir) throws IOException {
         VirtualFile rootFile = null;
         Properties props = loadProperties(storageDir);
-        String vfsLocation = props.getProperty(PROPERTY_BUNDLE_FILE);
-        if (vfsLocation != null) {
-            File revFile = new File(storageDir + "/" + vfsLocation);
+        File revFile = getBundleFile(storageDir, props);
+        if (revFile != null) {
             rootFile = AbstractVFS.toVirtualFile(revFile.toURI());
         }
         StorageState storageState = new StorageState(storageDir, rootFile, props);
@@ -102,11 +102,37 @@ public class StorageState {
                 output.close();
             }
             props.put(StorageState.PROPERTY_BUNDLE_FILE, revFile.getName());
+            props.remove(StorageState.PROPERTY_BUNDLE_DIGEST);
         }
         storageState.writeProperties();
         return storageState;
     }
 
+    /**
+     * Create a storage state for content that has already been persisted.
+     *
+     * @param bundleFile The path to the persisted content, absolute or relative to the storage dir
+     * @param digest The digest of the persisted content
+     */
+    public static StorageState createStorageState(File storageDir, VirtualFile rootFile, Properties props, String bundleFile, String digest) throws IOException {
+        props.put(StorageState.PROPERTY_BUNDLE_FILE, bundleFile);
+        props.put(StorageState.PROPERTY_BUNDLE_DIGEST, digest);
+        StorageState storageState = new StorageState(storageDir, rootFile, props);
+        storageState.writeProperties();
+        return storageState;
+    }
+
+    private static File getBundleFile(File storageDir, Properties props) throws IOException {
+        String vfsLocation = props.getProperty(PROPERTY_BUNDLE_FILE);
+        if (vfsLocation == null)
+            return null;
+
+        File revFile = new File(vfsLocation);
+        if (revFile.isAbsolute() == false)
+            revFile = new File(storageDir + "/" + vfsLocation).getCanonicalFile();
+        return revFile;
+    }
+
     public static Properties loadProperties(File storageDir) throws FileNotFoundException, IOException {
         Properties props = new Properties();
         File propsFile = new File(storageDir + "/" + BUNDLE_PERSISTENT_PROPERTIES);
@@ -152,6 +178,13 @@ public class StorageState {
         return location;
     }
 
+    /**
+     * Get the persisted bundle content, or null if there is none.
+     */
+    public File getBundleFile() throws IOException {
+        return getBundleFile(storageDir, props);
+    }
+
     public VirtualFile getRootFile() {
         return rootFile;
     }
@@ -164,6 +197,13 @@ public class StorageState {
         return revision;
     }
 
+    /**
+     * Get the digest of the persisted content, or null if the content is not content-addressed.
+     */
+    public String getContentDigest() {
+        return props.getProperty(PROPERTY_BUNDLE_DIGEST);
+    }
+
     public long getLastModified() {
         String value = props.getProperty(PROPERTY_LAST_MODIFIED);
         return Long.parseLong(value);
@@ -31,7 +31,6 @@ import java.net.URL;
 import java.security.CodeSigner;
 import java.security.CodeSource;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -55,7 +54,7 @@ import org.jboss.osgi.vfs.VirtualFile;
 public final class VirtualFileResourceLoader implements ResourceLoader {
 
     private final VirtualFile virtualFile;
-    private final Set<String> localPaths;
+    private final PathTable localPaths;
 
     public VirtualFileResourceLoader(VirtualFile virtualFile) {
         if (virtualFile == null)
@@ -140,7 +139,7 @@ public final class VirtualFileResourceLoader implements ResourceLoader {
         return localPaths;
     }
 
-    private Set<String> getLocalPaths() {
+    private PathTable getLocalPaths() {
         Set<String> result = new HashSet<String>();
         try {
             List<VirtualFile> descendants = virtualFile.getChildrenRecursively();
@@ -161,7 +160,7 @@ public final class VirtualFileResourceLoader implements ResourceLoader {
         if (result.size() == 0)
             throw MESSAGES.illegalArgumentCannotObtainPaths(null,  virtualFile);
 
-        return Collections.unmodifiableSet(result);
+        return PathTable.create(result);
     }
 
     private void safeClose(final Closeable closeable) {
@@ -0,0 +1,71 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.spi;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metrics of the shared framework worker pool.
+ *
+ * The framework executors are named lanes on one bounded pool of worker threads.
+ * Each lane runs its tasks one at a time in submission order.
+ *
+ * Times are reported in nanoseconds.
+ */
+public interface WorkerPoolMetrics {
+
+    /** The number of tasks that wait in the lane */
+    String QUEUE_DEPTH = "queueDepth";
+    /** The number of tasks that were accepted by the lane */
+    String SUBMITTED_COUNT = "submittedCount";
+    /** The number of tasks that were run by the lane */
+    String COMPLETED_COUNT = "completedCount";
+    /** The number of tasks that were rejected because the lane was shut down */
+    String REJECTED_COUNT = "rejectedCount";
+    /** The total time that tasks waited in the lane before they were run */
+    String TASK_LATENCY = "taskLatency";
+    /** The longest time that a task waited in the lane before it was run */
+    String MAX_TASK_LATENCY = "maxTaskLatency";
+
+    /**
+     * Get the maximum number of worker threads, which is at least one per lane
+     */
+    int getMaxThreads();
+
+    /**
+     * Get the current number of worker threads, which is zero for an idle framework
+     */
+    int getPoolSize();
+
+    /**
+     * Get the names of the lanes
+     */
+    Set<String> getLaneNames();
+
+    /**
+     * Get the metrics for the given lane
+     *
+     * @return The metric values by name or null if there is no such lane
+     */
+    Map<String, Long> getMetrics(String laneName);
+}
@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.jboss.osgi.framework.internal.BootProfilerImpl.Span;
+import org.jboss.osgi.framework.spi.BootProfiler;
+import org.junit.Test;
+
+/**
+ * Test the {@link BootProfilerImpl}
+ */
+public class BootProfilerTestCase {
+
+    @Test
+    public void testDisabled() throws Exception {
+        BootProfilerImpl profiler = new BootProfilerImpl(false);
+        long now = System.nanoTime();
+        profiler.addSpan(BootProfiler.CATEGORY_SERVICE, "foo", now, now + 1000);
+        assertTrue("No spans", profiler.getSpans().isEmpty());
+
+        File targetDir = createTargetDir();
+        profiler.writeReport(targetDir);
+        assertFalse("No report", new File(targetDir, BootProfiler.PROFILE_FILE).exists());
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        BootProfilerImpl profiler = new BootProfilerImpl(true);
+        long now = System.nanoTime();
+        profiler.addSpan(BootProfiler.CATEGORY_STORAGE, "restore bundle-2", now + 5000, now + 7000);
+        profiler.addSpan(BootProfiler.CATEGORY_STORAGE, "restore bundle-1", now + 2000, now + 4000);
+        profiler.addSpan(BootProfiler.CATEGORY_METADATA, "parse \"quoted\"", now + 3000, now + 6000);
+
+        List<Span> spans = profiler.getSpans();
+        assertEquals(3, spans.size());
+        assertEquals("Sorted by start", "restore bundle-1", spans.get(0).name);
+        assertEquals("parse \"quoted\"", spans.get(1).name);
+        assertEquals(3, spans.get(1).duration / 1000);
+
+        String profile = profiler.toProfile(spans);
+        assertTrue(profile, profile.contains("\"storage\": {\"count\": 2, \"time\": 4}"));
+        assertTrue(profile, profile.contains("\"name\": \"parse \\\"quoted\\\"\""));
+
+        String trace = profiler.toTrace(spans);
+        assertTrue(trace, trace.contains("\"name\": \"thread_name\", \"ph\": \"M\""));
+        assertTrue(trace, trace.contains("\"name\": \"restore bundle-2\", \"cat\": \"storage\", \"ph\": \"X\""));
+        assertTrue(trace, trace.contains("\"dur\": 2, \"pid\": 1, \"tid\": " + Thread.currentThread().getId()));
+
+        File targetDir = createTargetDir();
+        profiler.writeReport(targetDir);
+        assertTrue("Profile written", new File(targetDir, BootProfiler.PROFILE_FILE).exists());
+        assertTrue("Trace written", new File(targetDir, BootProfiler.TRACE_FILE).exists());
+
+        // Recording stops with the report
+        assertFalse(profiler.isEnabled());
+        profiler.addSpan(BootProfiler.CATEGORY_SERVICE, "foo", now, now + 1000);
+        assertEquals(3, profiler.getSpans().size());
+    }
+
+    @Test
+    public void testQuote() throws Exception {
+        assertEquals("\"a\\\\b\\nc\\u0001\"", BootProfilerImpl.quote("a\\b\nc\u0001"));
+    }
+
+    private File createTargetDir() throws Exception {
+        File targetDir = File.createTempFile("boot-profiler", "");
+        targetDir.delete();
+        targetDir.mkdirs();
+        targetDir.deleteOnExit();
+        return targetDir;
+    }
+}
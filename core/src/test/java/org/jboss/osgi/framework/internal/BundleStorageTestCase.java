@@ -21,6 +21,7 @@ package org.jboss.osgi.framework.internal;
  * #L%
  */
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -29,7 +30,10 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.spi.BundleStorage;
 import org.jboss.osgi.framework.spi.StorageState;
 import org.jboss.osgi.metadata.OSGiManifestBuilder;
@@ -98,6 +102,119 @@ public class BundleStorageTestCase extends AbstractFrameworkTest {
         assertFalse("Storage dir deleted", storageDir.exists());
     }
 
+    @Test
+    public void testContentAddressedStorage() throws Exception {
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Constants.PROPERTY_STORAGE_CONTENT_ADDRESSED, "true");
+        BundleStorageImpl storagePlugin = new BundleStorageImpl(getBundleManager());
+        storagePlugin.initialize(props, false);
+
+        BundleContentStore contentStore = storagePlugin.getContentStore();
+        assertNotNull("BundleContentStore not null", contentStore);
+
+        VirtualFile rootFile = toVirtualFile(getArchive());
+        StorageState stateA = storagePlugin.createStorageState(101, "locationA", 1, rootFile);
+        StorageState stateB = storagePlugin.createStorageState(102, "locationB", 1, rootFile);
+        assertStorageState(stateA);
+        assertStorageState(stateB);
+
+        String digest = stateA.getContentDigest();
+        assertNotNull("Digest not null", digest);
+        assertEquals(digest, stateB.getContentDigest());
+
+        File blobFile = contentStore.getBlobFile(digest);
+        assertTrue("Blob exists", blobFile.exists());
+        assertEquals(2, contentStore.getReferenceCount(digest));
+
+        // Update to the same content, every revision holds its own reference
+        StorageState stateC = storagePlugin.createStorageState(101, "locationA", 1, rootFile);
+        assertEquals(1, stateC.getRevisionId());
+        assertEquals(digest, stateC.getContentDigest());
+        assertEquals(3, contentStore.getReferenceCount(digest));
+
+        // Restore from the persistent properties
+        StorageState restored = StorageState.createStorageState(stateC.getStorageDir());
+        assertEquals(digest, restored.getContentDigest());
+        assertNotNull("Root file not null", restored.getRootFile());
+        VFSUtils.safeClose(restored.getRootFile());
+
+        // Refresh drops the superseded revision
+        storagePlugin.releaseStorageState(stateA);
+        assertEquals(2, contentStore.getReferenceCount(digest));
+
+        storagePlugin.deleteStorageState(stateC);
+        assertEquals(1, contentStore.getReferenceCount(digest));
+        assertTrue("Blob exists", blobFile.exists());
+
+        storagePlugin.deleteStorageState(stateB);
+        assertEquals(0, contentStore.getReferenceCount(digest));
+        assertFalse("Blob deleted", blobFile.exists());
+    }
+
+    @Test
+    public void testContentAddressedUpdateRefreshRestart() throws Exception {
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Constants.PROPERTY_STORAGE_CONTENT_ADDRESSED, "true");
+        BundleStorageImpl storagePlugin = new BundleStorageImpl(getBundleManager());
+        storagePlugin.initialize(props, false);
+        BundleContentStore contentStore = storagePlugin.getContentStore();
+
+        StorageState rev0 = storagePlugin.createStorageState(103, "locationC", 1, toVirtualFile(getArchive("bundle-rev0")));
+        StorageState rev1 = storagePlugin.createStorageState(103, "locationC", 1, toVirtualFile(getArchive("bundle-rev1")));
+        String digest0 = rev0.getContentDigest();
+        String digest1 = rev1.getContentDigest();
+        assertFalse("Different content", digest0.equals(digest1));
+        assertEquals(1, contentStore.getReferenceCount(digest0));
+        assertEquals(1, contentStore.getReferenceCount(digest1));
+
+        // Refresh releases the content of the superseded revision
+        storagePlugin.releaseStorageState(rev0);
+        assertEquals(0, contentStore.getReferenceCount(digest0));
+        assertFalse("Blob deleted", contentStore.getBlobFile(digest0).exists());
+        assertEquals(1, contentStore.getReferenceCount(digest1));
+
+        // Restart references the current revision only
+        BundleStorageImpl restarted = new BundleStorageImpl(getBundleManager());
+        restarted.initialize(props, false);
+        contentStore = restarted.getContentStore();
+        assertEquals(0, contentStore.getReferenceCount(digest0));
+        assertEquals(1, contentStore.getReferenceCount(digest1));
+
+        StorageState restoredState = restarted.getStorageState("locationC");
+        assertEquals(digest1, restoredState.getContentDigest());
+        restarted.deleteStorageState(restoredState);
+        assertEquals(0, contentStore.getReferenceCount(digest1));
+        assertFalse("Blob deleted", contentStore.getBlobFile(digest1).exists());
+    }
+
+    @Test
+    public void testContentAddressedFailedUpdate() throws Exception {
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Constants.PROPERTY_STORAGE_CONTENT_ADDRESSED, "true");
+        BundleStorageImpl storagePlugin = new BundleStorageImpl(getBundleManager());
+        storagePlugin.initialize(props, false);
+        BundleContentStore contentStore = storagePlugin.getContentStore();
+
+        StorageState live = storagePlugin.createStorageState(104, "locationD", 1, toVirtualFile(getArchive("bundle-live")));
+        StorageState failed = storagePlugin.createStorageState(104, "locationD", 1, toVirtualFile(getArchive("bundle-failed")));
+        String liveDigest = live.getContentDigest();
+        String failedDigest = failed.getContentDigest();
+
+        // The cleanup of the failed update only releases the content of the failed revision
+        storagePlugin.deleteStorageState(failed);
+        assertEquals(0, contentStore.getReferenceCount(failedDigest));
+        assertFalse("Blob deleted", contentStore.getBlobFile(failedDigest).exists());
+        assertEquals(1, contentStore.getReferenceCount(liveDigest));
+        assertTrue("Blob exists", contentStore.getBlobFile(liveDigest).exists());
+
+        storagePlugin.deleteStorageState(live);
+        assertEquals(0, contentStore.getReferenceCount(liveDigest));
+        assertFalse("Blob deleted", contentStore.getBlobFile(liveDigest).exists());
+    }
+
     private void assertStorageState(StorageState storageState) {
         assertNotNull("BundleStorageState not null", storageState);
 
@@ -111,7 +228,11 @@ public class BundleStorageTestCase extends AbstractFrameworkTest {
     }
 
     private JavaArchive getArchive() {
-        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "simple-bundle");
+        return getArchive("simple-bundle");
+    }
+
+    private JavaArchive getArchive(String name) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
         archive.addClasses(SimpleService.class, SimpleActivator.class);
         archive.setManifest(new Asset() {
 
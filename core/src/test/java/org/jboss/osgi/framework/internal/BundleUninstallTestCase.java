@@ -26,11 +26,13 @@ import org.jboss.msc.service.ServiceName;
 import org.jboss.osgi.metadata.OSGiManifestBuilder;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
 import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
 import org.jboss.shrinkwrap.api.spec.JavaArchive;
 import org.jboss.test.osgi.framework.subA.SimpleActivator;
 import org.jboss.test.osgi.framework.subA.SimpleService;
 import org.junit.Test;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -72,6 +74,22 @@ public class BundleUninstallTestCase extends AbstractFrameworkTest {
         assertEquals("No additional services: " + additionalNames, 0, additionalNames.size());
     }
 
+    @Test
+    public void testRootContentClosed() throws Exception {
+        RevisionContentURLHandler urlHandler = getFrameworkState().getRevisionContentURLHandler();
+        int initialCount = urlHandler.getRevisionContentCount();
+
+        // The Bundle-ClassPath does not contain '.'
+        Bundle bundle = installBundle(getClassPathArchive());
+        UserBundleRevision brev = UserBundleRevision.assertBundleRevision(AbstractBundleState.assertBundleState(bundle).getBundleRevision());
+        assertEquals("One class path content", 1, brev.getClassPathContent().size());
+        assertEquals("Root and class path content registered", initialCount + 2, urlHandler.getRevisionContentCount());
+
+        bundle.uninstall();
+        assertBundleState(UNINSTALLED, bundle.getState());
+        assertEquals("No registered content", initialCount, urlHandler.getRevisionContentCount());
+    }
+
     private List<ServiceName> getServiceNameDelta(List<ServiceName> initialNames) throws Exception {
         ServiceContainer serviceContainer = getBundleManager().getServiceContainer();
         Thread.sleep(200); // wait a little for the services
@@ -87,6 +105,21 @@ public class BundleUninstallTestCase extends AbstractFrameworkTest {
         return deltaNames;
     }
 
+    private JavaArchive getClassPathArchive() {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "classpath-bundle");
+        archive.addAsResource(new StringAsset("resource"), "lib/resource.txt");
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addManifestHeader(Constants.BUNDLE_CLASSPATH, "lib");
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+
     private JavaArchive getTestArchive() {
         final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "simple-bundle");
         archive.addClasses(SimpleService.class, SimpleActivator.class);
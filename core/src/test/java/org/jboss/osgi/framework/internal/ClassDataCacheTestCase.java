@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.Arrays;
+
+import org.jboss.modules.ClassSpec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link ClassDataCache}
+ */
+public class ClassDataCacheTestCase {
+
+    private File storageDir;
+
+    @Before
+    public void setUp() throws Exception {
+        storageDir = File.createTempFile("class-cache", "");
+        storageDir.delete();
+        storageDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : storageDir.listFiles()) {
+            file.delete();
+        }
+        storageDir.delete();
+    }
+
+    @Test
+    public void testFlushOnPendingBytes() throws Exception {
+        File cacheFile = ClassDataCache.getCacheFile(storageDir, 0, 0);
+        ClassDataCache cache = new ClassDataCache(cacheFile, "key", null);
+
+        // Each class is a quarter of the limit, the fourth one triggers the write
+        int length = ClassDataCache.MAX_PENDING_BYTES / 4;
+        for (int i = 0; i < 3; i++) {
+            cache.putClassSpec("org/acme/Class" + i + ".class", getClassSpec(length, (byte) i));
+        }
+        assertFalse(cacheFile.exists());
+        cache.putClassSpec("org/acme/Class3.class", getClassSpec(length, (byte) 3));
+        assertTrue(cacheFile.isFile());
+        assertEquals(4, cache.size());
+
+        // A second batch is merged with the written entries
+        for (int i = 4; i < 8; i++) {
+            cache.putClassSpec("org/acme/Class" + i + ".class", getClassSpec(length, (byte) i));
+        }
+        assertEquals(8, cache.size());
+
+        // A new cache reads all entries from the file
+        cache = new ClassDataCache(cacheFile, "key", null);
+        assertEquals(8, cache.size());
+        for (int i = 0; i < 8; i++) {
+            ClassSpec classSpec = cache.getClassSpec("org/acme/Class" + i + ".class");
+            assertNotNull(classSpec);
+            assertArrayEquals(getClassSpec(length, (byte) i).getBytes(), classSpec.getBytes());
+        }
+
+        // A stale key ignores the file
+        cache = new ClassDataCache(cacheFile, "other", null);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCacheFilePerRevision() throws Exception {
+        File oldFile = ClassDataCache.getCacheFile(storageDir, 0, 0);
+        File newFile = ClassDataCache.getCacheFile(storageDir, 1, 0);
+        assertFalse(oldFile.equals(newFile));
+
+        // The old revision flushes on close after the update, which leaves the new revision's cache alone
+        ClassDataCache newCache = new ClassDataCache(newFile, "new", null);
+        newCache.putClassSpec("org/acme/New.class", getClassSpec(16, (byte) 1));
+        newCache.flush();
+        ClassDataCache oldCache = new ClassDataCache(oldFile, "old", null);
+        oldCache.putClassSpec("org/acme/Old.class", getClassSpec(16, (byte) 0));
+        oldCache.flush();
+        assertEquals(1, new ClassDataCache(newFile, "new", null).size());
+
+        // Clearing the old revision deletes its files only
+        ClassDataCache.deleteCacheFiles(storageDir, 0);
+        assertFalse(oldFile.exists());
+        assertTrue(newFile.isFile());
+    }
+
+    private ClassSpec getClassSpec(int length, byte value) throws Exception {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        ClassSpec classSpec = new ClassSpec();
+        classSpec.setBytes(bytes);
+        classSpec.setCodeSource(new CodeSource(new URL("file:/acme.jar"), (CodeSigner[]) null));
+        return classSpec;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jboss.osgi.testing.OSGiTestHelper;
+import org.jboss.osgi.vfs.VirtualFile;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.exporter.ZipExporter;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.test.osgi.framework.subA.SimpleActivator;
+import org.jboss.test.osgi.framework.subA.SimpleService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the {@link EntryIndex}
+ */
+public class EntryIndexTestCase {
+
+    private static final String PACKAGE_PATH = "org/jboss/test/osgi/framework/subA/";
+
+    private static File jarFile;
+    private static VirtualFile rootFile;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "entry-index");
+        archive.addClasses(SimpleService.class, SimpleActivator.class);
+        archive.addAsResource("logging.properties");
+        jarFile = File.createTempFile("entry-index", ".jar");
+        archive.as(ZipExporter.class).exportTo(jarFile, true);
+        rootFile = OSGiTestHelper.toVirtualFile(archive);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        rootFile.close();
+        jarFile.delete();
+    }
+
+    @Test
+    public void testJarAndVirtualFile() throws Exception {
+        EntryIndex jarIndex = EntryIndex.create(jarFile);
+        EntryIndex vfsIndex = EntryIndex.create(rootFile);
+        assertEquals(jarIndex.findEntries("/", "*", true), vfsIndex.findEntries("/", "*", true));
+        assertTrue(jarIndex.findEntries("", null, true).contains("org/jboss/"));
+    }
+
+    @Test
+    public void testFindEntries() throws Exception {
+        EntryIndex index = EntryIndex.create(jarFile);
+        assertEquals(Arrays.asList("logging.properties"), index.findEntries("/", "*.properties", false));
+        assertEquals(Arrays.asList("org/"), index.findEntries("", "org", false));
+        assertEquals(Arrays.asList("org/"), index.findEntries("", "org", true));
+        assertTrue(index.findEntries("", "", true).isEmpty());
+        assertTrue(index.findEntries("", "*.class", false).isEmpty());
+        assertTrue(index.findEntries("does/not/exist", "*", true).isEmpty());
+
+        List<String> classes = index.findEntries("org/jboss", "Simple*.class", true);
+        assertEquals(new HashSet<String>(Arrays.asList(PACKAGE_PATH + "SimpleActivator.class", PACKAGE_PATH + "SimpleService.class")),
+                new HashSet<String>(classes));
+        assertEquals(classes, index.findEntries(PACKAGE_PATH, "*Simple*", false));
+        assertEquals(Arrays.asList(PACKAGE_PATH + "SimpleService.class"), index.findEntries(PACKAGE_PATH, "S*e*Service.class", false));
+    }
+
+    @Test
+    public void testEntryPaths() throws Exception {
+        EntryIndex index = EntryIndex.create(jarFile);
+        assertEquals(new HashSet<String>(Arrays.asList("logging.properties", "org/")), new HashSet<String>(index.getEntryPaths("/")));
+        assertEquals(Arrays.asList("org/jboss/"), index.getEntryPaths("org"));
+        assertEquals(2, index.getEntryPaths(PACKAGE_PATH).size());
+        assertTrue(index.getEntryPaths("logging.properties").isEmpty());
+    }
+}
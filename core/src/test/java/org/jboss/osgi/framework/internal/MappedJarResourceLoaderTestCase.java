@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.jboss.modules.ClassSpec;
+import org.jboss.osgi.framework.spi.VirtualFileResourceLoader;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.osgi.testing.OSGiTestHelper;
+import org.jboss.osgi.vfs.VirtualFile;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.exporter.ZipExporter;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.test.osgi.framework.subA.SimpleActivator;
+import org.jboss.test.osgi.framework.subA.SimpleService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the memory-mapped bundle jar loader.
+ */
+public class MappedJarResourceLoaderTestCase {
+
+    private static File jarFile;
+    private static VirtualFile rootFile;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "mapped-bundle");
+        archive.addClasses(SimpleService.class, SimpleActivator.class);
+        archive.addAsResource("logging.properties");
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addExportPackages(SimpleService.class);
+                return builder.openStream();
+            }
+        });
+        jarFile = File.createTempFile("mapped-bundle", ".jar");
+        archive.as(ZipExporter.class).exportTo(jarFile, true);
+        rootFile = OSGiTestHelper.toVirtualFile(archive);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        rootFile.close();
+        jarFile.delete();
+    }
+
+    @Test
+    public void testClassSpec() throws Exception {
+        MappedJarResourceLoader loader = MappedJarResourceLoader.create(jarFile, rootFile.toURL());
+        assertNotNull("Loader not null", loader);
+
+        String fileName = SimpleActivator.class.getName().replace('.', '/') + ".class";
+        ClassSpec result = loader.getClassSpec(fileName);
+        assertNotNull("ClassSpec not null", result);
+
+        ClassSpec expected = new VirtualFileResourceLoader(rootFile).getClassSpec(fileName);
+        assertArrayEquals(expected.getBytes(), result.getBytes());
+
+        assertNull(loader.getClassSpec("org/jboss/test/osgi/framework/subA/Missing.class"));
+    }
+
+    @Test
+    public void testPaths() throws Exception {
+        MappedJarResourceLoader loader = MappedJarResourceLoader.create(jarFile, rootFile.toURL());
+        VirtualFileResourceLoader expected = new VirtualFileResourceLoader(rootFile);
+        assertEquals(new HashSet<String>(expected.getPaths()), new HashSet<String>(loader.getPaths()));
+    }
+
+    @Test
+    public void testStoredEntry() throws Exception {
+        byte[] bytes = "stored content".getBytes("UTF-8");
+        File storedFile = File.createTempFile("stored-bundle", ".jar");
+        try {
+            JarOutputStream output = new JarOutputStream(new FileOutputStream(storedFile));
+            try {
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                ZipEntry entry = new ZipEntry("stored/Stored.class");
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(bytes.length);
+                entry.setCompressedSize(bytes.length);
+                entry.setCrc(crc.getValue());
+                output.putNextEntry(entry);
+                output.write(bytes);
+                output.closeEntry();
+            } finally {
+                output.close();
+            }
+            MappedJarResourceLoader loader = MappedJarResourceLoader.create(storedFile, storedFile.toURI().toURL());
+            assertNotNull("Loader not null", loader);
+            assertArrayEquals(bytes, loader.getClassSpec("stored/Stored.class").getBytes());
+        } finally {
+            storedFile.delete();
+        }
+    }
+
+    @Test
+    public void testNoJar() throws Exception {
+        File textFile = File.createTempFile("no-bundle", ".txt");
+        try {
+            FileOutputStream output = new FileOutputStream(textFile);
+            output.write("no jar".getBytes("UTF-8"));
+            output.close();
+            assertNull(MappedJarResourceLoader.create(textFile, textFile.toURI().toURL()));
+        } finally {
+            textFile.delete();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.framework.spi.StorageState;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.osgi.metadata.OSGiMetaData;
+import org.jboss.osgi.spi.BundleInfo;
+import org.jboss.osgi.vfs.VFSUtils;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+
+/**
+ * Test the {@link MetaDataCache}
+ */
+public class MetaDataCacheTestCase extends AbstractFrameworkTest {
+
+    @Test
+    public void testCacheHit() throws Exception {
+        Bundle bundle = installBundle(getArchive());
+        try {
+            StorageState storageState = AbstractBundleState.assertBundleState(bundle).getStorageState();
+            assertTrue("Cache file written", new File(storageState.getStorageDir(), MetaDataCache.METADATA_CACHE_FILE).isFile());
+            assertTrue("Validated", MetaDataCache.isValidated(storageState));
+
+            // A restart creates the deployment from the cache, without the bundle info of the content
+            StorageState restored = StorageState.createStorageState(storageState.getStorageDir());
+            try {
+                Deployment dep = new DeploymentProviderImpl(true).createDeployment(restored);
+                OSGiMetaData metadata = dep.getAttachment(OSGiMetaData.class);
+                assertNotNull("Metadata not null", metadata);
+                assertEquals("metadata-bundle", metadata.getBundleSymbolicName());
+                assertNull("Cache hit", dep.getAttachment(BundleInfo.class));
+                assertTrue("Validated", MetaDataCache.isValidated(restored));
+
+                // The cache is not used when it is turned off
+                dep = new DeploymentProviderImpl(false).createDeployment(restored);
+                assertNotNull("Cache not used", dep.getAttachment(BundleInfo.class));
+            } finally {
+                VFSUtils.safeClose(restored.getRootFile());
+            }
+        } finally {
+            bundle.uninstall();
+        }
+    }
+
+    @Test
+    public void testCacheMiss() throws Exception {
+        Bundle bundle = installBundle(getArchive());
+        try {
+            StorageState storageState = AbstractBundleState.assertBundleState(bundle).getStorageState();
+            assertNotNull("Cache hit", MetaDataCache.getMetaData(storageState));
+
+            // Changed content does not match the cache key
+            File bundleFile = storageState.getBundleFile();
+            assertTrue("Bundle file exists", bundleFile.isFile());
+            assertTrue(bundleFile.setLastModified(bundleFile.lastModified() - 10000));
+            assertNull("Cache miss", MetaDataCache.getMetaData(storageState));
+            assertFalse("Not validated", MetaDataCache.isValidated(storageState));
+
+            StorageState restored = StorageState.createStorageState(storageState.getStorageDir());
+            try {
+                Deployment dep = new DeploymentProviderImpl(true).createDeployment(restored);
+                assertNotNull("Content read again", dep.getAttachment(BundleInfo.class));
+            } finally {
+                VFSUtils.safeClose(restored.getRootFile());
+            }
+        } finally {
+            bundle.uninstall();
+        }
+    }
+
+    @Test
+    public void testValidatedOnlyForValidEntry() throws Exception {
+        Bundle bundle = installBundle(getArchive());
+        try {
+            StorageState storageState = AbstractBundleState.assertBundleState(bundle).getStorageState();
+            File cacheFile = new File(storageState.getStorageDir(), MetaDataCache.METADATA_CACHE_FILE);
+            assertTrue("Validated", MetaDataCache.isValidated(storageState));
+
+            // An entry that did not pass validation
+            Properties props = loadProperties(cacheFile);
+            props.setProperty("Validated", "false");
+            storeProperties(cacheFile, props);
+            assertFalse("Not validated", MetaDataCache.isValidated(storageState));
+
+            // An entry for other content
+            props.setProperty("Validated", "true");
+            props.setProperty("CacheKey", "other");
+            storeProperties(cacheFile, props);
+            assertFalse("Not validated", MetaDataCache.isValidated(storageState));
+            assertNull("Cache miss", MetaDataCache.getMetaData(storageState));
+
+            // No entry
+            assertTrue(cacheFile.delete());
+            assertFalse("Not validated", MetaDataCache.isValidated(storageState));
+        } finally {
+            bundle.uninstall();
+        }
+    }
+
+    private Properties loadProperties(File file) throws Exception {
+        Properties props = new Properties();
+        FileInputStream input = new FileInputStream(file);
+        try {
+            props.load(input);
+        } finally {
+            VFSUtils.safeClose(input);
+        }
+        return props;
+    }
+
+    private void storeProperties(File file, Properties props) throws Exception {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            props.store(output, null);
+        } finally {
+            VFSUtils.safeClose(output);
+        }
+    }
+
+    private JavaArchive getArchive() {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "metadata-bundle");
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addBundleVersion("1.0.0");
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
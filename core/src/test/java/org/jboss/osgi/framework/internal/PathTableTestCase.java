@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.osgi.framework.spi.PathTable;
+import org.junit.Test;
+
+/**
+ * Test the {@link PathTable}
+ */
+public class PathTableTestCase {
+
+    @Test
+    public void testMembership() throws Exception {
+        Set<String> paths = new HashSet<String>(Arrays.asList("org/acme/foo", "", "META-INF", "org/acme"));
+        PathTable table = PathTable.create(paths);
+        assertEquals(4, table.size());
+        assertEquals(paths, table);
+        assertEquals(table, paths);
+        assertEquals(paths.hashCode(), table.hashCode());
+        for (String path : paths) {
+            assertTrue(path, table.contains(path));
+            assertTrue(path, table.accept(path));
+        }
+        assertFalse(table.contains("org/acme/bar"));
+        assertFalse(table.accept("org"));
+        assertFalse(table.accept(null));
+        assertEquals(Arrays.asList("", "META-INF", "org/acme", "org/acme/foo"), Arrays.asList(table.toArray()));
+    }
+
+    @Test
+    public void testUnion() throws Exception {
+        List<String> pathsA = Arrays.asList("org/acme/foo", "META-INF");
+        List<String> pathsB = Arrays.asList("org/acme/bar", "META-INF");
+        PathTable table = PathTable.union(Arrays.asList(pathsA, pathsB));
+        assertEquals(3, table.size());
+        assertTrue(table.containsAll(pathsA));
+        assertTrue(table.containsAll(pathsB));
+        assertSame(PathTable.empty(), PathTable.create(new HashSet<String>()));
+    }
+
+    @Test
+    public void testInterned() throws Exception {
+        PathTable tableA = PathTable.create(Arrays.asList(new String("org/acme/foo")));
+        PathTable tableB = PathTable.create(Arrays.asList(new String("org/acme/foo")));
+        assertSame(tableA.iterator().next(), tableB.iterator().next());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() throws Exception {
+        PathTable.create(Arrays.asList("org/acme/foo")).add("org/acme/bar");
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Test the stop waves of the {@link RefreshPlan}
+ */
+public class RefreshPlanTestCase {
+
+    @Test
+    public void testCycleOnlyHoldsBackItsProviders() throws Exception {
+        // b and c consume each other, c consumes a, e consumes d, f is independent
+        Map<String, Set<String>> consumers = new HashMap<String, Set<String>>();
+        consumers.put("a", set("c"));
+        consumers.put("b", set("c"));
+        consumers.put("c", set("b"));
+        consumers.put("d", set("e"));
+        consumers.put("e", set());
+        consumers.put("f", set());
+
+        List<List<String>> waves = RefreshPlan.getWaves(Arrays.asList("a", "b", "c", "d", "e", "f"), consumers);
+        assertEquals(2, waves.size());
+        assertEquals(Arrays.asList("b", "c", "e", "f"), waves.get(0));
+        assertEquals(Arrays.asList("a", "d"), waves.get(1));
+    }
+
+    @Test
+    public void testChain() throws Exception {
+        // Every node consumes the one before, the last node is stopped first
+        int count = 10000;
+        List<String> nodes = new ArrayList<String>();
+        Map<String, Set<String>> consumers = new HashMap<String, Set<String>>();
+        for (int i = 0; i < count; i++) {
+            nodes.add("n" + i);
+            consumers.put("n" + i, i + 1 < count ? set("n" + (i + 1)) : set());
+        }
+        List<List<String>> waves = RefreshPlan.getWaves(nodes, consumers);
+        assertEquals(count, waves.size());
+        assertEquals(Arrays.asList("n" + (count - 1)), waves.get(0));
+        assertEquals(Arrays.asList("n0"), waves.get(count - 1));
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.osgi.framework.spi.WorkerPoolMetrics;
+import org.junit.Test;
+
+/**
+ * Test the {@link WorkerPool}
+ */
+public class WorkerPoolTestCase {
+
+    @Test
+    public void testSerialLanes() throws Exception {
+        WorkerPool pool = new WorkerPool(4, 100, 10000, Executors.defaultThreadFactory());
+        assertEquals("No threads before the first task", 0, pool.getPoolSize());
+
+        final AtomicBoolean overlap = new AtomicBoolean();
+        List<AtomicInteger> active = new ArrayList<AtomicInteger>();
+        List<List<Integer>> results = new ArrayList<List<Integer>>();
+        List<ExecutorService> lanes = new ArrayList<ExecutorService>();
+        for (int i = 0; i < 3; i++) {
+            lanes.add(pool.createLane("lane-" + i));
+            results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+            active.add(new AtomicInteger());
+        }
+        for (int j = 0; j < 500; j++) {
+            for (int i = 0; i < 3; i++) {
+                final List<Integer> result = results.get(i);
+                final AtomicInteger laneActive = active.get(i);
+                final int value = j;
+                lanes.get(i).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (laneActive.incrementAndGet() > 1)
+                            overlap.set(true);
+                        result.add(value);
+                        laneActive.decrementAndGet();
+                    }
+                });
+            }
+        }
+        pool.shutdown(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(lanes.get(i).isTerminated());
+            List<Integer> result = results.get(i);
+            assertEquals(500, result.size());
+            for (int j = 0; j < 500; j++) {
+                assertEquals(Integer.valueOf(j), result.get(j));
+            }
+            assertEquals(Long.valueOf(500), pool.getMetrics("lane-" + i).get(WorkerPoolMetrics.COMPLETED_COUNT));
+        }
+        assertFalse("At most one task per lane", overlap.get());
+    }
+
+    @Test
+    public void testWorkerPerLane() throws Exception {
+        WorkerPool pool = new WorkerPool(1, 100, 10000, Executors.defaultThreadFactory());
+        ExecutorService laneA = pool.createLane("lane-a");
+        final ExecutorService laneB = pool.createLane("lane-b");
+        assertEquals("One worker per lane", 2, pool.getMaxThreads());
+
+        // A task on lane A that waits for lane B
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean done = new AtomicBoolean();
+        laneA.execute(new Runnable() {
+            @Override
+            public void run() {
+                laneB.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                    }
+                });
+                try {
+                    done.set(latch.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        pool.shutdown(20, TimeUnit.SECONDS);
+        assertTrue("Lane B ran while lane A was waiting", done.get());
+        assertEquals("Terminated lanes release their worker", 1, pool.getMaxThreads());
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        WorkerPool pool = new WorkerPool(1, 2, 100, Executors.defaultThreadFactory());
+        ExecutorService lane = pool.createLane("lane");
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        final AtomicInteger count = new AtomicInteger();
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+        lane.execute(noop);
+        lane.execute(noop);
+        assertEquals(Long.valueOf(2), pool.getMetrics("lane").get(WorkerPoolMetrics.QUEUE_DEPTH));
+
+        // A full lane blocks the submitter for the submit timeout, then the task is queued anyway
+        long start = System.currentTimeMillis();
+        lane.execute(noop);
+        assertTrue("Submitter was blocked", System.currentTimeMillis() - start >= 90);
+        assertEquals(Long.valueOf(3), pool.getMetrics("lane").get(WorkerPoolMetrics.QUEUE_DEPTH));
+        assertEquals(Long.valueOf(0), pool.getMetrics("lane").get(WorkerPoolMetrics.REJECTED_COUNT));
+
+        release.countDown();
+        pool.shutdown(10, TimeUnit.SECONDS);
+        assertTrue(lane.isTerminated());
+        assertEquals(3, count.get());
+        assertTrue("Terminated lane removed", pool.getLaneNames().isEmpty());
+        try {
+            lane.execute(noop);
+            fail("RejectedExecutionException expected");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParallelTasks() throws Exception {
+        WorkerPool pool = new WorkerPool(2, 100, 10000, Executors.defaultThreadFactory());
+        ParallelTasks parallelTasks = new ParallelTasks(pool, 4);
+
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 20; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return value;
+                }
+            });
+        }
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 20; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, parallelTasks.invokeAll(tasks));
+
+        // The calling thread runs the batch when the pool is shut down
+        pool.shutdown(10, TimeUnit.SECONDS);
+        assertEquals(expected, parallelTasks.invokeAll(tasks));
+    }
+}
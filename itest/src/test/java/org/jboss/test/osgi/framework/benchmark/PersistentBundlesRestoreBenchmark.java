@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.benchmark;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.InputStream;
+import java.util.Map;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.test.osgi.framework.launch.AbstractFrameworkLaunchTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Measure the warm start time for a framework with many persistent bundles.
+ *
+ * Run with: mvn test -Dbenchmark -Dtest=PersistentBundlesRestoreBenchmark
+ */
+public class PersistentBundlesRestoreBenchmark extends AbstractFrameworkLaunchTest {
+
+    private static final int[] BUNDLE_COUNTS = new int[] { 100, 500, 1000 };
+
+    @Test
+    public void testRestoreTime() throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int count : BUNDLE_COUNTS) {
+            populateStorage(count);
+
+            // Warm up the file system cache
+            restore(count, processors);
+
+            long sequential = restore(count, 1);
+            long parallel = restore(count, processors);
+            LOGGER.infof("Restore %d bundles: sequential %dms, parallel %dms with %d threads", count, sequential, parallel, processors);
+        }
+    }
+
+    private void populateStorage(int count) throws Exception {
+        Framework framework = newFramework(getFrameworkInitProperties(true));
+        framework.start();
+        try {
+            for (int i = 0; i < count; i++) {
+                installBundle(getBundle(i));
+            }
+        } finally {
+            framework.stop();
+            framework.waitForStop(10000);
+        }
+    }
+
+    private long restore(int count, int threads) throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(false);
+        initprops.put(Constants.PROPERTY_FRAMEWORK_RESTORE_THREADS, "" + threads);
+        Framework framework = newFramework(initprops);
+        long start = System.currentTimeMillis();
+        framework.start();
+        try {
+            long time = System.currentTimeMillis() - start;
+            Assert.assertEquals("All bundles restored", count + 1, getBundleContext().getBundles().length);
+            return time;
+        } finally {
+            framework.stop();
+            framework.waitForStop(10000);
+        }
+    }
+
+    private JavaArchive getBundle(final int index) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "restore-bundle-" + index);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addBundleVersion("1.0.0");
+                builder.addExportPackages("org.jboss.test.osgi.restore.p" + index);
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
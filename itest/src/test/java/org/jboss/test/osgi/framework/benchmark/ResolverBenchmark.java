@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.benchmark;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.osgi.resolver.XEnvironment;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.test.osgi.framework.launch.AbstractFrameworkLaunchTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Requirement;
+import org.osgi.service.packageadmin.PackageAdmin;
+
+/**
+ * Measure the resolver over a synthetic repository of 2000 bundles.
+ *
+ * Bundle n exports package n and imports package n/2. Every tenth bundle has an attached fragment
+ * and every twentieth bundle has an optional import.
+ *
+ * Run with: mvn test -Dbenchmark -Dtest=ResolverBenchmark
+ */
+public class ResolverBenchmark extends AbstractFrameworkLaunchTest {
+
+    private static final int BUNDLE_COUNT = 2000;
+    private static final String PACKAGE_PREFIX = "org.jboss.test.osgi.resolver.p";
+
+    @Test
+    public void testResolveAll() throws Exception {
+        for (boolean incremental : new boolean[] { false, true }) {
+            Framework framework = newFramework(incremental);
+            try {
+                List<Bundle> bundles = installRepository();
+                PackageAdmin packageAdmin = getPackageAdmin();
+                long start = System.currentTimeMillis();
+                Assert.assertTrue(packageAdmin.resolveBundles(bundles.toArray(new Bundle[bundles.size()])));
+                long time = System.currentTimeMillis() - start;
+                LOGGER.infof("Resolve %d bundles (incremental=%s): %dms", bundles.size(), incremental, time);
+            } finally {
+                framework.stop();
+                framework.waitForStop(10000);
+            }
+        }
+    }
+
+    @Test
+    public void testResolveSingle() throws Exception {
+        for (boolean incremental : new boolean[] { false, true }) {
+            Framework framework = newFramework(incremental);
+            try {
+                installRepository();
+                Bundle bundle = installBundle(getBundle(BUNDLE_COUNT, true, false));
+                PackageAdmin packageAdmin = getPackageAdmin();
+                long start = System.currentTimeMillis();
+                Assert.assertTrue(packageAdmin.resolveBundles(new Bundle[] { bundle }));
+                long time = System.currentTimeMillis() - start;
+                int resolved = 0;
+                for (Bundle aux : getBundleContext().getBundles()) {
+                    resolved += aux.getState() == Bundle.RESOLVED ? 1 : 0;
+                }
+                LOGGER.infof("Resolve one bundle with optional import (incremental=%s): %dms, %d resolved bundles", incremental, time, resolved);
+            } finally {
+                framework.stop();
+                framework.waitForStop(10000);
+            }
+        }
+    }
+
+    @Test
+    public void testFindProviders() throws Exception {
+        Framework framework = newFramework(false);
+        try {
+            List<Bundle> bundles = installRepository();
+            List<Requirement> requirements = new ArrayList<Requirement>();
+            for (Bundle bundle : bundles) {
+                requirements.addAll(bundle.adapt(BundleRevision.class).getRequirements(PackageNamespace.PACKAGE_NAMESPACE));
+            }
+            XEnvironment env = getBundleContext().getBundle().adapt(XEnvironment.class);
+            long start = System.currentTimeMillis();
+            for (Requirement req : requirements) {
+                Assert.assertFalse("Provider for " + req, env.findProviders(req).isEmpty());
+            }
+            long time = System.currentTimeMillis() - start;
+            LOGGER.infof("Find providers for %d requirements: %dms", requirements.size(), time);
+        } finally {
+            framework.stop();
+            framework.waitForStop(10000);
+        }
+    }
+
+    private Framework newFramework(boolean incremental) throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_RESOLVER_INCREMENTAL, "" + incremental);
+        Framework framework = newFramework(initprops);
+        framework.start();
+        return framework;
+    }
+
+    private List<Bundle> installRepository() throws Exception {
+        List<Bundle> bundles = new ArrayList<Bundle>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < BUNDLE_COUNT; i++) {
+            bundles.add(installBundle(getBundle(i, i % 20 == 0, false)));
+            if (i % 10 == 0) {
+                installBundle(getBundle(i, false, true));
+            }
+        }
+        LOGGER.infof("Install %d bundles: %dms", BUNDLE_COUNT, System.currentTimeMillis() - start);
+        return bundles;
+    }
+
+    private JavaArchive getBundle(final int index, final boolean optionalImport, final boolean fragment) {
+        final String hostName = "resolver-bundle-" + index;
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, fragment ? hostName + "-fragment" : hostName);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addBundleVersion("1.0.0");
+                if (fragment) {
+                    builder.addFragmentHost(hostName);
+                    builder.addExportPackages(PACKAGE_PREFIX + index + ".fragment");
+                } else {
+                    builder.addExportPackages(PACKAGE_PREFIX + index);
+                    if (index > 0) {
+                        builder.addImportPackages(PACKAGE_PREFIX + (index / 2));
+                    }
+                    if (optionalImport) {
+                        builder.addImportPackages(PACKAGE_PREFIX + ((index * 7) % BUNDLE_COUNT) + ";resolution:=optional");
+                    }
+                }
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
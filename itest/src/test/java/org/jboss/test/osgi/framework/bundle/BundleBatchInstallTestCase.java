@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.bundle;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.deployment.deployer.DeploymentFactory;
+import org.jboss.osgi.framework.spi.BundleManager;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.testing.OSGiFrameworkTest;
+import org.jboss.osgi.vfs.AbstractVFS;
+import org.jboss.osgi.vfs.VirtualFile;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.exporter.ZipExporter;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+
+/**
+ * Test the batch install and resolve API on the {@link BundleManager}.
+ */
+public class BundleBatchInstallTestCase extends OSGiFrameworkTest {
+
+    @Test
+    public void testInstallAndResolve() throws Exception {
+        // A imports p.b, B exports p.b, C imports the missing p.c
+        List<Deployment> deployments = new ArrayList<Deployment>();
+        deployments.add(getDeployment("batch-bundleA", null, "org.jboss.test.osgi.batch.b"));
+        deployments.add(getDeployment("batch-bundleB", "org.jboss.test.osgi.batch.b", null));
+        deployments.add(getDeployment("batch-bundleC", null, "org.jboss.test.osgi.batch.c"));
+
+        BundleManager bundleManager = ((XBundle) getSystemContext().getBundle()).adapt(BundleManager.class);
+        List<XBundle> bundles = bundleManager.installBundles(deployments, true);
+        try {
+            Assert.assertEquals(3, bundles.size());
+            Assert.assertEquals("batch-bundleA", bundles.get(0).getSymbolicName());
+            Assert.assertEquals("batch-bundleB", bundles.get(1).getSymbolicName());
+            Assert.assertEquals("batch-bundleC", bundles.get(2).getSymbolicName());
+
+            assertBundleState(Bundle.RESOLVED, bundles.get(0).getState());
+            assertBundleState(Bundle.RESOLVED, bundles.get(1).getState());
+            assertBundleState(Bundle.INSTALLED, bundles.get(2).getState());
+        } finally {
+            for (XBundle bundle : bundles) {
+                bundle.uninstall();
+            }
+        }
+    }
+
+    private Deployment getDeployment(final String name, final String exportPackage, final String importPackage) throws Exception {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addBundleVersion("1.0.0");
+                if (exportPackage != null) {
+                    builder.addExportPackages(exportPackage);
+                }
+                if (importPackage != null) {
+                    builder.addImportPackages(importPackage);
+                }
+                return builder.openStream();
+            }
+        });
+        VirtualFile rootFile = AbstractVFS.toVirtualFile(archive.as(ZipExporter.class).exportAsInputStream());
+        return DeploymentFactory.createDeployment(rootFile, name, name, Version.parseVersion("1.0.0"));
+    }
+}
@@ -32,6 +32,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.jboss.osgi.metadata.OSGiManifestBuilder;
 import org.jboss.osgi.testing.OSGiFrameworkTest;
@@ -134,6 +136,32 @@ public class BundleURLTestCase extends OSGiFrameworkTest {
         }
     }
 
+    @Test
+    public void testEntryURLIdentity() throws Exception {
+        Bundle bundle = installBundle(getBundleA());
+        try {
+            URL urlA = bundle.getEntry("/META-INF/resource-one.txt");
+            URL urlB = bundle.getEntry("/META-INF/resource-one.txt");
+            assertEquals(urlA, urlB);
+            assertEquals(urlA.hashCode(), urlB.hashCode());
+
+            Set<URL> urls = new HashSet<URL>();
+            urls.add(urlA);
+            assertTrue(urls.contains(urlB));
+
+            Enumeration<?> entries = bundle.findEntries("/META-INF", "resource-one.txt", false);
+            URL entry = (URL) entries.nextElement();
+            assertEquals(urlA, entry);
+            assertFalse(entries.hasMoreElements());
+
+            BufferedReader br = new BufferedReader(new InputStreamReader(entry.openStream()));
+            assertEquals("resource-one", br.readLine());
+            br.close();
+        } finally {
+            bundle.uninstall();
+        }
+    }
+
     @Test
     public void testGetResource() throws Exception {
         Bundle bundle = installBundle(getBundleA());
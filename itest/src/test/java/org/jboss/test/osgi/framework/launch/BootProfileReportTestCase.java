@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.launch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.Services;
+import org.jboss.osgi.framework.spi.BootProfiler;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.vfs.VFSUtils;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Test the boot profile report
+ */
+public class BootProfileReportTestCase extends AbstractFrameworkLaunchTest {
+
+    @Test
+    public void testBootProfile() throws Exception {
+        File profileFile = new File(getBundleStorageDir(), BootProfiler.PROFILE_FILE);
+        File traceFile = new File(getBundleStorageDir(), BootProfiler.TRACE_FILE);
+
+        // No profile by default
+        Framework framework = newFramework(getFrameworkInitProperties(true));
+        framework.start();
+        try {
+            // The started bundle is installed, resolved and started again on restart
+            installBundle(getBundle()).start();
+            Assert.assertFalse("No boot profile", profileFile.exists());
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+
+        // Restart with the persistent bundle
+        Map<String, Object> initprops = getFrameworkInitProperties(false);
+        initprops.put(Constants.PROPERTY_BOOT_PROFILER, "true");
+        framework = newFramework(initprops);
+        framework.start();
+        try {
+            XBundle systemBundle = (XBundle) getBundleContext().getBundle();
+            BootProfiler profiler = systemBundle.adapt(BootProfiler.class);
+            Assert.assertNotNull("BootProfiler not null", profiler);
+            Assert.assertFalse("Recording stopped after boot", profiler.isEnabled());
+
+            String profile = readFile(profileFile);
+            Assert.assertTrue(profile, profile.contains("\"" + BootProfiler.CATEGORY_PHASE + "\""));
+            Assert.assertTrue(profile, profile.contains("\"" + BootProfiler.CATEGORY_SERVICE + "\""));
+            Assert.assertTrue(profile, profile.contains("\"" + BootProfiler.CATEGORY_BOOTSTRAP + "\""));
+            Assert.assertTrue(profile, profile.contains("\"" + BootProfiler.CATEGORY_STORAGE + "\""));
+            Assert.assertTrue(profile, profile.contains("\"" + BootProfiler.CATEGORY_METADATA + "\""));
+            Assert.assertTrue(profile, profile.contains(Services.BUNDLE_MANAGER.getCanonicalName()));
+            Assert.assertTrue(profile, profile.contains("parse boot-profiler-bundle"));
+
+            // The bundle steps are totalled apart from the bootstrap steps they run in
+            String bundleSpan = "{\"category\": \"" + BootProfiler.CATEGORY_BOOTSTRAP_BUNDLE + "\", \"name\": ";
+            Assert.assertTrue(profile, profile.contains(bundleSpan + "\"install boot-profiler-bundle"));
+            Assert.assertTrue(profile, profile.contains(bundleSpan + "\"resolve boot-profiler-bundle"));
+            Assert.assertTrue(profile, profile.contains(bundleSpan + "\"start boot-profiler-bundle"));
+
+            String trace = readFile(traceFile);
+            Assert.assertTrue(trace, trace.startsWith("{\"displayTimeUnit\": \"ms\", \"traceEvents\": ["));
+            Assert.assertTrue(trace, trace.contains("\"ph\": \"X\""));
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    private String readFile(File file) throws Exception {
+        Assert.assertTrue("File exists: " + file, file.exists());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream input = new FileInputStream(file);
+        try {
+            VFSUtils.copyStream(input, output);
+        } finally {
+            VFSUtils.safeClose(input);
+        }
+        return new String(output.toByteArray(), "UTF-8");
+    }
+
+    private JavaArchive getBundle() {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "boot-profiler-bundle");
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
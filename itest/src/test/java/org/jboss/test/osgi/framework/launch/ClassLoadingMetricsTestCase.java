@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.launch;
+
+import java.io.InputStream;
+import java.util.Map;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.ClassLoadingMetrics;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.test.osgi.framework.simple.bundleB.BeanB;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Test the {@link ClassLoadingMetrics} service
+ */
+public class ClassLoadingMetricsTestCase extends AbstractFrameworkLaunchTest {
+
+    @Test
+    public void testMetricsEnabled() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_CLASSLOADING_METRICS, "true");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        try {
+            ClassLoadingMetrics metrics = getMetrics(framework.getBundleContext());
+            Assert.assertTrue("Metrics enabled", metrics.isEnabled());
+
+            Bundle bundle = installBundle(getBundle());
+            bundle.loadClass(BeanB.class.getName());
+            Assert.assertNull(bundle.getResource("does/not/Exist.txt"));
+
+            Map<String, Long> values = metrics.getMetrics(bundle.getBundleId());
+            Assert.assertNotNull("Metrics not null", values);
+            Assert.assertTrue(values.get(ClassLoadingMetrics.DEFINE_COUNT) > 0);
+            Assert.assertTrue(values.get(ClassLoadingMetrics.DEFINE_TIME) > 0);
+            Assert.assertTrue(values.get(ClassLoadingMetrics.CLASS_LOOKUP_COUNT) > 0);
+            Assert.assertTrue(values.get(ClassLoadingMetrics.RESOURCE_LOOKUP_COUNT) > 0);
+            Assert.assertTrue(values.get(ClassLoadingMetrics.MISS_COUNT) > 0);
+
+            metrics.reset();
+            Assert.assertNull(metrics.getMetrics(bundle.getBundleId()));
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    @Test
+    public void testMetricsDisabled() throws Exception {
+        Framework framework = newFramework(getFrameworkInitProperties(true));
+        framework.start();
+        try {
+            ClassLoadingMetrics metrics = getMetrics(framework.getBundleContext());
+            Assert.assertFalse("Metrics disabled", metrics.isEnabled());
+
+            Bundle bundle = installBundle(getBundle());
+            bundle.loadClass(BeanB.class.getName());
+            Assert.assertTrue(metrics.getBundleIds().isEmpty());
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    private ClassLoadingMetrics getMetrics(BundleContext context) {
+        ServiceReference sref = context.getServiceReference(ClassLoadingMetrics.class.getName());
+        Assert.assertNotNull("ClassLoadingMetrics service registered", sref);
+        return (ClassLoadingMetrics) context.getService(sref);
+    }
+
+    private JavaArchive getBundle() {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "metrics-bundle");
+        archive.addClasses(BeanB.class);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.launch;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.PackageAdminSupport;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Test refresh with concurrent stop and start of the affected bundles
+ */
+public class ConcurrentRefreshTestCase extends AbstractFrameworkLaunchTest {
+
+    private static final String EXPORTED_PACKAGE = "org.jboss.test.osgi.refresh.exported";
+
+    @Test
+    public void testConcurrentRefresh() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_REFRESH_THREADS, "4");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        try {
+            Bundle exporter = installBundle(getBundle("refresh-exporter", true));
+            exporter.start();
+            List<Bundle> importers = new ArrayList<Bundle>();
+            for (int i = 0; i < 8; i++) {
+                Bundle importer = installBundle(getBundle("refresh-importer-" + i, false));
+                importer.start();
+                importers.add(importer);
+            }
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            FrameworkListener listener = new FrameworkListener() {
+                @Override
+                public void frameworkEvent(FrameworkEvent event) {
+                    if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED)
+                        latch.countDown();
+                }
+            };
+            getBundleContext().addFrameworkListener(listener);
+            PackageAdminSupport packageAdmin = (PackageAdminSupport) getPackageAdmin();
+            packageAdmin.refreshPackages(new Bundle[] { exporter });
+            Assert.assertTrue("PACKAGES_REFRESHED fired", latch.await(10, TimeUnit.SECONDS));
+            getBundleContext().removeFrameworkListener(listener);
+
+            Assert.assertEquals(Bundle.ACTIVE, exporter.getState());
+            for (Bundle importer : importers) {
+                Assert.assertEquals(Bundle.ACTIVE, importer.getState());
+            }
+            Map<String, Long> timings = packageAdmin.getLastRefreshTimings();
+            Assert.assertNotNull(timings.get(PackageAdminSupport.REFRESH_TIME_TOTAL));
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    private JavaArchive getBundle(String name, final boolean exporter) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                if (exporter) {
+                    builder.addExportPackages(EXPORTED_PACKAGE);
+                } else {
+                    builder.addImportPackages(EXPORTED_PACKAGE);
+                }
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.launch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.ExecutorServiceFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Test the executors for the framework work
+ */
+public class ExecutorServiceFactoryTestCase extends AbstractFrameworkLaunchTest {
+
+    @Test
+    public void testExecutorServiceFactory() throws Exception {
+        final List<String> threadNames = Collections.synchronizedList(new ArrayList<String>());
+        final List<ExecutorService> executors = Collections.synchronizedList(new ArrayList<ExecutorService>());
+        ExecutorServiceFactory factory = new ExecutorServiceFactory() {
+            @Override
+            public ExecutorService createExecutorService(String threadName) {
+                threadNames.add(threadName);
+                ExecutorService executor = Executors.newSingleThreadExecutor();
+                executors.add(executor);
+                return executor;
+            }
+        };
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_EXECUTOR_FACTORY, factory);
+        Framework framework = newFramework(initprops);
+        framework.start();
+        try {
+            assertStartLevelChange(framework);
+            Assert.assertFalse("Executors created by the factory", threadNames.isEmpty());
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+
+        // The framework owns the executors and shuts them down
+        for (ExecutorService executor : executors) {
+            Assert.assertTrue("Executor shut down", executor.isShutdown());
+        }
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_EXECUTOR_THREADS, "virtual");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        try {
+            // Falls back to platform threads on a JVM without virtual threads
+            assertStartLevelChange(framework);
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    private void assertStartLevelChange(Framework framework) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        FrameworkListener listener = new FrameworkListener() {
+            @Override
+            public void frameworkEvent(FrameworkEvent event) {
+                if (event.getType() == FrameworkEvent.STARTLEVEL_CHANGED)
+                    latch.countDown();
+            }
+        };
+        getBundleContext().addFrameworkListener(listener);
+        getStartLevel().setStartLevel(2);
+        Assert.assertTrue("STARTLEVEL_CHANGED fired", latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Bundle.ACTIVE, framework.getState());
+    }
+}
@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.util.Map;
 
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.FrameworkLogger;
 import org.jboss.osgi.metadata.OSGiManifestBuilder;
 import org.jboss.osgi.spi.util.ServiceLoader;
@@ -37,6 +38,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.launch.Framework;
 import org.osgi.framework.launch.FrameworkFactory;
 
@@ -185,6 +187,93 @@ public class PersistentBundlesTestCase extends AbstractFrameworkLaunchTest {
         assertBundleState(Bundle.RESOLVED, framework.getState());
     }
 
+    @Test
+    public void testResolutionSnapshot() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_RESOLVER_SNAPSHOT, "true");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        assertBundleState(Bundle.ACTIVE, framework.getState());
+
+        Bundle bundleA = installBundle(getBundleA());
+        Bundle bundleB = installBundle(getBundleB());
+        bundleA.start();
+        assertBundleState(Bundle.ACTIVE, bundleA.getState());
+        assertBundleState(Bundle.RESOLVED, bundleB.getState());
+
+        framework.stop();
+        framework.waitForStop(2000);
+
+        // Restart the Framework, which creates the snapshot
+        framework.start();
+        assertBundleState(Bundle.ACTIVE, framework.getState());
+
+        File snapshotFile = new File(getBundleStorageDir(), "resolution-snapshot.properties");
+        Assert.assertTrue("File exists: " + snapshotFile, snapshotFile.exists());
+
+        framework.stop();
+        framework.waitForStop(2000);
+
+        // Restart the Framework, which applies the snapshot
+        framework.start();
+        assertBundleState(Bundle.ACTIVE, framework.getState());
+
+        bundleA = getBundleContext().getBundle(bundleA.getBundleId());
+        bundleB = getBundleContext().getBundle(bundleB.getBundleId());
+        assertBundleState(Bundle.ACTIVE, bundleA.getState());
+        assertBundleState(Bundle.RESOLVED, bundleB.getState());
+        Assert.assertSame(bundleB.loadClass(BeanB.class.getName()), bundleA.loadClass(BeanB.class.getName()));
+
+        framework.stop();
+        framework.waitForStop(2000);
+        assertBundleState(Bundle.RESOLVED, framework.getState());
+    }
+
+    @Test
+    public void testClassDataCache() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_CLASS_DATA_CACHE, "true");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        assertBundleState(Bundle.ACTIVE, framework.getState());
+
+        Bundle bundleB = installBundle(getBundleB());
+        Assert.assertNotNull(bundleB.loadClass(BeanB.class.getName()));
+
+        // Stopping the Framework writes the cache
+        framework.stop();
+        framework.waitForStop(2000);
+
+        File cacheFile = findFile(getBundleStorageDir(), "class-cache-0.bin");
+        Assert.assertNotNull("Class data cache exists", cacheFile);
+        long lastModified = cacheFile.lastModified();
+
+        // Restart the Framework, which serves the class from the cache
+        framework.start();
+        assertBundleState(Bundle.ACTIVE, framework.getState());
+
+        bundleB = getBundleContext().getBundle(bundleB.getBundleId());
+        Class<?> beanB = bundleB.loadClass(BeanB.class.getName());
+        Assert.assertSame(bundleB, FrameworkUtil.getBundle(beanB));
+
+        // Nothing new to cache
+        framework.stop();
+        framework.waitForStop(2000);
+        Assert.assertEquals(lastModified, cacheFile.lastModified());
+    }
+
+    private File findFile(File dir, String name) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                File result = child.isDirectory() ? findFile(child, name) : (child.getName().equals(name) ? child : null);
+                if (result != null)
+                    return result;
+            }
+        }
+        return null;
+    }
+
     @Test
     public void testBundleStartLevel() throws Exception {
         Map<String, Object> initprops = getFrameworkInitProperties(true);
@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.launch;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.PrototypeServiceFactory;
+import org.jboss.osgi.framework.spi.ServiceManager;
+import org.jboss.osgi.framework.spi.ServiceObjects;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Test prototype scoped services
+ */
+public class PrototypeServiceTestCase extends AbstractFrameworkLaunchTest {
+
+    @Test
+    public void testPrototypeService() throws Exception {
+        Framework framework = newFramework(getFrameworkInitProperties(true));
+        framework.start();
+        try {
+            BundleContext context = getBundleContext();
+            XBundle bundle = (XBundle) context.getBundle();
+            CountingFactory factory = new CountingFactory();
+            ServiceRegistration sreg = context.registerService(Runnable.class.getName(), factory, null);
+            ServiceReference sref = sreg.getReference();
+
+            ServiceObjects serviceObjects = bundle.adapt(ServiceManager.class).getServiceObjects(bundle, sref);
+            Assert.assertSame(sref, serviceObjects.getServiceReference());
+            Object s1 = serviceObjects.getService();
+            Object s2 = serviceObjects.getService();
+            Assert.assertNotNull(s1);
+            Assert.assertNotSame(s1, s2);
+            Assert.assertEquals(2, factory.created.size());
+            Assert.assertEquals(1, sref.getUsingBundles().length);
+
+            // The bundle scoped service object is not one of the prototype objects
+            Object s3 = context.getService(sref);
+            Assert.assertNotSame(s1, s3);
+            Assert.assertNotSame(s2, s3);
+            Assert.assertTrue(context.ungetService(sref));
+            Assert.assertEquals(1, factory.released.size());
+            Assert.assertSame(s3, factory.released.get(0));
+
+            serviceObjects.ungetService(s1);
+            Assert.assertEquals(2, factory.released.size());
+            Assert.assertSame(s1, factory.released.get(1));
+            try {
+                serviceObjects.ungetService(s1);
+                Assert.fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+
+            // Outstanding service objects are released on unregister
+            sreg.unregister();
+            Assert.assertTrue(factory.released.contains(s2));
+            Assert.assertNull(serviceObjects.getService());
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    @Test
+    public void testPrototypeServicePool() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_PROTOTYPE_POOL_SIZE, "1");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        try {
+            BundleContext context = getBundleContext();
+            XBundle bundle = (XBundle) context.getBundle();
+            CountingFactory factory = new CountingFactory();
+            ServiceRegistration sreg = context.registerService(Runnable.class.getName(), factory, null);
+
+            ServiceObjects serviceObjects = bundle.adapt(ServiceManager.class).getServiceObjects(bundle, sreg.getReference());
+            Object s1 = serviceObjects.getService();
+            Object s2 = serviceObjects.getService();
+            serviceObjects.ungetService(s1);
+            serviceObjects.ungetService(s2);
+            Assert.assertEquals("One object is pooled", 1, factory.released.size());
+            Assert.assertEquals("No bundle uses the service", 0, bundle.getServicesInUse() != null ? bundle.getServicesInUse().length : 0);
+
+            // The pooled object is reused
+            Object s3 = serviceObjects.getService();
+            Assert.assertSame(s1, s3);
+            Assert.assertEquals(2, factory.created.size());
+
+            sreg.unregister();
+            Assert.assertEquals(2, factory.released.size());
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    @Test
+    public void testPrototypeServiceConsumerStop() throws Exception {
+        Framework framework = newFramework(getFrameworkInitProperties(true));
+        framework.start();
+        try {
+            BundleContext context = getBundleContext();
+            CountingFactory factory = new CountingFactory();
+            ServiceRegistration sreg = context.registerService(Runnable.class.getName(), factory, null);
+            ServiceReference sref = sreg.getReference();
+
+            XBundle consumer = installBundle(getConsumerBundle());
+            consumer.start();
+            ServiceObjects serviceObjects = consumer.adapt(ServiceManager.class).getServiceObjects(consumer, sref);
+            Object s1 = serviceObjects.getService();
+            Object s2 = serviceObjects.getService();
+            Assert.assertEquals(1, consumer.getServicesInUse().length);
+            Assert.assertEquals(1, sref.getUsingBundles().length);
+
+            // The objects of a stopped consumer are released, the service stays registered
+            consumer.stop();
+            Assert.assertEquals(2, factory.released.size());
+            Assert.assertTrue(factory.released.contains(s1));
+            Assert.assertTrue(factory.released.contains(s2));
+            Assert.assertNull(consumer.getServicesInUse());
+            Assert.assertNull(sref.getUsingBundles());
+
+            // Unregister does not release them again
+            sreg.unregister();
+            Assert.assertEquals(2, factory.released.size());
+            consumer.uninstall();
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    private JavaArchive getConsumerBundle() {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "prototype-consumer");
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+
+    static class CountingFactory implements PrototypeServiceFactory {
+
+        final List<Object> created = new ArrayList<Object>();
+        final List<Object> released = new ArrayList<Object>();
+
+        @Override
+        public Object getService(Bundle bundle, ServiceRegistration registration) {
+            Object service = new Runnable() {
+                public void run() {
+                }
+            };
+            created.add(service);
+            return service;
+        }
+
+        @Override
+        public void ungetService(Bundle bundle, ServiceRegistration registration, Object service) {
+            released.add(service);
+        }
+    }
+}
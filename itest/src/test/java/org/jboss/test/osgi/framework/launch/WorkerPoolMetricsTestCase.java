@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.launch;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.spi.WorkerPoolMetrics;
+import org.jboss.osgi.resolver.XBundle;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.launch.Framework;
+
+/**
+ * Test the shared worker pool of the framework executors
+ */
+public class WorkerPoolMetricsTestCase extends AbstractFrameworkLaunchTest {
+
+    @Test
+    public void testWorkerPoolLanes() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_WORKER_THREADS, "2");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            FrameworkListener listener = new FrameworkListener() {
+                @Override
+                public void frameworkEvent(FrameworkEvent event) {
+                    if (event.getType() == FrameworkEvent.STARTLEVEL_CHANGED)
+                        latch.countDown();
+                }
+            };
+            getBundleContext().addFrameworkListener(listener);
+            getStartLevel().setStartLevel(2);
+            Assert.assertTrue("STARTLEVEL_CHANGED fired", latch.await(10, TimeUnit.SECONDS));
+
+            XBundle systemBundle = (XBundle) getBundleContext().getBundle();
+            WorkerPoolMetrics metrics = systemBundle.adapt(WorkerPoolMetrics.class);
+            Assert.assertNotNull("WorkerPoolMetrics not null", metrics);
+            int laneCount = metrics.getLaneNames().size();
+            Assert.assertTrue("Lanes exceed configured threads", laneCount > 2);
+            Assert.assertEquals("One worker per lane", laneCount, metrics.getMaxThreads());
+            Assert.assertTrue(metrics.getPoolSize() <= laneCount);
+            Assert.assertTrue(metrics.getLaneNames().contains("StartLevel Thread"));
+            Assert.assertTrue(metrics.getLaneNames().contains("Framework Events Thread"));
+
+            Map<String, Long> startLevelMetrics = metrics.getMetrics("StartLevel Thread");
+            Assert.assertTrue("Start level task submitted", startLevelMetrics.get(WorkerPoolMetrics.SUBMITTED_COUNT) > 0);
+            Assert.assertEquals(Long.valueOf(0), startLevelMetrics.get(WorkerPoolMetrics.REJECTED_COUNT));
+            Assert.assertNull(metrics.getMetrics("no-such-lane"));
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+}
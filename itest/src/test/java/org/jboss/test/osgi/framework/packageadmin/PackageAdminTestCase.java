@@ -37,6 +37,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.jboss.msc.service.ServiceController;
@@ -44,6 +45,7 @@ import org.jboss.msc.service.ServiceName;
 import org.jboss.msc.service.ServiceController.State;
 import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.FutureServiceValue;
+import org.jboss.osgi.framework.spi.PackageAdminSupport;
 import org.jboss.osgi.metadata.OSGiManifestBuilder;
 import org.jboss.osgi.resolver.XBundle;
 import org.jboss.osgi.testing.OSGiFrameworkTest;
@@ -405,6 +407,63 @@ public class PackageAdminTestCase extends OSGiFrameworkTest {
         }
     }
 
+    @Test
+    public void testRefreshImpact() throws Exception {
+        Bundle bundleA = installBundle(assembleArchive("exporter", "/bundles/package-admin/exporter", Exported.class));
+        Bundle bundleB = installBundle(assembleArchive("import-export", "/bundles/package-admin/import-export", ImportExport.class));
+        Bundle bundleC = installBundle(getImporterC());
+        try {
+            PackageAdminSupport pa = (PackageAdminSupport) getPackageAdmin();
+            assertTrue(pa.resolveBundles(new Bundle[] { bundleA, bundleB, bundleC }));
+
+            Set<XBundle> impact = pa.getRefreshImpact(new Bundle[] { bundleA });
+            assertEquals(new HashSet<Bundle>(Arrays.asList(bundleA, bundleB, bundleC)), impact);
+
+            impact = pa.getRefreshImpact(new Bundle[] { bundleB });
+            assertEquals(new HashSet<Bundle>(Arrays.asList(bundleB, bundleC)), impact);
+
+            impact = pa.getUninstallImpact(bundleC);
+            assertEquals(Collections.singleton(bundleC), impact);
+
+            // The dry run does not change the bundles
+            assertBundleState(Bundle.RESOLVED, bundleA.getState());
+            assertBundleState(Bundle.RESOLVED, bundleB.getState());
+            assertBundleState(Bundle.RESOLVED, bundleC.getState());
+        } finally {
+            bundleC.uninstall();
+            bundleB.uninstall();
+            bundleA.uninstall();
+        }
+    }
+
+    @Test
+    public void testRefreshTimings() throws Exception {
+        Bundle bundleA = installBundle(assembleArchive("exporter", "/bundles/package-admin/exporter", Exported.class));
+        Bundle bundleB = installBundle(assembleArchive("import-export", "/bundles/package-admin/import-export", ImportExport.class));
+        try {
+            bundleA.start();
+            bundleB.start();
+
+            PackageAdminSupport pa = (PackageAdminSupport) getPackageAdmin();
+            getSystemContext().addFrameworkListener(this);
+            pa.refreshPackages(new Bundle[] { bundleA });
+            assertFrameworkEvent(FrameworkEvent.PACKAGES_REFRESHED, getSystemContext().getBundle(0), null);
+
+            Map<String, Long> timings = pa.getLastRefreshTimings();
+            assertNotNull(timings.get(PackageAdminSupport.REFRESH_TIME_STOP));
+            assertNotNull(timings.get(PackageAdminSupport.REFRESH_TIME_REFRESH));
+            assertNotNull(timings.get(PackageAdminSupport.REFRESH_TIME_START));
+            assertNotNull(timings.get(PackageAdminSupport.REFRESH_TIME_TOTAL));
+
+            assertBundleState(Bundle.ACTIVE, bundleA.getState());
+            assertBundleState(Bundle.ACTIVE, bundleB.getState());
+        } finally {
+            getSystemContext().removeFrameworkListener(this);
+            bundleB.uninstall();
+            bundleA.uninstall();
+        }
+    }
+
     @Test
     public void testGetExportedPackageByName() throws Exception {
         PackageAdmin pa = getPackageAdmin();
@@ -802,4 +861,18 @@ public class PackageAdminTestCase extends OSGiFrameworkTest {
         });
         return archive;
     }
+
+    private JavaArchive getImporterC() {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "importerC");
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                final OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addImportPackages(ImportExport.class);
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.test.osgi.framework.resolver;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.osgi.resolver.XEnvironment;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.test.osgi.framework.launch.AbstractFrameworkLaunchTest;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+/**
+ * Test the incremental resolve mode.
+ */
+public class IncrementalResolverTestCase extends AbstractFrameworkLaunchTest {
+
+    @Test
+    public void testOptionalImportClosure() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_RESOLVER_INCREMENTAL, "true");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        try {
+            // A optionally imports p.b, B exports p.b and imports p.c, C exports p.c, D exports p.d
+            Bundle bundleA = installBundle(getBundle("bundleA", null, "org.jboss.test.osgi.incremental.b;resolution:=optional"));
+            Bundle bundleB = installBundle(getBundle("bundleB", "org.jboss.test.osgi.incremental.b", "org.jboss.test.osgi.incremental.c"));
+            Bundle bundleC = installBundle(getBundle("bundleC", "org.jboss.test.osgi.incremental.c", null));
+            Bundle bundleD = installBundle(getBundle("bundleD", "org.jboss.test.osgi.incremental.d", null));
+
+            Assert.assertTrue(getPackageAdmin().resolveBundles(new Bundle[] { bundleA }));
+
+            assertBundleState(Bundle.RESOLVED, bundleA.getState());
+            assertBundleState(Bundle.RESOLVED, bundleB.getState());
+            assertBundleState(Bundle.RESOLVED, bundleC.getState());
+            assertBundleState(Bundle.INSTALLED, bundleD.getState());
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    @Test
+    public void testFindProviders() throws Exception {
+        Map<String, Object> initprops = getFrameworkInitProperties(true);
+        initprops.put(Constants.PROPERTY_RESOLVER_INCREMENTAL, "true");
+        Framework framework = newFramework(initprops);
+        framework.start();
+        try {
+            // A imports p.e, B exports p.e 1.0, C exports p.e 2.0, D exports p.f
+            Bundle bundleA = installBundle(getBundle("bundleA", null, "org.jboss.test.osgi.incremental.e"));
+            Bundle bundleB = installBundle(getBundle("bundleB", "org.jboss.test.osgi.incremental.e;version=1.0", null));
+            Bundle bundleC = installBundle(getBundle("bundleC", "org.jboss.test.osgi.incremental.e;version=2.0", null));
+            installBundle(getBundle("bundleD", "org.jboss.test.osgi.incremental.f", null));
+
+            XEnvironment env = getBundleContext().getBundle().adapt(XEnvironment.class);
+            Requirement req = bundleA.adapt(BundleRevision.class).getRequirements(PackageNamespace.PACKAGE_NAMESPACE).get(0);
+
+            // The higher version is preferred
+            List<Capability> providers = new ArrayList<Capability>(env.findProviders(req));
+            Assert.assertEquals(2, providers.size());
+            Assert.assertSame(bundleC.adapt(BundleRevision.class), providers.get(0).getResource());
+            Assert.assertSame(bundleB.adapt(BundleRevision.class), providers.get(1).getResource());
+
+            // A resolved provider is preferred over a higher version
+            Assert.assertTrue(getPackageAdmin().resolveBundles(new Bundle[] { bundleB }));
+            providers = new ArrayList<Capability>(env.findProviders(req));
+            Assert.assertSame(bundleB.adapt(BundleRevision.class), providers.get(0).getResource());
+
+            // An uninstalled provider is no longer found
+            bundleC.uninstall();
+            providers = new ArrayList<Capability>(env.findProviders(req));
+            Assert.assertEquals(1, providers.size());
+            Assert.assertSame(bundleB.adapt(BundleRevision.class), providers.get(0).getResource());
+        } finally {
+            framework.stop();
+            framework.waitForStop(2000);
+        }
+    }
+
+    private JavaArchive getBundle(final String name, final String exportPackage, final String importPackage) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                if (exportPackage != null) {
+                    builder.addExportPackages(exportPackage);
+                }
+                if (importPackage != null) {
+                    builder.addImportPackages(importPackage);
+                }
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
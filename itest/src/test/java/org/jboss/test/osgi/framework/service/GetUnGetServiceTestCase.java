@@ -106,6 +106,37 @@ public class GetUnGetServiceTestCase extends OSGiFrameworkTest {
         }
     }
 
+    @Test
+    public void testRepeatedGetUngetService() throws Exception {
+        Bundle bundle = installBundle(getBundleArchiveA());
+        try {
+            bundle.start();
+            BundleContext context = bundle.getBundleContext();
+            assertNotNull(context);
+
+            ServiceRegistration sreg = context.registerService(OBJCLASS, context, null);
+            ServiceReference sref = sreg.getReference();
+
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(context, context.getService(sref));
+                assertEquals(1, sref.getUsingBundles().length);
+                assertEquals(1, bundle.getServicesInUse().length);
+                assertTrue(context.ungetService(sref));
+                assertNull(sref.getUsingBundles());
+                assertNull(bundle.getServicesInUse());
+            }
+            assertFalse(context.ungetService(sref));
+
+            context.getService(sref);
+            sreg.unregister();
+            assertNull(sref.getUsingBundles());
+            assertNull(bundle.getServicesInUse());
+            assertFalse(context.ungetService(sref));
+        } finally {
+            bundle.uninstall();
+        }
+    }
+
     @Test
     public void testGetServiceAfterStop() throws Exception {
         Bundle bundle = installBundle(getBundleArchiveA());
@@ -31,10 +31,17 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 
+import org.jboss.osgi.framework.spi.ServiceManager;
+import org.jboss.osgi.framework.spi.ServiceManager.ServiceSpec;
+import org.jboss.osgi.framework.spi.ServiceState;
 import org.jboss.osgi.metadata.OSGiManifestBuilder;
+import org.jboss.osgi.resolver.XBundle;
 import org.jboss.osgi.testing.OSGiFrameworkTest;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
 import org.jboss.shrinkwrap.api.asset.Asset;
@@ -45,6 +52,9 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 
@@ -209,6 +219,114 @@ public class RegisterServiceTestCase extends OSGiFrameworkTest {
         }
     }
 
+    @Test
+    public void testRegisterServices() throws Exception {
+        Bundle bundle = installBundle(getBundleArchiveA());
+        try {
+            bundle.start();
+            final BundleContext bundleContext = bundle.getBundleContext();
+            assertNotNull(bundleContext);
+
+            final List<ServiceReference> registered = new ArrayList<ServiceReference>();
+            final List<Integer> visible = new ArrayList<Integer>();
+            ServiceListener listener = new ServiceListener() {
+                @Override
+                public void serviceChanged(ServiceEvent event) {
+                    if (event.getType() == ServiceEvent.REGISTERED) {
+                        registered.add(event.getServiceReference());
+                        try {
+                            ServiceReference[] srefs = bundleContext.getServiceReferences(OBJCLASS, "(batch=true)");
+                            visible.add(srefs != null ? srefs.length : 0);
+                        } catch (InvalidSyntaxException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                }
+            };
+            bundleContext.addServiceListener(listener, "(batch=true)");
+
+            List<ServiceSpec> serviceSpecs = new ArrayList<ServiceSpec>();
+            for (int i = 0; i < 3; i++) {
+                Dictionary<String, Object> props = new Hashtable<String, Object>();
+                props.put("batch", "true");
+                props.put("index", i);
+                serviceSpecs.add(new ServiceSpec(OBJCLASSES, bundleContext, props));
+            }
+            XBundle xbundle = (XBundle) bundle;
+            List<ServiceState> serviceStates = xbundle.adapt(ServiceManager.class).registerServices(xbundle, serviceSpecs);
+            assertEquals(3, serviceStates.size());
+
+            // All services are registered before the first event is delivered, the events are in batch order
+            assertEquals(3, registered.size());
+            assertEquals(Arrays.asList(3, 3, 3), visible);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i, registered.get(i).getProperty("index"));
+                assertEquals(serviceStates.get(i).getServiceId(), registered.get(i).getProperty(Constants.SERVICE_ID));
+            }
+            assertEquals(3, bundle.getRegisteredServices().length);
+            bundleContext.removeServiceListener(listener);
+
+            // An invalid service registers none of the batch
+            serviceSpecs.add(new ServiceSpec(new String[] { ServiceB.class.getName() }, bundleContext, null));
+            try {
+                xbundle.adapt(ServiceManager.class).registerServices(xbundle, serviceSpecs);
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+            assertEquals(3, bundle.getRegisteredServices().length);
+        } finally {
+            bundle.uninstall();
+        }
+    }
+
+    @Test
+    public void testRegisterServicesRemoveListener() throws Exception {
+        Bundle bundle = installBundle(getBundleArchiveA());
+        try {
+            bundle.start();
+            final BundleContext bundleContext = bundle.getBundleContext();
+            assertNotNull(bundleContext);
+
+            // The first listener removes itself and the second one in its callback
+            final List<Object> firstEvents = new ArrayList<Object>();
+            final List<Object> secondEvents = new ArrayList<Object>();
+            final ServiceListener second = new ServiceListener() {
+                @Override
+                public void serviceChanged(ServiceEvent event) {
+                    secondEvents.add(event.getServiceReference().getProperty("index"));
+                }
+            };
+            ServiceListener first = new ServiceListener() {
+                @Override
+                public void serviceChanged(ServiceEvent event) {
+                    firstEvents.add(event.getServiceReference().getProperty("index"));
+                    bundleContext.removeServiceListener(this);
+                    bundleContext.removeServiceListener(second);
+                }
+            };
+            bundleContext.addServiceListener(first, "(batch=true)");
+            bundleContext.addServiceListener(second, "(batch=true)");
+
+            List<ServiceSpec> serviceSpecs = new ArrayList<ServiceSpec>();
+            for (int i = 0; i < 3; i++) {
+                Dictionary<String, Object> props = new Hashtable<String, Object>();
+                props.put("batch", "true");
+                props.put("index", i);
+                serviceSpecs.add(new ServiceSpec(OBJCLASSES, bundleContext, props));
+            }
+            XBundle xbundle = (XBundle) bundle;
+            List<ServiceState> serviceStates = xbundle.adapt(ServiceManager.class).registerServices(xbundle, serviceSpecs);
+            assertEquals(3, serviceStates.size());
+
+            // The listeners of a bundle are called in the order they were added
+            assertEquals(Arrays.asList((Object) 0), firstEvents);
+            assertTrue(secondEvents.isEmpty());
+        } finally {
+            bundle.uninstall();
+        }
+    }
+
     @Test
     public void testBundleUninstall() throws Exception {
         Bundle bundle1 = installBundle(getBundleArchiveA());
@@ -29,6 +29,19 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.osgi.metadata.OSGiManifestBuilder;
 import org.jboss.osgi.testing.OSGiFrameworkTest;
@@ -278,6 +291,142 @@ public class ServiceFactoryTestCase extends OSGiFrameworkTest {
         assertTrue("ungetService good", allGood[1]);
     }
 
+    @Test
+    public void testConcurrentGetService() throws Exception {
+        Bundle bundle = installBundle(getBundleArchiveA());
+        try {
+            bundle.start();
+            final BundleContext context = bundle.getBundleContext();
+            final AtomicInteger getCount = new AtomicInteger();
+            final AtomicInteger ungetCount = new AtomicInteger();
+            ServiceRegistration sreg = context.registerService(Runnable.class.getName(), new ServiceFactory() {
+                public Object getService(Bundle bundle, ServiceRegistration registration) {
+                    getCount.incrementAndGet();
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new Runnable() {
+                        public void run() {
+                        }
+                    };
+                }
+
+                public void ungetService(Bundle bundle, ServiceRegistration registration, Object service) {
+                    ungetCount.incrementAndGet();
+                }
+            }, null);
+            final ServiceReference sref = sreg.getReference();
+
+            // Hold a reference, so that the use count never drops to zero
+            assertNotNull(context.getService(sref));
+
+            int threads = 16;
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final Set<Object> values = Collections.synchronizedSet(new HashSet<Object>());
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                for (int i = 0; i < threads; i++) {
+                    futures.add(executor.submit(new Callable<Boolean>() {
+                        public Boolean call() throws Exception {
+                            barrier.await(10, TimeUnit.SECONDS);
+                            for (int j = 0; j < 100; j++) {
+                                Object value = context.getService(sref);
+                                if (value == null)
+                                    return false;
+                                values.add(value);
+                                if (context.ungetService(sref) == false)
+                                    return false;
+                            }
+                            return context.getService(sref) != null;
+                        }
+                    }));
+                }
+                for (Future<Boolean> future : futures) {
+                    assertTrue("getService good", future.get(30, TimeUnit.SECONDS));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            // The factory was called once, every thread still holds one reference
+            assertEquals(1, values.size());
+            assertEquals(1, getCount.get());
+            assertEquals(0, ungetCount.get());
+            assertEquals(1, sref.getUsingBundles().length);
+
+            for (int i = 0; i < threads + 1; i++) {
+                assertTrue("ungetService good", context.ungetService(sref));
+            }
+            assertFalse("No more references", context.ungetService(sref));
+            assertEquals(1, ungetCount.get());
+            Bundle[] users = sref.getUsingBundles();
+            assertTrue("No using bundles", users == null || users.length == 0);
+        } finally {
+            bundle.uninstall();
+        }
+    }
+
+    @Test
+    public void testSlowFactoryDoesNotBlockOtherBundles() throws Exception {
+        Bundle bundleA = installBundle(getBundleArchiveA());
+        Bundle bundleB = installBundle(getBundleArchiveB());
+        try {
+            bundleA.start();
+            bundleB.start();
+            final BundleContext contextA = bundleA.getBundleContext();
+            BundleContext contextB = bundleB.getBundleContext();
+            final Bundle slowBundle = bundleA;
+            final CountDownLatch factoryEntered = new CountDownLatch(1);
+            final CountDownLatch releaseFactory = new CountDownLatch(1);
+            ServiceRegistration sreg = contextA.registerService(Runnable.class.getName(), new ServiceFactory() {
+                public Object getService(Bundle bundle, ServiceRegistration registration) {
+                    if (bundle == slowBundle) {
+                        factoryEntered.countDown();
+                        try {
+                            releaseFactory.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return new Runnable() {
+                        public void run() {
+                        }
+                    };
+                }
+
+                public void ungetService(Bundle bundle, ServiceRegistration registration, Object service) {
+                }
+            }, null);
+            final ServiceReference sref = sreg.getReference();
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Object> slowValue = executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return contextA.getService(sref);
+                    }
+                });
+                assertTrue("Factory entered", factoryEntered.await(10, TimeUnit.SECONDS));
+
+                // The other bundle gets its value while the factory is busy for bundleA
+                assertNotNull(contextB.getService(sref));
+                assertFalse(slowValue.isDone());
+
+                releaseFactory.countDown();
+                assertNotNull(slowValue.get(10, TimeUnit.SECONDS));
+            } finally {
+                releaseFactory.countDown();
+                executor.shutdownNow();
+            }
+        } finally {
+            bundleB.uninstall();
+            bundleA.uninstall();
+        }
+    }
+
     private JavaArchive getBundleArchiveA() {
         final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "simple1");
         archive.addClasses(A.class);